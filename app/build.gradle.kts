@@ -29,6 +29,10 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        // android.util.Log in the routing code is a no-op in JVM unit tests
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -0,0 +1,221 @@
+package be.kuleuven.gt.grvlfinder;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osmdroid.util.GeoPoint;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the streaming Overpass parser with the previous read-everything + JSONObject path.
+ * Recorded responses can be dropped in androidTest/assets/overpass/ (raw "out body geom" JSON);
+ * when none are present a synthetic dense-city payload is generated instead.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OverpassParserBenchmark {
+    private static final String TAG = "OverpassParserBenchmark";
+    private static final String PAYLOAD_DIR = "overpass";
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void streamingParserMatchesAndBeatsDomParser() throws Exception {
+        ScoreCalculator scoreCalculator = new ScoreCalculator(defaultWeights());
+
+        for (Map.Entry<String, byte[]> payload : loadPayloads().entrySet()) {
+            byte[] bytes = payload.getValue();
+
+            // Warm up both paths once so JIT effects don't skew the first round
+            int domCount = parseWithDom(new ByteArrayInputStream(bytes), scoreCalculator).size();
+            int streamCount = OverpassStreamParser.parse(new ByteArrayInputStream(bytes), scoreCalculator).size();
+            assertEquals("Both parsers must produce the same roads for " + payload.getKey(), domCount, streamCount);
+
+            long domNanos = 0, streamNanos = 0;
+            long domHeap = 0, streamHeap = 0;
+
+            for (int round = 0; round < ROUNDS; round++) {
+                long heapBefore = usedHeap();
+                long start = System.nanoTime();
+                List<PolylineResult> dom = parseWithDom(new ByteArrayInputStream(bytes), scoreCalculator);
+                domNanos += System.nanoTime() - start;
+                domHeap = Math.max(domHeap, usedHeap() - heapBefore);
+                dom.clear();
+
+                heapBefore = usedHeap();
+                start = System.nanoTime();
+                List<PolylineResult> stream = OverpassStreamParser.parse(new ByteArrayInputStream(bytes), scoreCalculator);
+                streamNanos += System.nanoTime() - start;
+                streamHeap = Math.max(streamHeap, usedHeap() - heapBefore);
+                stream.clear();
+            }
+
+            Log.i(TAG, String.format(Locale.US,
+                    "%s (%d KB, %d roads): DOM %.1f ms / +%d KB heap, streaming %.1f ms / +%d KB heap",
+                    payload.getKey(), bytes.length / 1024, streamCount,
+                    domNanos / 1e6 / ROUNDS, domHeap / 1024,
+                    streamNanos / 1e6 / ROUNDS, streamHeap / 1024));
+        }
+    }
+
+    /**
+     * The pre-streaming implementation: buffer every line, build a JSONObject, then walk it
+     */
+    private static List<PolylineResult> parseWithDom(InputStream is, ScoreCalculator scoreCalculator) throws Exception {
+        BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder();
+        String line;
+        while ((line = br.readLine()) != null) {
+            sb.append(line).append("\n");
+        }
+
+        JSONObject root = new JSONObject(sb.toString());
+        JSONArray elements = root.optJSONArray("elements");
+        List<PolylineResult> results = new ArrayList<>();
+        if (elements == null) return results;
+
+        for (int i = 0; i < elements.length(); i++) {
+            JSONObject el = elements.getJSONObject(i);
+            if (!"way".equals(el.optString("type", ""))) continue;
+
+            Map<String, String> tagsMap = new HashMap<>();
+            JSONObject tags = el.optJSONObject("tags");
+            if (tags != null && tags.names() != null) {
+                for (int t = 0; t < tags.names().length(); t++) {
+                    String key = tags.names().getString(t);
+                    tagsMap.put(key, tags.optString(key));
+                }
+            }
+
+            List<GeoPoint> points = new ArrayList<>();
+            JSONArray geom = el.optJSONArray("geometry");
+            if (geom != null) {
+                for (int p = 0; p < geom.length(); p++) {
+                    JSONObject gpt = geom.getJSONObject(p);
+                    GeoPoint point = new GeoPoint(gpt.getDouble("lat"), gpt.getDouble("lon"));
+                    point.setAltitude(0.0);
+                    points.add(point);
+                }
+            }
+            if (points.size() < 2) continue;
+
+            int score = scoreCalculator.calculateScore(tagsMap, points);
+            results.add(new PolylineResult(points, score, tagsMap));
+        }
+        return results;
+    }
+
+    private static Map<String, byte[]> loadPayloads() throws Exception {
+        Map<String, byte[]> payloads = new LinkedHashMap<>();
+        AssetManager assets = InstrumentationRegistry.getInstrumentation().getContext().getAssets();
+
+        String[] names = assets.list(PAYLOAD_DIR);
+        if (names != null) {
+            for (String name : names) {
+                try (InputStream in = assets.open(PAYLOAD_DIR + "/" + name)) {
+                    payloads.put(name, readFully(in));
+                }
+            }
+        }
+
+        if (payloads.isEmpty()) {
+            payloads.put("synthetic-city", syntheticPayload(12000, 40));
+        }
+        return payloads;
+    }
+
+    /**
+     * Generates a response shaped like a dense 0.3 degree viewport near a city
+     */
+    private static byte[] syntheticPayload(int wayCount, int maxNodesPerWay) {
+        String[] surfaces = {"asphalt", "gravel", "fine_gravel", "compacted", "ground", "dirt", "paved"};
+        String[] highways = {"track", "residential", "service", "unclassified", "cycleway"};
+        String[] tracktypes = {"grade1", "grade2", "grade3", "grade4"};
+        Random random = new Random(42);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"version\":0.6,\"generator\":\"Overpass API\",\"osm3s\":{\"timestamp_osm_base\":\"2025-01-01T00:00:00Z\"},\"elements\":[\n");
+        long nodeId = 1000000L;
+
+        for (int w = 0; w < wayCount; w++) {
+            if (w > 0) sb.append(",\n");
+            double lat = 50.80 + random.nextDouble() * 0.3;
+            double lon = 4.60 + random.nextDouble() * 0.3;
+            int nodes = 2 + random.nextInt(maxNodesPerWay - 1);
+
+            sb.append("{\"type\":\"way\",\"id\":").append(200000000L + w)
+                    .append(",\"bounds\":{\"minlat\":").append(lat).append(",\"minlon\":").append(lon)
+                    .append(",\"maxlat\":").append(lat + 0.01).append(",\"maxlon\":").append(lon + 0.01).append("}")
+                    .append(",\"nodes\":[");
+            for (int n = 0; n < nodes; n++) {
+                if (n > 0) sb.append(',');
+                sb.append(nodeId++);
+            }
+            sb.append("],\"geometry\":[");
+            for (int n = 0; n < nodes; n++) {
+                if (n > 0) sb.append(',');
+                sb.append(String.format(Locale.US, "{\"lat\":%.7f,\"lon\":%.7f}", lat, lon));
+                lat += (random.nextDouble() - 0.5) * 0.0008;
+                lon += (random.nextDouble() - 0.5) * 0.0008;
+            }
+            sb.append("],\"tags\":{\"highway\":\"").append(highways[random.nextInt(highways.length)])
+                    .append("\",\"surface\":\"").append(surfaces[random.nextInt(surfaces.length)]).append('"');
+            if (random.nextBoolean()) {
+                sb.append(",\"tracktype\":\"").append(tracktypes[random.nextInt(tracktypes.length)]).append('"');
+            }
+            if (random.nextInt(4) == 0) {
+                sb.append(",\"width\":\"").append(1 + random.nextInt(4)).append('"');
+            }
+            sb.append("}}");
+        }
+        sb.append("\n]}\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Integer> defaultWeights() {
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("surface", 10);
+        weights.put("smoothness", 5);
+        weights.put("tracktype", 10);
+        weights.put("bicycle", 0);
+        weights.put("width", 10);
+        weights.put("length", 10);
+        weights.put("slope", 10);
+        return weights;
+    }
+
+    private static byte[] readFully(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,203 @@
+package be.kuleuven.gt.grvlfinder;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Graph build time and retained heap of the routing graph, against the two earlier builds:
+ * nodes keyed by a String.format of the coordinate, and the same object graph keyed by OSM node id.
+ * Roads are a synthetic grid of ways that share their crossing nodes, like an Overpass viewport.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RoutingGraphBenchmark {
+    private static final String TAG = "RoutingGraphBenchmark";
+    private static final int ROUNDS = 5;
+    private static final double SNAP_METERS = 100;
+
+    @Test
+    public void nodeIdGraphMatchesAndBeatsStringKeyedGraph() {
+        for (int gridSize : new int[]{60, 120}) {
+            List<PolylineResult> roads = syntheticGrid(gridSize, 8);
+
+            // Warm up every path once so JIT effects don't skew the first round
+            int stringNodes = buildWithStringKeys(roads).size();
+            int idNodes = buildWithNodeIds(roads).size();
+            int graphNodes = RoutingGraph.build(roads, SmartRoutingService.SCORE_WEIGHTED_DISTANCE, SNAP_METERS)
+                    .nodeCount();
+            assertEquals("String and node id keys must join the same nodes", stringNodes, idNodes);
+            assertEquals("The routing graph must join the same nodes", stringNodes, graphNodes);
+
+            long stringNanos = 0, idNanos = 0, graphNanos = 0;
+            long stringHeap = 0, idHeap = 0, graphHeap = 0;
+
+            for (int round = 0; round < ROUNDS; round++) {
+                long heapBefore = usedHeap();
+                long start = System.nanoTime();
+                Map<String, OldNode> byString = buildWithStringKeys(roads);
+                stringNanos += System.nanoTime() - start;
+                stringHeap = Math.max(stringHeap, usedHeap() - heapBefore);
+                byString.clear();
+
+                heapBefore = usedHeap();
+                start = System.nanoTime();
+                Map<Long, OldNode> byId = buildWithNodeIds(roads);
+                idNanos += System.nanoTime() - start;
+                idHeap = Math.max(idHeap, usedHeap() - heapBefore);
+                byId.clear();
+
+                heapBefore = usedHeap();
+                start = System.nanoTime();
+                RoutingGraph graph = RoutingGraph.build(roads, SmartRoutingService.SCORE_WEIGHTED_DISTANCE,
+                        SNAP_METERS);
+                graphNanos += System.nanoTime() - start;
+                graphHeap = Math.max(graphHeap, usedHeap() - heapBefore);
+                assertEquals(graphNodes, graph.nodeCount());
+            }
+
+            Log.i(TAG, String.format(Locale.US,
+                    "%d roads, %d nodes: String keys %.1f ms / +%d KB heap, node ids %.1f ms / +%d KB heap, "
+                            + "RoutingGraph %.1f ms / +%d KB heap",
+                    roads.size(), graphNodes,
+                    stringNanos / 1e6 / ROUNDS, stringHeap / 1024,
+                    idNanos / 1e6 / ROUNDS, idHeap / 1024,
+                    graphNanos / 1e6 / ROUNDS, graphHeap / 1024));
+        }
+    }
+
+    /**
+     * The original SmartRoutingService.buildRoadGraph: nodes keyed by "%.6f,%.6f" of the coordinate
+     */
+    static Map<String, OldNode> buildWithStringKeys(List<PolylineResult> roads) {
+        Map<String, OldNode> nodes = new HashMap<>();
+        for (PolylineResult road : roads) {
+            List<GeoPoint> points = road.getPoints();
+            for (int i = 0; i < points.size() - 1; i++) {
+                GeoPoint p1 = points.get(i);
+                GeoPoint p2 = points.get(i + 1);
+                OldNode n1 = nodes.computeIfAbsent(String.format("%.6f,%.6f", p1.getLatitude(), p1.getLongitude()),
+                        k -> new OldNode(p1));
+                OldNode n2 = nodes.computeIfAbsent(String.format("%.6f,%.6f", p2.getLatitude(), p2.getLongitude()),
+                        k -> new OldNode(p2));
+                addEdge(n1, n2, p1.distanceToAsDouble(p2), road);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * The same object graph keyed by PolylineResult.nodeKey, as first introduced for OSM node ids
+     */
+    static Map<Long, OldNode> buildWithNodeIds(List<PolylineResult> roads) {
+        Map<Long, OldNode> nodes = new HashMap<>();
+        for (PolylineResult road : roads) {
+            List<GeoPoint> points = road.getPoints();
+            if (points.size() < 2) continue;
+            OldNode previous = getOrCreate(nodes, road.nodeKey(0), points.get(0));
+            for (int i = 0; i < points.size() - 1; i++) {
+                OldNode next = getOrCreate(nodes, road.nodeKey(i + 1), points.get(i + 1));
+                addEdge(previous, next, points.get(i).distanceToAsDouble(points.get(i + 1)), road);
+                previous = next;
+            }
+        }
+        return nodes;
+    }
+
+    private static OldNode getOrCreate(Map<Long, OldNode> nodes, long key, GeoPoint point) {
+        OldNode node = nodes.get(key);
+        if (node == null) {
+            node = new OldNode(point);
+            nodes.put(key, node);
+        }
+        return node;
+    }
+
+    private static void addEdge(OldNode from, OldNode to, double distance, PolylineResult road) {
+        double weight = SmartRoutingService.SCORE_WEIGHTED_DISTANCE.weight(road, distance);
+        from.edges.add(new OldEdge(to, weight, road));
+        to.edges.add(new OldEdge(from, weight, road));
+    }
+
+    static final class OldNode {
+        final GeoPoint point;
+        final List<OldEdge> edges = new ArrayList<>();
+
+        OldNode(GeoPoint point) {
+            this.point = point;
+        }
+    }
+
+    static final class OldEdge {
+        final OldNode to;
+        final double weight;
+        final PolylineResult road;
+
+        OldEdge(OldNode to, double weight, PolylineResult road) {
+            this.to = to;
+            this.weight = weight;
+            this.road = road;
+        }
+    }
+
+    /**
+     * Ways along every row and column of a size x size grid of crossings about 200 m apart,
+     * with shapeNodes extra nodes per block; crossings are shared between the row and column way
+     */
+    static List<PolylineResult> syntheticGrid(int size, int shapeNodes) {
+        String[] surfaces = {"asphalt", "gravel", "fine_gravel", "compacted", "ground", "dirt", "paved"};
+        Random random = new Random(42);
+        double step = 0.002;
+        long shapeId = 1_000_000_000L;
+        List<PolylineResult> roads = new ArrayList<>();
+
+        for (int line = 0; line < 2 * size; line++) {
+            boolean row = line < size;
+            int fixed = line % size;
+            List<GeoPoint> points = new ArrayList<>();
+            List<Long> ids = new ArrayList<>();
+
+            for (int along = 0; along < size; along++) {
+                int r = row ? fixed : along;
+                int c = row ? along : fixed;
+                points.add(new GeoPoint(50.8 + r * step, 4.6 + c * step));
+                ids.add((long) r * size + c + 1);
+                if (along == size - 1) break;
+
+                for (int k = 1; k <= shapeNodes; k++) {
+                    double t = k / (shapeNodes + 1.0);
+                    double jitter = (random.nextDouble() - 0.5) * step * 0.1;
+                    double lat = 50.8 + (row ? r * step + jitter : (r + t) * step);
+                    double lon = 4.6 + (row ? (c + t) * step : c * step + jitter);
+                    points.add(new GeoPoint(lat, lon));
+                    ids.add(shapeId++);
+                }
+            }
+
+            long[] nodeIds = new long[ids.size()];
+            for (int i = 0; i < nodeIds.length; i++) nodeIds[i] = ids.get(i);
+            Map<String, String> tags = new HashMap<>();
+            tags.put("highway", "track");
+            tags.put("surface", surfaces[random.nextInt(surfaces.length)]);
+            roads.add(new PolylineResult(line + 1, nodeIds, points, random.nextInt(40), tags));
+        }
+        return roads;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,79 @@
+package be.kuleuven.gt.grvlfinder;
+
+/**
+ * Token bucket whose rate adapts to the server: every 429 halves the rate and blocks all callers
+ * until Retry-After has passed, every success slowly raises it back towards the maximum.
+ * Shared by all threads talking to one API.
+ */
+class AdaptiveRateLimiter {
+    private final double maxRate;   // permits per second
+    private final double minRate;
+    private final double capacity;  // burst size
+
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos;
+    private long blockedUntilNanos;
+
+    AdaptiveRateLimiter(double maxRate, double minRate, double capacity) {
+        this.maxRate = maxRate;
+        this.minRate = minRate;
+        this.capacity = capacity;
+        this.rate = maxRate;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Block until a request may be sent
+     */
+    void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                refill(now);
+                if (now < blockedUntilNanos) {
+                    waitNanos = blockedUntilNanos - now;
+                } else if (tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                } else {
+                    waitNanos = (long) ((1 - tokens) / rate * 1e9);
+                }
+            }
+            Thread.sleep(Math.max(1, waitNanos / 1_000_000));
+        }
+    }
+
+    synchronized void onSuccess() {
+        rate = Math.min(maxRate, rate + maxRate * 0.1);
+    }
+
+    /**
+     * The server answered 429; nobody sends again before retryAfterMs and the rate is halved
+     */
+    synchronized void onRateLimited(long retryAfterMs) {
+        long now = System.nanoTime();
+        refill(now);
+        blockedUntilNanos = Math.max(blockedUntilNanos, now + retryAfterMs * 1_000_000);
+        rate = Math.max(minRate, rate / 2);
+        tokens = 0;
+    }
+
+    /**
+     * Whether callers are held back after a 429, as opposed to merely paced
+     */
+    synchronized boolean isBlocked() {
+        return System.nanoTime() < blockedUntilNanos;
+    }
+
+    synchronized double getRate() {
+        return rate;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1e9 * rate);
+        lastRefillNanos = now;
+    }
+}
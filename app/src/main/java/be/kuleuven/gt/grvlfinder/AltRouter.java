@@ -0,0 +1,227 @@
+package be.kuleuven.gt.grvlfinder;
+
+import android.util.Log;
+
+/**
+ * Bidirectional A* over a RoutingGraph with landmark lower bounds (ALT).
+ * The weight from every node to a few far apart landmarks is computed once per graph; by the triangle
+ * inequality |d(L, t) - d(L, v)| is then a lower bound on the weight from v to t that follows the road
+ * network, far tighter than straight-line distance once weights are divided by road scores.
+ * Both searches use the average of the forward and backward bounds as potential, which keeps them
+ * consistent, so the search can stop as soon as the two smallest keys add up to the best meeting weight.
+ */
+final class AltRouter {
+    private static final String TAG = "AltRouter";
+
+    private final RoutingGraph graph;
+    private final int landmarkCount;
+    private final float[] landmarkDistances; // weight between node v and landmark l at v * landmarkCount + l
+
+    private final Direction forward;
+    private final Direction backward;
+    private final double[] potential;  // forward potential per node, backward is its negation
+    private final int[] potentialIn;
+    private int searchId;
+    private int source;
+    private int target;
+
+    /**
+     * Weights and search state of one of the two searches
+     */
+    private static final class Direction {
+        final double[] gScore;
+        final int[] parentEdge;  // edge the node was reached through, leaving from the parent
+        final int[] reachedIn;
+        final int[] settledIn;
+        final NodeHeap open;
+        final int sign;           // +1 forward, -1 backward
+        int settled;
+
+        Direction(int nodeCount, int sign) {
+            gScore = new double[nodeCount];
+            parentEdge = new int[nodeCount];
+            reachedIn = new int[nodeCount];
+            settledIn = new int[nodeCount];
+            open = new NodeHeap(nodeCount);
+            this.sign = sign;
+        }
+    }
+
+    /**
+     * Selects landmarks by repeatedly taking the node farthest from those chosen so far, starting
+     * from the node farthest from seed, so they end up around the edge of seed's part of the network.
+     * Each landmark costs a Dijkstra over the whole graph; past deadline (epoch millis) no more are
+     * added and the bounds fall back on the ones chosen so far, or on straight-line distance.
+     */
+    AltRouter(RoutingGraph graph, int landmarks, int seed, long deadline) {
+        this.graph = graph;
+        int n = graph.nodeCount();
+
+        long started = System.currentTimeMillis();
+        float[] distances = new float[n * landmarks];
+        double[] closest = graph.distancesFrom(seed); // Weight to the nearest landmark so far
+        int chosen = 0;
+        while (chosen < landmarks && System.currentTimeMillis() < deadline) {
+            int farthest = -1;
+            for (int v = 0; v < n; v++) {
+                if (closest[v] > 0 && !Double.isInfinite(closest[v])
+                        && (farthest < 0 || closest[v] > closest[farthest])) {
+                    farthest = v;
+                }
+            }
+            if (farthest < 0) break; // Fewer reachable nodes than landmarks
+
+            double[] fromLandmark = graph.distancesFrom(farthest);
+            for (int v = 0; v < n; v++) {
+                distances[v * landmarks + chosen] = (float) fromLandmark[v];
+                if (chosen == 0 || fromLandmark[v] < closest[v]) closest[v] = fromLandmark[v];
+            }
+            chosen++;
+        }
+        this.landmarkCount = chosen;
+        this.landmarkDistances = chosen == landmarks ? distances : compact(distances, n, landmarks, chosen);
+        Log.d(TAG, "Selected " + chosen + " landmarks for " + n + " nodes in "
+                + (System.currentTimeMillis() - started) + " ms");
+
+        forward = new Direction(n, 1);
+        backward = new Direction(n, -1);
+        potential = new double[n];
+        potentialIn = new int[n];
+    }
+
+    /**
+     * Lightest path from source to target.
+     *
+     * @param budgetMillis give up when the search takes longer than this
+     * @return edges along the path in travel order (empty when source is target), or null when the
+     * target is unreachable or the budget ran out
+     */
+    synchronized int[] findPath(int source, int target, long budgetMillis) {
+        this.source = source;
+        this.target = target;
+        searchId++;
+        forward.settled = 0;
+        backward.settled = 0;
+        long deadline = System.currentTimeMillis() + budgetMillis;
+
+        reach(forward, source, 0, -1);
+        reach(backward, target, 0, -1);
+
+        double best = Double.POSITIVE_INFINITY; // Weight of the lightest s-t path seen so far
+        int meeting = source == target ? source : -1;
+        if (meeting >= 0) best = 0;
+
+        try {
+            while (!forward.open.isEmpty() && !backward.open.isEmpty()) {
+                if (forward.open.peekKey() + backward.open.peekKey() >= best) break; // No lighter path left
+
+                if (((forward.settled + backward.settled) & 1023) == 0 && System.currentTimeMillis() > deadline) {
+                    Log.w(TAG, "Search budget of " + budgetMillis + " ms ran out after "
+                            + (forward.settled + backward.settled) + " nodes");
+                    return null;
+                }
+
+                Direction side = forward.open.peekKey() <= backward.open.peekKey() ? forward : backward;
+                Direction other = side == forward ? backward : forward;
+
+                int current = side.open.pop();
+                side.settledIn[current] = searchId;
+                side.settled++;
+
+                double g = side.gScore[current];
+                for (int e = graph.firstEdge(current); e < graph.firstEdge(current + 1); e++) {
+                    int neighbor = graph.edgeTarget(e);
+                    if (side.settledIn[neighbor] == searchId) continue;
+
+                    double tentativeG = g + graph.edgeWeight(e);
+                    if (side.reachedIn[neighbor] == searchId && tentativeG >= side.gScore[neighbor]) continue;
+                    reach(side, neighbor, tentativeG, e);
+
+                    if (other.reachedIn[neighbor] == searchId) {
+                        double through = tentativeG + other.gScore[neighbor];
+                        if (through < best) {
+                            best = through;
+                            meeting = neighbor;
+                        }
+                    }
+                }
+            }
+        } finally {
+            forward.open.clear();
+            backward.open.clear();
+        }
+
+        Log.d(TAG, "Settled " + forward.settled + " + " + backward.settled + " nodes");
+        return meeting >= 0 ? edgesThrough(meeting) : null;
+    }
+
+    private void reach(Direction side, int node, double gScore, int edge) {
+        side.reachedIn[node] = searchId;
+        side.gScore[node] = gScore;
+        side.parentEdge[node] = edge;
+        side.open.push(node, gScore + side.sign * potential(node));
+    }
+
+    /**
+     * Forward potential: half the difference between the bounds towards the target and from the source
+     */
+    private double potential(int node) {
+        if (potentialIn[node] != searchId) {
+            potential[node] = (lowerBound(node, target) - lowerBound(source, node)) / 2;
+            potentialIn[node] = searchId;
+        }
+        return potential[node];
+    }
+
+    /**
+     * Lower bound on the path weight between two nodes
+     */
+    private double lowerBound(int a, int b) {
+        double bound = graph.straightLineBound(a, b);
+        int rowA = a * landmarkCount;
+        int rowB = b * landmarkCount;
+        for (int l = 0; l < landmarkCount; l++) {
+            float da = landmarkDistances[rowA + l];
+            float db = landmarkDistances[rowB + l];
+            if (Float.isInfinite(da) || Float.isInfinite(db)) continue; // Landmark in another component
+            bound = Math.max(bound, Math.abs((double) da - db));
+        }
+        return bound;
+    }
+
+    /**
+     * Forward path to the meeting node followed by the backward path from it, all in travel order
+     */
+    private int[] edgesThrough(int meeting) {
+        int before = 0;
+        for (int node = meeting; forward.parentEdge[node] >= 0; node = graph.sourceOf(forward.parentEdge[node])) {
+            before++;
+        }
+        int after = 0;
+        for (int node = meeting; backward.parentEdge[node] >= 0; node = graph.sourceOf(backward.parentEdge[node])) {
+            after++;
+        }
+
+        int[] edges = new int[before + after];
+        int node = meeting;
+        for (int i = before - 1; i >= 0; i--) {
+            edges[i] = forward.parentEdge[node];
+            node = graph.sourceOf(edges[i]);
+        }
+        node = meeting;
+        for (int i = before; i < before + after; i++) {
+            int edge = backward.parentEdge[node]; // Leads from the node nearer the target to this one
+            edges[i] = graph.reverseEdge(edge);
+            node = graph.sourceOf(edge);
+        }
+        return edges;
+    }
+
+    private static float[] compact(float[] distances, int nodeCount, int stride, int used) {
+        float[] result = new float[nodeCount * used];
+        for (int v = 0; v < nodeCount; v++) {
+            System.arraycopy(distances, v * stride, result, v * used, used);
+        }
+        return result;
+    }
+}
@@ -8,8 +8,9 @@ public class BikeTypeManager {
 
     private BikeType currentBikeType = BikeType.GRAVEL_BIKE; // Default
     private SharedPreferences prefs;
-    private Map<String, Integer> customWeights = new HashMap<>();
+    private volatile Map<String, Integer> customWeights = new HashMap<>(); // Copy on write, scoring threads read it
     private boolean elevationDataEnabled = false; // Default disabled otherwise its slow by default
+    private volatile int weightsVersion = 0; // Bumped whenever the effective weights or bike type change
 
     public BikeTypeManager(SharedPreferences prefs) {
         this.prefs = prefs;
@@ -55,6 +56,7 @@ public class BikeTypeManager {
 
     public void setBikeType(BikeType bikeType) {
         this.currentBikeType = bikeType;
+        weightsVersion++;
         prefs.edit().putString("selected_bike_type", bikeType.name()).apply();
     }
 
@@ -69,8 +71,17 @@ public class BikeTypeManager {
     }
 
     public void updateCustomWeight(String key, int value) {
+        Map<String, Integer> updated = new HashMap<>(customWeights);
+        updated.put(key, value);
+        customWeights = updated;
+        weightsVersion++;
+    }
 
-        customWeights.put(key, value);
+    /**
+     * Changes whenever getCurrentWeights() or the bike type preferences may return something new
+     */
+    public int getWeightsVersion() {
+        return weightsVersion;
     }
 
     public boolean isElevationDataEnabled() {
@@ -0,0 +1,329 @@
+package be.kuleuven.gt.grvlfinder;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.osmdroid.util.GeoPoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Elevation cache keyed by coordinates quantized to one arc second, the SRTM 30 m grid the
+ * elevation API samples from. Elevation never changes, so entries never expire.
+ * Cells are grouped in blocks of 0.1 x 0.1 degrees; an in-memory LRU of blocks sits in front of
+ * one file per block in the app cache directory.
+ */
+public class ElevationCache {
+    private static final String TAG = "ElevationCache";
+
+    public static final int CELLS_PER_DEGREE = 3600; // one arc second
+    private static final int CELLS_PER_BLOCK = 360;  // 0.1 degree blocks
+
+    private static final String DIR_NAME = "elevation";
+    private static final int FILE_VERSION = 1;
+    private static final int DEFAULT_MAX_MEMORY_CELLS = 200_000;
+    private static final long DEFAULT_MAX_DISK_BYTES = 16L * 1024 * 1024;
+    private static final long TOUCH_INTERVAL_MS = 60_000; // file access time resolution for trimDisk
+
+    private static ElevationCache instance;
+
+    private final File directory;
+    private int maxMemoryCells = DEFAULT_MAX_MEMORY_CELLS;
+    private long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+
+    private final LinkedHashMap<Long, Block> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private int memoryCells = 0;
+
+    /**
+     * Elevations of one block as parallel arrays sorted by cell offset within the block
+     */
+    private static class Block {
+        int[] cells;
+        float[] elevations;
+        long touchedAt; // last time the file's access time was updated
+
+        Block(int[] cells, float[] elevations) {
+            this.cells = cells;
+            this.elevations = elevations;
+        }
+
+        int size() {
+            return cells.length;
+        }
+
+        float get(int cell) {
+            int index = Arrays.binarySearch(cells, cell);
+            return index >= 0 ? elevations[index] : Float.NaN;
+        }
+
+        /**
+         * Merge new values in; values for cells already present are replaced
+         */
+        void putAll(Map<Integer, Float> values) {
+            int[] newCells = new int[values.size()];
+            int n = 0;
+            for (int cell : values.keySet()) newCells[n++] = cell;
+            Arrays.sort(newCells);
+
+            int[] mergedCells = new int[cells.length + newCells.length];
+            float[] mergedElevations = new float[mergedCells.length];
+            int i = 0, j = 0, size = 0;
+            while (i < cells.length || j < newCells.length) {
+                if (j == newCells.length || (i < cells.length && cells[i] < newCells[j])) {
+                    mergedCells[size] = cells[i];
+                    mergedElevations[size++] = elevations[i++];
+                } else {
+                    if (i < cells.length && cells[i] == newCells[j]) i++;
+                    mergedCells[size] = newCells[j];
+                    mergedElevations[size++] = values.get(newCells[j++]);
+                }
+            }
+            cells = Arrays.copyOf(mergedCells, size);
+            elevations = Arrays.copyOf(mergedElevations, size);
+        }
+    }
+
+    private ElevationCache(File directory) {
+        this.directory = directory;
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Could not create elevation cache directory " + directory);
+        }
+    }
+
+    public static synchronized void init(Context context) {
+        if (instance == null) {
+            instance = new ElevationCache(new File(context.getApplicationContext().getCacheDir(), DIR_NAME));
+        }
+    }
+
+    /**
+     * Returns the shared cache, or null when init() has not been called
+     */
+    public static synchronized ElevationCache getInstance() {
+        return instance;
+    }
+
+    public synchronized void setMaxMemoryCells(int maxMemoryCells) {
+        this.maxMemoryCells = maxMemoryCells;
+        trimMemory();
+    }
+
+    public synchronized void setMaxDiskBytes(long maxDiskBytes) {
+        this.maxDiskBytes = maxDiskBytes;
+        trimDisk();
+    }
+
+    // ---- Cell math ----
+
+    public static int latToRow(double lat) {
+        return (int) Math.round((lat + 90.0) * CELLS_PER_DEGREE);
+    }
+
+    public static int lonToColumn(double lon) {
+        return (int) Math.round((lon + 180.0) * CELLS_PER_DEGREE);
+    }
+
+    /**
+     * Key of the one arc second cell containing the coordinate
+     */
+    public static long cellKey(double lat, double lon) {
+        return ((long) latToRow(lat) << 32) | (lonToColumn(lon) & 0xffffffffL);
+    }
+
+    /**
+     * Centre of a cell, the coordinate asked for when the cell is fetched
+     */
+    public static GeoPoint cellCenter(long cellKey) {
+        int row = (int) (cellKey >>> 32);
+        int column = (int) cellKey;
+        return new GeoPoint(row / (double) CELLS_PER_DEGREE - 90.0, column / (double) CELLS_PER_DEGREE - 180.0);
+    }
+
+    private static long blockKey(long cellKey) {
+        int row = (int) (cellKey >>> 32);
+        int column = (int) cellKey;
+        return ((long) (row / CELLS_PER_BLOCK) << 32) | (column / CELLS_PER_BLOCK);
+    }
+
+    private static int offsetInBlock(long cellKey) {
+        int row = (int) (cellKey >>> 32);
+        int column = (int) cellKey;
+        return (row % CELLS_PER_BLOCK) * CELLS_PER_BLOCK + column % CELLS_PER_BLOCK;
+    }
+
+    // ---- Cache access ----
+
+    /**
+     * Cached elevation in metres for the cell containing the coordinate, NaN when unknown
+     */
+    public synchronized double get(double lat, double lon) {
+        long cell = cellKey(lat, lon);
+        Block block = lookup(blockKey(cell));
+        return block != null ? block.get(offsetInBlock(cell)) : Double.NaN;
+    }
+
+    /**
+     * Store elevations by coordinate; NaN values are skipped. Each touched block is written once.
+     */
+    public synchronized void putAll(double[] lats, double[] lons, double[] elevations, int count) {
+        Map<Long, Map<Integer, Float>> byBlock = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            if (Double.isNaN(elevations[i])) continue;
+            long cell = cellKey(lats[i], lons[i]);
+            Map<Integer, Float> values = byBlock.get(blockKey(cell));
+            if (values == null) {
+                values = new HashMap<>();
+                byBlock.put(blockKey(cell), values);
+            }
+            values.put(offsetInBlock(cell), (float) elevations[i]);
+        }
+
+        for (Map.Entry<Long, Map<Integer, Float>> entry : byBlock.entrySet()) {
+            long key = entry.getKey();
+            Block block = lookup(key);
+            if (block == null) {
+                block = new Block(new int[0], new float[0]);
+            } else {
+                removeFromMemory(key);
+            }
+            block.putAll(entry.getValue());
+            putInMemory(key, block);
+            writeToDisk(key, block);
+        }
+        trimDisk();
+    }
+
+    public synchronized void clear() {
+        memory.clear();
+        memoryCells = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!f.delete()) Log.w(TAG, "Could not delete " + f);
+            }
+        }
+    }
+
+    private Block lookup(long key) {
+        Block block = memory.get(key);
+        if (block == null) {
+            block = readFromDisk(key);
+            if (block == null) return null;
+            putInMemory(key, block);
+        }
+        touch(key, block);
+        return block;
+    }
+
+    /**
+     * The file time is the last access, so trimDisk evicts least recently used blocks.
+     * get() runs per point, so a block's file is touched at most once per TOUCH_INTERVAL_MS.
+     */
+    private void touch(long key, Block block) {
+        long now = System.currentTimeMillis();
+        if (now - block.touchedAt < TOUCH_INTERVAL_MS) return;
+        block.touchedAt = now;
+
+        File file = fileFor(key);
+        if (!file.setLastModified(now) && file.exists()) {
+            Log.w(TAG, "Could not update access time of " + file.getName());
+        }
+    }
+
+    private void putInMemory(long key, Block block) {
+        removeFromMemory(key);
+        memory.put(key, block);
+        memoryCells += block.size();
+        trimMemory();
+    }
+
+    private void removeFromMemory(long key) {
+        Block old = memory.remove(key);
+        if (old != null) memoryCells -= old.size();
+    }
+
+    private void trimMemory() {
+        Iterator<Map.Entry<Long, Block>> it = memory.entrySet().iterator();
+        while (memoryCells > maxMemoryCells && it.hasNext()) {
+            Map.Entry<Long, Block> eldest = it.next();
+            memoryCells -= eldest.getValue().size();
+            it.remove();
+        }
+    }
+
+    // ---- Disk store ----
+
+    private File fileFor(long key) {
+        return new File(directory, (int) (key >>> 32) + "_" + (int) key + ".bin");
+    }
+
+    private void writeToDisk(long key, Block block) {
+        File file = fileFor(key);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(block.size());
+            for (int i = 0; i < block.size(); i++) {
+                out.writeInt(block.cells[i]);
+                out.writeFloat(block.elevations[i]);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write elevation block " + file.getName() + ": " + e.getMessage());
+            if (!file.delete()) Log.w(TAG, "Could not remove partial block " + file.getName());
+        }
+    }
+
+    private Block readFromDisk(long key) {
+        File file = fileFor(key);
+        if (!file.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION) return null;
+
+            int size = in.readInt();
+            int[] cells = new int[size];
+            float[] elevations = new float[size];
+            for (int i = 0; i < size; i++) {
+                cells[i] = in.readInt();
+                elevations[i] = in.readFloat();
+            }
+            return new Block(cells, elevations);
+
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable elevation block " + file.getName() + ": " + e.getMessage());
+            if (!file.delete()) Log.w(TAG, "Could not remove block " + file.getName());
+            return null;
+        }
+    }
+
+    /**
+     * Delete the least recently used blocks until the store fits the size cap
+     */
+    private void trimDisk() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        long total = 0;
+        for (File f : files) total += f.length();
+        if (total <= maxDiskBytes) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File f : files) {
+            if (total <= maxDiskBytes) break;
+            long length = f.length();
+            if (f.delete()) total -= length;
+        }
+        Log.d(TAG, "Trimmed elevation cache to " + (total / 1024) + " KB");
+    }
+}
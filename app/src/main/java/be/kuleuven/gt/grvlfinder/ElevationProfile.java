@@ -0,0 +1,121 @@
+package be.kuleuven.gt.grvlfinder;
+
+import java.util.Arrays;
+
+/**
+ * Elevation and grade along a road, on primitive arrays.
+ * Every operation is one forward walk over cumulative distance, so the cost is linear in
+ * vertices plus samples instead of comparing every vertex with every sample.
+ */
+final class ElevationProfile {
+    static final double DEFAULT_SLOPE_WINDOW_METERS = 20; // Shorter distances amplify DEM noise
+    private static final double EARTH_RADIUS_METERS = 6371000;
+    private static final double MIN_VALID_ELEVATION = -100;
+    private static final double MAX_VALID_ELEVATION = 5000;
+    private static final double MAX_VALID_GRADE = 40;    // Steeper readings are treated as DEM artefacts
+    private static final double MAX_REPORTED_GRADE = 35;
+
+    private ElevationProfile() {}
+
+    /**
+     * Distance in metres from the first vertex to every vertex of the road
+     */
+    static double[] cumulativeDistances(RoadGeometry geometry) {
+        int size = geometry.size();
+        int[] lat = new int[size];
+        int[] lon = new int[size];
+        geometry.decode(lat, lon);
+
+        double[] distances = new double[size];
+        for (int i = 1; i < size; i++) {
+            double lat1 = Math.toRadians(lat[i - 1] / 1e6);
+            double lat2 = Math.toRadians(lat[i] / 1e6);
+            double sinLat = Math.sin((lat2 - lat1) / 2);
+            double sinLon = Math.sin(Math.toRadians((lon[i] - lon[i - 1]) / 1e6) / 2);
+            double a = sinLat * sinLat + Math.cos(lat1) * Math.cos(lat2) * sinLon * sinLon;
+            distances[i] = distances[i - 1] + EARTH_RADIUS_METERS * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        }
+        return distances;
+    }
+
+    /**
+     * Altitude at every vertex, linearly interpolated between the samples surrounding it and held
+     * constant beyond the first and last sample. Missing (NaN) and implausible samples are skipped.
+     *
+     * @param sampleDistances ascending distances along the road of the samples
+     * @return altitudes per vertex, or null when no sample is usable
+     */
+    static double[] interpolate(double[] sampleDistances, double[] sampleElevations, int sampleCount,
+                                double[] vertexDistances) {
+        double[] d = new double[sampleCount];
+        double[] e = new double[sampleCount];
+        int n = validSamples(sampleDistances, sampleElevations, sampleCount, d, e);
+        if (n == 0) return null;
+
+        double[] altitudes = new double[vertexDistances.length];
+        int k = 0;
+        for (int v = 0; v < vertexDistances.length; v++) {
+            double distance = vertexDistances[v];
+            while (k + 1 < n && d[k + 1] < distance) k++;
+
+            if (distance <= d[0] || k + 1 == n) {
+                altitudes[v] = distance <= d[0] ? e[0] : e[n - 1];
+            } else {
+                double span = d[k + 1] - d[k];
+                double ratio = span > 0 ? (distance - d[k]) / span : 0;
+                altitudes[v] = e[k] + ratio * (e[k + 1] - e[k]);
+            }
+        }
+        return altitudes;
+    }
+
+    /**
+     * Steepest grade in percent over any stretch of at least windowMeters between two samples,
+     * or -1 when there are not enough usable samples
+     */
+    static double maxGrade(double[] sampleDistances, double[] sampleElevations, int sampleCount,
+                           double windowMeters) {
+        double[] d = new double[sampleCount];
+        double[] e = new double[sampleCount];
+        int n = validSamples(sampleDistances, sampleElevations, sampleCount, d, e);
+
+        double max = -1;
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            // The end of the window only moves forward, so this is a single pass
+            j = Math.max(j, i + 1);
+            while (j < n && d[j] - d[i] < windowMeters) j++;
+            if (j == n) break;
+
+            double grade = Math.abs(e[j] - e[i]) / (d[j] - d[i]) * 100.0;
+            if (grade <= MAX_VALID_GRADE && grade > max) {
+                max = grade;
+            }
+        }
+        return max < 0 ? -1 : Math.min(MAX_REPORTED_GRADE, max);
+    }
+
+    /**
+     * Copy the usable samples into d and e and return how many there are
+     */
+    private static int validSamples(double[] distances, double[] elevations, int count, double[] d, double[] e) {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            double elevation = elevations[i];
+            if (Double.isNaN(elevation) || elevation < MIN_VALID_ELEVATION || elevation > MAX_VALID_ELEVATION) {
+                continue;
+            }
+            d[n] = distances[i];
+            e[n] = elevation;
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Sub-range of an array, used to hand each road its slice of a batch result
+     */
+    static double[] slice(double[] values, int from, int count) {
+        return Arrays.copyOfRange(values, from, from + count);
+    }
+}
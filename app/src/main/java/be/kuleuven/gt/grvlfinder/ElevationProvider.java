@@ -0,0 +1,18 @@
+package be.kuleuven.gt.grvlfinder;
+
+import org.osmdroid.util.GeoPoint;
+
+import java.util.List;
+
+/**
+ * A source of elevations: a web API or a local DEM
+ */
+interface ElevationProvider {
+    String getName();
+
+    /**
+     * One elevation in metres per point, NaN where the provider has no data.
+     * Throws RateLimitedException when the provider asks us to back off.
+     */
+    double[] fetchElevations(List<GeoPoint> points) throws Exception;
+}
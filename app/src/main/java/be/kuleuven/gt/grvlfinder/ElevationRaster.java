@@ -0,0 +1,117 @@
+package be.kuleuven.gt.grvlfinder;
+
+import org.osmdroid.util.BoundingBox;
+
+import java.util.Arrays;
+
+/**
+ * Regular elevation grid over a bounding box, stored as whole metres in a short[] (8 KB for a zoom 14
+ * road tile at one arc second). Sample positions lie on the one arc second lattice of ElevationCache,
+ * every step cells, so raster samples and cached cells are the same points.
+ * Elevations in between are bilinearly interpolated, like SrtmDemProvider does for .hgt tiles.
+ */
+public class ElevationRaster {
+    private static final short VOID = Short.MIN_VALUE;
+
+    private final int step;       // arc seconds between samples
+    private final int firstRow;   // lattice row of the southern edge, in steps
+    private final int firstColumn;
+    private final int rows;
+    private final int columns;
+    private final short[] heights; // row major from south to north
+
+    private ElevationRaster(int step, int firstRow, int firstColumn, int rows, int columns) {
+        this.step = step;
+        this.firstRow = firstRow;
+        this.firstColumn = firstColumn;
+        this.rows = rows;
+        this.columns = columns;
+        this.heights = new short[rows * columns];
+        Arrays.fill(heights, VOID);
+    }
+
+    /**
+     * Empty raster whose samples enclose the bounding box, so every point inside it has four neighbours
+     */
+    public static ElevationRaster covering(BoundingBox bbox, int step) {
+        double unit = (double) step / ElevationCache.CELLS_PER_DEGREE;
+        int south = (int) Math.floor((bbox.getLatSouth() + 90.0) / unit);
+        int north = (int) Math.ceil((bbox.getLatNorth() + 90.0) / unit);
+        int west = (int) Math.floor((bbox.getLonWest() + 180.0) / unit);
+        int east = (int) Math.ceil((bbox.getLonEast() + 180.0) / unit);
+        return new ElevationRaster(step, south, west, Math.max(2, north - south + 1), Math.max(2, east - west + 1));
+    }
+
+    public int sampleCount() {
+        return heights.length;
+    }
+
+    public double sampleLatitude(int index) {
+        return (firstRow + index / columns) * (double) step / ElevationCache.CELLS_PER_DEGREE - 90.0;
+    }
+
+    public double sampleLongitude(int index) {
+        return (firstColumn + index % columns) * (double) step / ElevationCache.CELLS_PER_DEGREE - 180.0;
+    }
+
+    /**
+     * Store the elevation of a sample; NaN leaves it void
+     */
+    public void setSample(int index, double elevation) {
+        if (Double.isNaN(elevation)) return;
+        heights[index] = (short) Math.max(VOID + 1, Math.min(Short.MAX_VALUE, Math.round(elevation)));
+    }
+
+    public int voidCount() {
+        int voids = 0;
+        for (short h : heights) {
+            if (h == VOID) voids++;
+        }
+        return voids;
+    }
+
+    public boolean covers(double lat, double lon) {
+        double y = rowPosition(lat);
+        double x = columnPosition(lon);
+        return y >= 0 && y <= rows - 1 && x >= 0 && x <= columns - 1;
+    }
+
+    /**
+     * Bilinearly interpolated elevation in metres, NaN outside the raster or when all surrounding
+     * samples are void
+     */
+    public double getElevation(double lat, double lon) {
+        if (!covers(lat, lon)) return Double.NaN;
+
+        double y = rowPosition(lat);
+        double x = columnPosition(lon);
+        int row = Math.min((int) y, rows - 2);
+        int column = Math.min((int) x, columns - 2);
+        double fy = y - row;
+        double fx = x - column;
+
+        int index = row * columns + column;
+        short h00 = heights[index];
+        short h01 = heights[index + 1];
+        short h10 = heights[index + columns];
+        short h11 = heights[index + columns + 1];
+
+        double w00 = (1 - fx) * (1 - fy), w01 = fx * (1 - fy), w10 = (1 - fx) * fy, w11 = fx * fy;
+
+        // Renormalise over the valid corners so a single void does not drop the whole cell
+        double sum = 0, weight = 0;
+        if (h00 != VOID) { sum += h00 * w00; weight += w00; }
+        if (h01 != VOID) { sum += h01 * w01; weight += w01; }
+        if (h10 != VOID) { sum += h10 * w10; weight += w10; }
+        if (h11 != VOID) { sum += h11 * w11; weight += w11; }
+        return weight > 0 ? sum / weight : Double.NaN;
+    }
+
+    private double rowPosition(double lat) {
+        return (lat + 90.0) * ElevationCache.CELLS_PER_DEGREE / step - firstRow;
+    }
+
+    private double columnPosition(double lon) {
+        return (lon + 180.0) * ElevationCache.CELLS_PER_DEGREE / step - firstColumn;
+    }
+}
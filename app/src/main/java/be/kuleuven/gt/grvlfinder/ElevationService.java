@@ -3,27 +3,81 @@ package be.kuleuven.gt.grvlfinder;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class ElevationService {
     private static final String TAG = "ElevationService";
     private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Progressive viewport enrichment runs long; on its own thread it never holds up the requests above
+    private static final ExecutorService enrichmentExecutor = Executors.newSingleThreadExecutor();
+
+    private static final int BATCH_SIZE = 100; // Most locations opentopodata and Open-Meteo accept per request
+    private static final int MAX_PARALLEL_BATCHES = 2;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final ExecutorService batchExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_BATCHES);
+    // Web APIs in order of preference; the local DEM (SrtmDemProvider) is asked before any of them
+    private static final HedgedElevationClient elevationClient = new HedgedElevationClient(Arrays.asList(
+            new OpenTopoDataProvider("srtm30m"),
+            new OpenMeteoElevationProvider(),
+            new OpenTopoDataProvider("aster30m")));
+
+    private static final int ENRICH_STEP_ROADS = 40;  // Roads per progressive step, about one or two API calls
+    private static final int LOW_VALUE_SCORE = 10;    // Below this a road is drawn red anyway
+
+    private static volatile double slopeWindowMeters = ElevationProfile.DEFAULT_SLOPE_WINDOW_METERS;
+
+    /**
+     * PER_ROAD asks for a few strategic points on every road. VIEWPORT_RASTER reads a regular grid per
+     * road tile from the installed SRTM tiles once and samples roads on it densely; a full grid would
+     * take about 42 API calls per tile, so roads outside the installed tiles are still sampled per road.
+     */
+    public enum SamplingMode { PER_ROAD, VIEWPORT_RASTER }
+
+    private static final int RASTER_STEP_CELLS = 1;                // one arc second, about 30 m
+    private static final double RASTER_SAMPLE_SPACING_METERS = 30; // Road samples read from the raster
+    private static final int MAX_RASTER_TILES = 64;                // About 8 KB each
+    private static final int MAX_PREFETCH_TILES = 16;              // Read before the first step, nearest first
+    private static final int MAX_CALL_RASTER_TILES = MAX_RASTER_TILES / 2; // More per call thrashes the cache
+    private static volatile SamplingMode samplingMode = SamplingMode.VIEWPORT_RASTER;
+    private static final LinkedHashMap<Long, ElevationRaster> rasters = new LinkedHashMap<>(16, 0.75f, true);
 
     public interface RoadElevationCallback {
         void onSuccess(List<PolylineResult> updatedResults);
         void onError(String error);
     }
 
+    public interface ElevationsCallback {
+        /**
+         * One elevation per requested point, NaN where none is known
+         */
+        void onSuccess(double[] elevations);
+        void onError(String error);
+    }
+
+    public static void setSamplingMode(SamplingMode mode) {
+        samplingMode = mode;
+    }
+
+    public static SamplingMode getSamplingMode() {
+        return samplingMode;
+    }
+
     public static void addSlopeDataToRoads(List<PolylineResult> roads, RoadElevationCallback callback) {
         if (roads == null || roads.isEmpty()) {
             if (callback != null) {
@@ -37,41 +91,9 @@ public class ElevationService {
 
         executor.execute(() -> {
             try {
-                // Create elevation requests for all roads
-                List<RoadElevationRequest> requests = new ArrayList<>();
-                List<GeoPoint> allElevationPoints = new ArrayList<>();
-
+                double[] maxSlopes = computeSlopes(roads, rasterSampling(), null);
                 for (int i = 0; i < roads.size(); i++) {
-                    PolylineResult road = roads.get(i);
-                    RoadElevationRequest request = createElevationRequest(road, i);
-                    requests.add(request);
-                    allElevationPoints.addAll(request.elevationPoints);
-                }
-
-                Log.d(TAG, "Fetching elevation for " + allElevationPoints.size() + " strategic points");
-
-                // Fetch elevations for all points at once
-                List<Double> elevations = fetchElevationsInBatches(allElevationPoints);
-
-                // Process results back to roads
-                int elevationIndex = 0;
-                for (RoadElevationRequest request : requests) {
-                    PolylineResult road = roads.get(request.roadIndex);
-
-                    // Extract elevations for this road
-                    List<Double> roadElevations = new ArrayList<>();
-                    for (int j = 0; j < request.elevationPoints.size() && elevationIndex < elevations.size(); j++) {
-                        roadElevations.add(elevations.get(elevationIndex++));
-                    }
-
-                    // Calculate max slope for this road
-                    double maxSlope = calculateRoadMaxSlope(request, roadElevations);
-                    road.setMaxSlope(maxSlope);
-
-                    // CRITICAL FIX: Set altitude on all points in the road
-                    setAltitudesOnRoad(road.getPoints(), request.elevationPoints, roadElevations);
-
-                    Log.d(TAG, "Road " + request.roadIndex + ": calculated max slope = " + maxSlope + "%");
+                    roads.get(i).setMaxSlope(maxSlopes[i]);
                 }
 
                 new Handler(Looper.getMainLooper()).post(() -> {
@@ -92,290 +114,577 @@ public class ElevationService {
         });
     }
 
-    private static void setAltitudesOnRoad(List<GeoPoint> roadPoints,
-                                           List<GeoPoint> sampledPoints,
-                                           List<Double> sampledElevations) {
-        if (sampledPoints.size() != sampledElevations.size()) {
-            Log.w(TAG, "Mismatch between sampled points and elevations");
-            return;
+    /**
+     * Delivered on the main thread while a progressive enrichment runs
+     */
+    public interface SlopeListener {
+        /**
+         * Max slopes of the roads enriched in the last step, keyed by road geometry (shared by every
+         * copy of a road). Altitudes are already set on those geometries.
+         */
+        void onSlopes(Map<RoadGeometry, Double> maxSlopes);
+
+        void onFinished(EnrichmentJob job, int enrichedRoads, boolean cancelled);
+    }
+
+    /**
+     * Handle on a running progressive enrichment
+     */
+    public static class EnrichmentJob {
+        private volatile boolean cancelled;
+        private volatile BoundingBox viewport;
+        private volatile boolean viewportChanged;
+
+        EnrichmentJob(BoundingBox viewport) {
+            this.viewport = viewport;
         }
 
-        // For each road point, find nearest sampled point and use its elevation
-        for (GeoPoint roadPoint : roadPoints) {
-            double minDist = Double.MAX_VALUE;
-            double closestElevation = 0.0;
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Re-prioritise the remaining roads for a new viewport; roads outside it that score low
+         * are not worth the requests and are dropped
+         */
+        public void setViewport(BoundingBox viewport) {
+            this.viewport = viewport;
+            this.viewportChanged = true;
+        }
+    }
+
+    /**
+     * Add slope data a few roads at a time, most valuable first: roads in the viewport, then higher
+     * scores, then longer roads. Each step is reported to the listener as soon as it is done, so the
+     * map can show tag scores right away and refine them while elevation arrives.
+     */
+    public static EnrichmentJob enrichProgressively(List<PolylineResult> roads, BoundingBox viewport,
+                                                    SlopeListener listener) {
+        EnrichmentJob job = new EnrichmentJob(viewport);
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        List<PolylineResult> snapshot = new ArrayList<>(roads);
+
+        enrichmentExecutor.execute(() -> {
+            boolean raster = rasterSampling();
+            if (raster && job.viewport != null) {
+                // The tiles around the centre before the first step needs them, the rest as steps reach them
+                rastersFor(nearestTiles(RoadTileCache.tilesCovering(job.viewport), job.viewport,
+                        MAX_PREFETCH_TILES), job);
+            }
+
+            List<PolylineResult> pending = prioritize(snapshot, job.viewport, false);
+            int enriched = 0;
+            int next = 0;
 
-            for (int i = 0; i < sampledPoints.size(); i++) {
-                double dist = roadPoint.distanceToAsDouble(sampledPoints.get(i));
-                if (dist < minDist) {
-                    minDist = dist;
-                    closestElevation = sampledElevations.get(i);
+            while (next < pending.size() && !job.cancelled) {
+                if (job.viewportChanged) {
+                    job.viewportChanged = false;
+                    pending = prioritize(pending.subList(next, pending.size()), job.viewport, true);
+                    next = 0;
+                    continue;
+                }
+
+                List<PolylineResult> step = pending.subList(next, Math.min(next + ENRICH_STEP_ROADS, pending.size()));
+                next += step.size();
+
+                Map<RoadGeometry, Double> maxSlopes = new IdentityHashMap<>();
+                try {
+                    double[] slopes = computeSlopes(step, raster, job);
+                    for (int i = 0; i < step.size(); i++) {
+                        if (slopes[i] >= 0) maxSlopes.put(step.get(i).getGeometry(), slopes[i]);
+                    }
+                } catch (Exception e) {
+                    Log.w(TAG, "Elevation step failed: " + e.getMessage());
+                }
+
+                enriched += maxSlopes.size();
+                if (!maxSlopes.isEmpty()) {
+                    mainHandler.post(() -> {
+                        if (!job.cancelled) listener.onSlopes(maxSlopes);
+                    });
                 }
             }
 
-            // Set the altitude on this point
-            roadPoint.setAltitude(closestElevation);
+            int total = enriched;
+            boolean cancelled = job.cancelled;
+            Log.d(TAG, "Progressive elevation " + (cancelled ? "cancelled" : "finished") + ": " +
+                    total + " roads with slope data");
+            mainHandler.post(() -> listener.onFinished(job, total, cancelled));
+        });
+        return job;
+    }
+
+    /**
+     * Visible roads first, then by score and length. When dropLowValue is set, invisible roads
+     * below LOW_VALUE_SCORE are left out.
+     */
+    private static List<PolylineResult> prioritize(List<PolylineResult> roads, BoundingBox viewport,
+                                                   boolean dropLowValue) {
+        List<Candidate> candidates = new ArrayList<>(roads.size());
+        for (PolylineResult road : roads) {
+            boolean visible = viewport == null || road.intersects(viewport);
+            if (dropLowValue && !visible && road.getScore() < LOW_VALUE_SCORE) continue;
+            candidates.add(new Candidate(road, visible));
+        }
+        Collections.sort(candidates, (a, b) -> {
+            if (a.visible != b.visible) return a.visible ? -1 : 1;
+            if (a.road.getScore() != b.road.getScore()) return Integer.compare(b.road.getScore(), a.road.getScore());
+            return Double.compare(b.length, a.length);
+        });
+
+        List<PolylineResult> ordered = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) ordered.add(candidate.road);
+        if (ordered.size() < roads.size()) {
+            Log.d(TAG, "Dropped " + (roads.size() - ordered.size()) + " low value roads outside the viewport");
         }
+        return ordered;
+    }
+
+    private static class Candidate {
+        final PolylineResult road;
+        final boolean visible;
+        final double length;
 
-        Log.d(TAG, "Set altitude on " + roadPoints.size() + " points");
+        Candidate(PolylineResult road, boolean visible) {
+            this.road = road;
+            this.visible = visible;
+            this.length = road.getGeometry().getLengthMeters();
+        }
+    }
+
+    /**
+     * Whether rasters can be read locally, see SamplingMode
+     */
+    private static boolean rasterSampling() {
+        SrtmDemProvider dem = SrtmDemProvider.getInstance();
+        return samplingMode == SamplingMode.VIEWPORT_RASTER && dem != null && dem.hasTiles();
+    }
+
+    /**
+     * Fetch elevation for the roads, set altitudes on their geometry and return each road's max
+     * slope (-1 when unknown). Runs on the calling thread.
+     *
+     * @param job stops reading rasters once cancelled; null when not cancellable
+     */
+    private static double[] computeSlopes(List<PolylineResult> roads, boolean raster, EnrichmentJob job)
+            throws Exception {
+        double[] maxSlopes = new double[roads.size()];
+        Arrays.fill(maxSlopes, -1);
+
+        // Roads on installed SRTM tiles are sampled densely from rasters, which costs no requests
+        List<RoadElevationRequest> requests = new ArrayList<>();
+        List<GeoPoint> allElevationPoints = new ArrayList<>();
+        SrtmDemProvider dem = raster ? SrtmDemProvider.getInstance() : null;
+
+        for (int i = 0; i < roads.size(); i++) {
+            PolylineResult road = roads.get(i);
+            RoadGeometry geometry = road.getGeometry();
+            if (geometry.size() == 0) continue;
+            boolean dense = dem != null && demCovers(dem, geometry.getMaxLatitude(), geometry.getMinLatitude(),
+                    geometry.getMaxLongitude(), geometry.getMinLongitude());
+            RoadElevationRequest request = createElevationRequest(road, i, dense);
+            requests.add(request);
+            allElevationPoints.addAll(request.elevationPoints);
+        }
+
+        double[] elevations;
+        if (raster) {
+            Log.d(TAG, "Reading elevation for " + allElevationPoints.size() + " points from rasters");
+            elevations = elevationsFromRasters(allElevationPoints, job);
+        } else {
+            Log.d(TAG, "Fetching elevation for " + allElevationPoints.size() + " strategic points");
+
+            // Fetch elevations for all points at once
+            elevations = fetchElevationsInBatches(allElevationPoints);
+        }
+
+        // Process results back to roads
+        double window = slopeWindowMeters;
+        int elevationIndex = 0;
+        for (RoadElevationRequest request : requests) {
+            PolylineResult road = roads.get(request.roadIndex);
+            int sampleCount = request.elevationPoints.size();
+            double[] roadElevations = ElevationProfile.slice(elevations, elevationIndex, sampleCount);
+            elevationIndex += sampleCount;
+
+            // Calculate max slope for this road
+            maxSlopes[request.roadIndex] = ElevationProfile.maxGrade(request.sampleDistances, roadElevations,
+                    sampleCount, window);
+
+            // Set altitude on all points in the road
+            setAltitudesOnRoad(road, request, roadElevations);
+        }
+        Log.d(TAG, "Calculated slopes for " + requests.size() + " roads");
+        return maxSlopes;
+    }
+
+    private static void setAltitudesOnRoad(PolylineResult road, RoadElevationRequest request,
+                                           double[] sampledElevations) {
+        double[] altitudes = ElevationProfile.interpolate(request.sampleDistances, sampledElevations,
+                request.elevationPoints.size(), request.vertexDistances);
+        if (altitudes == null) {
+            Log.w(TAG, "No elevation known for road " + request.roadIndex + ", leaving it without altitudes");
+            return;
+        }
+
+        // Stored on the road geometry, GeoPoint views pick it up as altitude
+        road.setElevations(altitudes);
     }
 
     /**
      * Create an elevation request for a single road, needed for specific route analysis
      */
-    private static RoadElevationRequest createElevationRequest(PolylineResult road, int roadIndex) {
-        List<GeoPoint> roadPoints = road.getPoints();
-        double totalDistance = calculateTotalDistance(roadPoints);
+    private static RoadElevationRequest createElevationRequest(PolylineResult road, int roadIndex, boolean dense) {
+        RoadGeometry geometry = road.getGeometry();
+        int size = geometry.size();
+        int[] latE6 = new int[size];
+        int[] lonE6 = new int[size];
+        geometry.decode(latE6, lonE6);
 
-        RoadElevationRequest request = new RoadElevationRequest();
-        request.roadIndex = roadIndex;
-        request.totalDistance = totalDistance;
-        request.elevationPoints = new ArrayList<>();
-        request.segmentDistances = new ArrayList<>();
+        double[] vertexDistances = ElevationProfile.cumulativeDistances(geometry);
+        double totalDistance = vertexDistances[size - 1];
 
         // Strategy: Sample elevation points optimally based on road length
         int targetSamples;
-        double sampleInterval;
-
-        if (totalDistance < 100) {
+        if (dense) {
+            targetSamples = Math.max(3, (int) Math.ceil(totalDistance / RASTER_SAMPLE_SPACING_METERS) + 1);
+        } else if (totalDistance < 100) {
             targetSamples = 3;
         } else if (totalDistance < 500) {
             targetSamples = Math.max(4, (int)(totalDistance / 75));
         } else {
             targetSamples = Math.min(10, (int)(totalDistance / 100));
         }
+        double sampleInterval = totalDistance / (targetSamples - 1);
 
-        sampleInterval = totalDistance / (targetSamples - 1);
-
-        Log.d(TAG, "Road " + roadIndex + ": " + totalDistance + "m, " + targetSamples + " samples, " + sampleInterval + "m intervals");
+        RoadElevationRequest request = new RoadElevationRequest();
+        request.roadIndex = roadIndex;
+        request.totalDistance = totalDistance;
+        request.vertexDistances = vertexDistances;
+        request.elevationPoints = new ArrayList<>(targetSamples + 1);
+        double[] sampleDistances = new double[targetSamples + 1];
+        int samples = 0;
 
-        // Create sample points along the road
-        double currentDistance = 0.0;
+        // Create sample points along the road, walking the vertices once
         double nextSampleDistance = 0.0;
-
-        for (int i = 0; i < roadPoints.size() - 1; i++) {
-            GeoPoint p1 = roadPoints.get(i);
-            GeoPoint p2 = roadPoints.get(i + 1);
-            double segmentDistance = calculateDistance(p1, p2);
-            double segmentStart = currentDistance;
-            double segmentEnd = currentDistance + segmentDistance;
-
-            while (nextSampleDistance <= segmentEnd && request.elevationPoints.size() < targetSamples) {
-                if (nextSampleDistance <= segmentStart) {
-                    request.elevationPoints.add(p1);
-                    request.segmentDistances.add(nextSampleDistance);
-                } else {
-                    double ratio = (nextSampleDistance - segmentStart) / segmentDistance;
-                    double lat = p1.getLatitude() + ratio * (p2.getLatitude() - p1.getLatitude());
-                    double lon = p1.getLongitude() + ratio * (p2.getLongitude() - p1.getLongitude());
-
-                    GeoPoint samplePoint = new GeoPoint(lat, lon);
-                    request.elevationPoints.add(samplePoint);
-                    request.segmentDistances.add(nextSampleDistance);
-                }
-
+        for (int i = 0; i < size - 1 && samples < targetSamples; i++) {
+            double segmentStart = vertexDistances[i];
+            double segmentEnd = vertexDistances[i + 1];
+
+            while (nextSampleDistance <= segmentEnd && samples < targetSamples) {
+                double ratio = (nextSampleDistance <= segmentStart || segmentEnd == segmentStart) ? 0 :
+                        (nextSampleDistance - segmentStart) / (segmentEnd - segmentStart);
+                double lat = (latE6[i] + ratio * (latE6[i + 1] - latE6[i])) / 1e6;
+                double lon = (lonE6[i] + ratio * (lonE6[i + 1] - lonE6[i])) / 1e6;
+
+                request.elevationPoints.add(new GeoPoint(lat, lon));
+                sampleDistances[samples++] = Math.max(nextSampleDistance, segmentStart);
                 nextSampleDistance += sampleInterval;
             }
-
-            currentDistance += segmentDistance;
         }
 
         // Always include the last point
-        if (request.elevationPoints.size() < targetSamples ||
-                !request.elevationPoints.get(request.elevationPoints.size() - 1).equals(roadPoints.get(roadPoints.size() - 1))) {
-            request.elevationPoints.add(roadPoints.get(roadPoints.size() - 1));
-            request.segmentDistances.add(totalDistance);
+        if (samples == 0 || sampleDistances[samples - 1] < totalDistance) {
+            request.elevationPoints.add(new GeoPoint(latE6[size - 1] / 1e6, lonE6[size - 1] / 1e6));
+            sampleDistances[samples++] = totalDistance;
         }
+        request.sampleDistances = sampleDistances;
 
-        Log.d(TAG, "Created " + request.elevationPoints.size() + " elevation sample points for road " + roadIndex);
         return request;
     }
 
     /**
-     * Calculate maximum slope for a road using elevation data, needed for specific route analysis
+     * Distance over which grades are measured; samples closer together are combined with the next one
      */
-    private static double calculateRoadMaxSlope(RoadElevationRequest request, List<Double> elevations) {
-        if (elevations.size() < 2) {
-            Log.w(TAG, "Not enough elevation data for slope calculation");
-            return -1;
-        }
-
-        List<Double> segmentSlopes = new ArrayList<>();
-
-        for (int i = 1; i < elevations.size() && i < request.segmentDistances.size(); i++) {
-            double elevation1 = elevations.get(i - 1);
-            double elevation2 = elevations.get(i);
-            double distance1 = request.segmentDistances.get(i - 1);
-            double distance2 = request.segmentDistances.get(i);
+    public static void setSlopeWindowMeters(double meters) {
+        slopeWindowMeters = meters;
+    }
 
-            double horizontalDistance = distance2 - distance1;
-            double elevationDiff = Math.abs(elevation2 - elevation1);
+    /**
+     * Elevations for arbitrary points (GPX routes, exports), read from rasters where SRTM tiles are
+     * installed and looked up per point elsewhere.
+     */
+    public static void getElevationsFromRasters(List<GeoPoint> points, ElevationsCallback callback) {
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        List<GeoPoint> copy = new ArrayList<>(points);
 
-            if (Double.isNaN(elevation1) || Double.isNaN(elevation2)) {
-                Log.w(TAG, "NaN elevation values, skipping segment");
-                continue;
+        executor.execute(() -> {
+            try {
+                double[] elevations = elevationsFromRasters(copy, null);
+                mainHandler.post(() -> callback.onSuccess(elevations));
+            } catch (Exception e) {
+                Log.e(TAG, "Error reading elevation rasters: " + e.getMessage(), e);
+                mainHandler.post(() -> callback.onError("Failed to get elevation: " + e.getMessage()));
             }
+        });
+    }
 
-            if (elevation1 < -100 || elevation1 > 5000 || elevation2 < -100 || elevation2 > 5000) {
-                Log.w(TAG, "Suspicious elevation values: " + elevation1 + ", " + elevation2);
-                continue;
-            }
+    /**
+     * At most limit of the tiles, those whose centre is nearest the centre of the viewport first
+     */
+    private static List<Long> nearestTiles(List<Long> tiles, BoundingBox viewport, int limit) {
+        if (tiles.size() <= limit) return tiles;
+
+        double centerLat = (viewport.getLatNorth() + viewport.getLatSouth()) / 2;
+        double centerLon = (viewport.getLonEast() + viewport.getLonWest()) / 2;
+        List<Long> sorted = new ArrayList<>(tiles);
+        Map<Long, Double> distance = new HashMap<>();
+        for (long tile : sorted) {
+            BoundingBox bounds = RoadTileCache.tileBounds(tile);
+            double dLat = (bounds.getLatNorth() + bounds.getLatSouth()) / 2 - centerLat;
+            double dLon = ((bounds.getLonEast() + bounds.getLonWest()) / 2 - centerLon)
+                    * Math.cos(Math.toRadians(centerLat));
+            distance.put(tile, dLat * dLat + dLon * dLon);
+        }
+        Collections.sort(sorted, (a, b) -> Double.compare(distance.get(a), distance.get(b)));
+        return sorted.subList(0, limit);
+    }
 
-            if (horizontalDistance < 20) {
-                Log.d(TAG, "Segment too short: " + horizontalDistance + "m, skipping");
-                continue;
-            }
+    /**
+     * Whether installed SRTM tiles cover all four corners of the bounds (SRTM tiles are whole degrees,
+     * so then they cover everything in between)
+     */
+    private static boolean demCovers(SrtmDemProvider dem, double north, double south, double east, double west) {
+        return dem.covers(north, west) && dem.covers(north, east) && dem.covers(south, west) && dem.covers(south, east);
+    }
 
-            double slopePercent = (elevationDiff / horizontalDistance) * 100.0;
+    private static long tileOf(GeoPoint point) {
+        return RoadTileCache.tileKey(RoadTileCache.lonToTileX(point.getLongitude()),
+                RoadTileCache.latToTileY(point.getLatitude()));
+    }
 
-            if (slopePercent >= 0 && slopePercent <= 40) {
-                segmentSlopes.add(slopePercent);
-                Log.d(TAG, String.format("Segment %.0f-%.0fm: %.1f%% slope (%.1fm rise over %.1fm)",
-                        distance1, distance2, slopePercent, elevationDiff, horizontalDistance));
+    /**
+     * Interpolate points from the raster of their road tile, for at most MAX_CALL_RASTER_TILES tiles;
+     * points in other tiles (no SRTM tile installed, over the cap, or cancelled) are looked up per point
+     *
+     * @param job stops reading rasters once cancelled; null when not cancellable
+     */
+    private static double[] elevationsFromRasters(List<GeoPoint> points, EnrichmentJob job) throws Exception {
+        Set<Long> tiles = new LinkedHashSet<>();
+        for (GeoPoint point : points) {
+            if (tiles.size() == MAX_CALL_RASTER_TILES) break;
+            tiles.add(tileOf(point));
+        }
+        Map<Long, ElevationRaster> byTile = rastersFor(tiles, job);
+
+        double[] elevations = new double[points.size()];
+        List<GeoPoint> others = new ArrayList<>();
+        List<Integer> otherIndexes = new ArrayList<>();
+        for (int i = 0; i < points.size(); i++) {
+            GeoPoint point = points.get(i);
+            ElevationRaster tileRaster = byTile.get(tileOf(point));
+            if (tileRaster != null) {
+                elevations[i] = tileRaster.getElevation(point.getLatitude(), point.getLongitude());
             } else {
-                Log.w(TAG, "Slope out of range: " + slopePercent + "%");
+                others.add(point);
+                otherIndexes.add(i);
             }
         }
 
-        if (segmentSlopes.isEmpty()) {
-            Log.w(TAG, "No valid slopes calculated");
-            return -1;
+        if (!others.isEmpty()) {
+            Log.d(TAG, others.size() + " points outside the elevation rasters, looking them up per point");
+            double[] fetched = fetchElevationsInBatches(others);
+            for (int i = 0; i < fetched.length; i++) {
+                elevations[otherIndexes.get(i)] = fetched[i];
+            }
         }
-
-        segmentSlopes.sort(Double::compareTo);
-        double maxSlope = segmentSlopes.get(segmentSlopes.size() - 1);
-
-        Log.d(TAG, "All slopes: " + segmentSlopes + " -> Max: " + maxSlope + "%");
-
-        return Math.min(35.0, maxSlope);
+        return elevations;
     }
 
-    private static List<Double> fetchElevationsInBatches(List<GeoPoint> points) throws Exception {
-        List<Double> allElevations = new ArrayList<>();
-        int batchSize = 10;
-
-        for (int start = 0; start < points.size(); start += batchSize) {
-            int end = Math.min(start + batchSize, points.size());
-            List<GeoPoint> batch = points.subList(start, end);
-
-            Log.d(TAG, "Fetching elevation batch " + (start/batchSize + 1) + " of " +
-                    ((points.size() + batchSize - 1)/batchSize));
-
-            try {
-                List<Double> batchElevations = fetchBatchElevations(batch);
-                allElevations.addAll(batchElevations);
-            } catch (Exception e) {
-                Log.w(TAG, "Batch failed: " + e.getMessage() + ". Using defaults.");
-                for (int i = 0; i < batch.size(); i++) {
-                    allElevations.add(100.0);
+    /**
+     * Rasters for those of the given road tiles that installed SRTM tiles cover, read locally; tiles
+     * without SRTM data are left out rather than sampled over the network. Rasters with voids are
+     * returned but not kept.
+     *
+     * @param job stops reading further tiles once cancelled; null when not cancellable
+     */
+    private static Map<Long, ElevationRaster> rastersFor(Collection<Long> tiles, EnrichmentJob job) {
+        Map<Long, ElevationRaster> result = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        synchronized (rasters) {
+            for (long tile : tiles) {
+                ElevationRaster raster = rasters.get(tile);
+                if (raster != null) {
+                    result.put(tile, raster);
+                } else {
+                    missing.add(tile);
                 }
             }
+        }
+        SrtmDemProvider dem = SrtmDemProvider.getInstance();
+        if (missing.isEmpty() || dem == null) return result;
+
+        int read = 0;
+        for (long tile : missing) {
+            if (job != null && job.cancelled) break;
+            BoundingBox bounds = RoadTileCache.tileBounds(tile);
+            if (!demCovers(dem, bounds.getLatNorth(), bounds.getLatSouth(), bounds.getLonEast(), bounds.getLonWest())) {
+                continue;
+            }
 
-            if (end < points.size()) {
-                try {
-                    Thread.sleep(600);
-                } catch (InterruptedException ignored) {}
+            ElevationRaster raster = ElevationRaster.covering(bounds, RASTER_STEP_CELLS);
+            for (int i = 0; i < raster.sampleCount(); i++) {
+                raster.setSample(i, dem.getElevation(raster.sampleLatitude(i), raster.sampleLongitude(i)));
+            }
+            read++;
+
+            result.put(tile, raster);
+            if (raster.voidCount() == 0) {
+                synchronized (rasters) {
+                    rasters.put(tile, raster);
+                    while (rasters.size() > MAX_RASTER_TILES) {
+                        rasters.remove(rasters.keySet().iterator().next());
+                    }
+                }
             }
         }
-
-        return allElevations;
+        Log.d(TAG, "Read " + read + " of " + missing.size() + " missing elevation rasters from SRTM tiles");
+        return result;
     }
 
-    private static List<Double> fetchBatchElevations(List<GeoPoint> batch) throws Exception {
-        StringBuilder locations = new StringBuilder();
-        for (int i = 0; i < batch.size(); i++) {
-            if (i > 0) locations.append("|");
-            GeoPoint point = batch.get(i);
-            locations.append(String.format(java.util.Locale.US, "%.6f,%.6f",
-                    point.getLatitude(), point.getLongitude()));
-        }
-
-        String apiUrl = "https://api.opentopodata.org/v1/srtm30m";
-        String fullUrl = apiUrl + "?locations=" + locations.toString();
-
-        HttpURLConnection conn = null;
-        try {
-            URL url = new URL(fullUrl);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(15000);
-            conn.setReadTimeout(20000);
-            conn.setRequestProperty("User-Agent", "GRVLFinder-Android/1.0");
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode != 200) {
-                throw new Exception("API returned HTTP " + responseCode);
+    /**
+     * Elevations for all points: from local SRTM tiles when installed, then from ElevationCache;
+     * only what neither has goes to the API
+     */
+    private static double[] fetchElevationsInBatches(List<GeoPoint> points) throws Exception {
+        SrtmDemProvider dem = SrtmDemProvider.getInstance();
+        ElevationCache cache = ElevationCache.getInstance();
+        double[] allElevations = new double[points.size()];
+
+        // Points sharing an arc second cell (junctions shared by several ways, dense vertices)
+        // are looked up once; the cell value is fanned out to every point afterwards
+        Map<Long, Integer> cellIndexes = new HashMap<>();
+        List<Long> cells = new ArrayList<>();
+        int[] cellOfPoint = new int[points.size()];
+        int fromDem = 0;
+
+        for (int i = 0; i < points.size(); i++) {
+            GeoPoint point = points.get(i);
+            double elevation = (dem != null) ? dem.getElevation(point.getLatitude(), point.getLongitude()) : Double.NaN;
+            allElevations[i] = elevation;
+            cellOfPoint[i] = -1;
+            if (!Double.isNaN(elevation)) {
+                fromDem++;
+                continue;
             }
 
-            BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
+            long cell = ElevationCache.cellKey(point.getLatitude(), point.getLongitude());
+            Integer index = cellIndexes.get(cell);
+            if (index == null) {
+                index = cells.size();
+                cellIndexes.put(cell, index);
+                cells.add(cell);
             }
-            reader.close();
-
-            return parseElevationResponse(response.toString(), batch.size());
+            cellOfPoint[i] = index;
+        }
 
-        } finally {
-            if (conn != null) conn.disconnect();
+        double[] cellElevations = new double[cells.size()];
+        List<GeoPoint> misses = new ArrayList<>();
+        List<Integer> missCells = new ArrayList<>();
+        for (int c = 0; c < cells.size(); c++) {
+            GeoPoint center = ElevationCache.cellCenter(cells.get(c));
+            cellElevations[c] = (cache != null) ? cache.get(center.getLatitude(), center.getLongitude()) : Double.NaN;
+            if (Double.isNaN(cellElevations[c])) {
+                misses.add(center);
+                missCells.add(c);
+            }
         }
-    }
 
-    private static List<Double> parseElevationResponse(String responseText, int expectedCount) throws Exception {
-        JSONObject responseJson = new JSONObject(responseText);
-        String status = responseJson.getString("status");
+        Log.d(TAG, "Elevation for " + points.size() + " points: " + fromDem + " from DEM, " + cells.size() +
+                " distinct cells, " + (cells.size() - misses.size()) + " cached, " + misses.size() + " to fetch");
 
-        if (!"OK".equals(status)) {
-            throw new Exception("API status: " + status);
+        if (!misses.isEmpty()) {
+            double[] fetched = fetchFromNetwork(misses, cache);
+            for (int i = 0; i < missCells.size(); i++) {
+                cellElevations[missCells.get(i)] = fetched[i];
+            }
         }
 
-        JSONArray results = responseJson.getJSONArray("results");
-        List<Double> elevations = new ArrayList<>();
-
-        for (int i = 0; i < results.length(); i++) {
-            JSONObject result = results.getJSONObject(i);
-            if (result.has("elevation") && !result.isNull("elevation")) {
-                double elevation = result.getDouble("elevation");
-                elevations.add(elevation);
-            } else {
-                elevations.add(100.0);
+        for (int i = 0; i < points.size(); i++) {
+            if (cellOfPoint[i] >= 0) {
+                allElevations[i] = cellElevations[cellOfPoint[i]];
             }
         }
+        return allElevations;
+    }
 
-        while (elevations.size() < expectedCount) {
-            elevations.add(100.0);
+    /**
+     * Fetch points in batches of BATCH_SIZE, at most MAX_PARALLEL_BATCHES at a time, paced by the shared
+     * rate limiter. Points of batches that still fail after retrying are NaN (missing), never a made-up value.
+     */
+    private static double[] fetchFromNetwork(List<GeoPoint> points, ElevationCache cache)
+            throws InterruptedException {
+        double[] elevations = new double[points.size()];
+        Arrays.fill(elevations, Double.NaN);
+
+        ExecutorCompletionService<Void> completion = new ExecutorCompletionService<>(batchExecutor);
+        int batchCount = 0;
+        for (int start = 0; start < points.size(); start += BATCH_SIZE) {
+            int from = start;
+            int end = Math.min(start + BATCH_SIZE, points.size());
+            List<GeoPoint> batch = points.subList(from, end);
+            completion.submit(() -> {
+                HedgedElevationClient.Answer answer = fetchBatchWithRetry(batch);
+                System.arraycopy(answer.elevations, 0, elevations, from, batch.size());
+                // The cache holds srtm30m cells; other datasets would show their offsets as fake grades
+                if (cache != null && answer.primary) {
+                    cacheBatch(cache, batch, answer.elevations);
+                }
+                return null;
+            });
+            batchCount++;
         }
 
+        int failed = 0;
+        for (int i = 0; i < batchCount; i++) {
+            try {
+                completion.take().get();
+            } catch (ExecutionException e) {
+                // Missing points are not cached, they are asked again next time
+                failed++;
+                Log.w(TAG, "Elevation batch failed: " + e.getCause().getMessage() + ". Points marked missing.");
+            }
+        }
+        Log.d(TAG, "Fetched " + batchCount + " elevation batches, " + failed + " failed");
+        elevationClient.logMetrics();
         return elevations;
     }
 
-    private static double calculateTotalDistance(List<GeoPoint> points) {
-        double total = 0.0;
-        for (int i = 1; i < points.size(); i++) {
-            total += calculateDistance(points.get(i-1), points.get(i));
+    /**
+     * Each attempt goes to all providers in turn (hedged); only when every provider failed do we back off
+     */
+    private static HedgedElevationClient.Answer fetchBatchWithRetry(List<GeoPoint> batch) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return elevationClient.fetch(batch);
+            } catch (Exception e) {
+                if (attempt >= MAX_ATTEMPTS) throw e;
+                Log.w(TAG, "Elevation batch attempt " + attempt + " failed: " + e.getMessage());
+                Thread.sleep(1000L << (attempt - 1));
+            }
         }
-        return total;
     }
 
-    private static double calculateDistance(GeoPoint p1, GeoPoint p2) {
-        double lat1Rad = Math.toRadians(p1.getLatitude());
-        double lat2Rad = Math.toRadians(p2.getLatitude());
-        double deltaLatRad = Math.toRadians(p2.getLatitude() - p1.getLatitude());
-        double deltaLonRad = Math.toRadians(p2.getLongitude() - p1.getLongitude());
-
-        double a = Math.sin(deltaLatRad / 2) * Math.sin(deltaLatRad / 2) +
-                Math.cos(lat1Rad) * Math.cos(lat2Rad) *
-                        Math.sin(deltaLonRad / 2) * Math.sin(deltaLonRad / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-
-        return 6371000 * c;
+    private static void cacheBatch(ElevationCache cache, List<GeoPoint> batch, double[] elevations) {
+        int n = batch.size();
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = batch.get(i).getLatitude();
+            lons[i] = batch.get(i).getLongitude();
+        }
+        cache.putAll(lats, lons, elevations, n);
     }
 
     private static class RoadElevationRequest {
         int roadIndex;
         double totalDistance;
+        double[] vertexDistances;   // cumulative distance of every road vertex
         List<GeoPoint> elevationPoints;
-        List<Double> segmentDistances;
+        double[] sampleDistances;   // cumulative distance of every sample, ascending
     }
 }
\ No newline at end of file
@@ -29,7 +29,7 @@ public class EnhancedPolylineDetailsDialog {
 
         // Weather Warning (if applicable)
         if (weatherCalc != null && weatherCalc.hasWeatherData()) {
-            String weatherWarning = weatherCalc.getWeatherWarning(polylineResult.getTags());
+            String weatherWarning = weatherCalc.getWeatherWarning(polylineResult);
             if (weatherWarning != null) {
                 TextView warningView = createWarningView(context, weatherWarning);
                 container.addView(warningView);
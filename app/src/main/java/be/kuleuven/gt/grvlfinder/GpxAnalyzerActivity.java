@@ -38,6 +38,8 @@ public class GpxAnalyzerActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_gpx_analyzer);
+        ElevationCache.init(this);
+        SrtmDemProvider.init(this);
 
         // Initialize BikeTypeManager with preferences
         SharedPreferences prefs = getSharedPreferences("bike_prefs", MODE_PRIVATE);
@@ -37,6 +37,11 @@ public class GpxElevationHelper {
             return;
         }
 
+        if (ElevationService.getSamplingMode() == ElevationService.SamplingMode.VIEWPORT_RASTER) {
+            addElevationFromRasters(route, callback);
+            return;
+        }
+
         Log.d(TAG, "Fetching elevation data for " + route.size() + " points");
 
         // Sample route points if too many (max 100 points for API limits)
@@ -72,6 +77,33 @@ public class GpxElevationHelper {
         });
     }
 
+    /**
+     * Every route point interpolated from the elevation rasters of the tiles the route crosses,
+     * no sampling needed
+     */
+    private static void addElevationFromRasters(List<GeoPoint> route, ElevationCallback callback) {
+        Log.d(TAG, "Reading elevation for " + route.size() + " points from rasters");
+
+        ElevationService.getElevationsFromRasters(route, new ElevationService.ElevationsCallback() {
+            @Override
+            public void onSuccess(double[] elevations) {
+                List<GeoPoint> routeWithElevation = new java.util.ArrayList<>(route.size());
+                for (int i = 0; i < route.size(); i++) {
+                    GeoPoint point = route.get(i);
+                    double elevation = Double.isNaN(elevations[i]) ? 0.0 : elevations[i];
+                    routeWithElevation.add(new GeoPoint(point.getLatitude(), point.getLongitude(), elevation));
+                }
+                callback.onElevationAdded(routeWithElevation);
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.w(TAG, "Failed to fetch elevation: " + error);
+                callback.onError(error);
+            }
+        });
+    }
+
     /**
      * Sample route points for elevation lookup (avoid hitting API limits)
      */
@@ -405,6 +405,8 @@ public class GpxEvaluator {
                                              RouteAnalysis analysis,
                                              ScoreCalculator scoreCalculator,
                                              BikeTypeManager bikeTypeManager) {
+        // One consistent set of weights for the whole batch
+        ScoreCalculator.Snapshot scoring = scoreCalculator.snapshot();
 
         for (RouteSegment segment : segments) {
             PolylineResult bestMatch = findClosestRoad(segment, osmRoads);
@@ -423,9 +425,9 @@ public class GpxEvaluator {
                     // Use score fallback
                     int score;
                     if (segment.slope >= 0) {
-                        score = scoreCalculator.calculateScoreWithSlope(tags, bestMatch.getPoints(), segment.slope);
+                        score = scoring.scoreWithSlope(bestMatch, segment.slope);
                     } else {
-                        score = scoreCalculator.calculateScore(tags, bestMatch.getPoints());
+                        score = scoring.scoreFromTags(bestMatch);
                     }
 
                     if (score >= SCORE_ASPHALT_THRESHOLD) {
@@ -0,0 +1,142 @@
+package be.kuleuven.gt.grvlfinder;
+
+import android.util.Log;
+
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends each batch to the preferred elevation provider and, when it has not answered within its usual
+ * (90th percentile) latency, to the next provider as well; whichever answers first wins. A provider
+ * that fails hands the batch on right away, so one slow or rate limited host no longer stalls a search.
+ * Only answers from the first configured provider are marked primary: the datasets differ by metres,
+ * so callers should not mix the others into caches of that dataset.
+ */
+class HedgedElevationClient {
+    private static final String TAG = "HedgedElevationClient";
+
+    private static final double HEDGE_PERCENTILE = 0.9;
+    private static final long DEFAULT_HEDGE_DELAY_MS = 4000; // Until a provider has a latency history
+    private static final long MIN_HEDGE_DELAY_MS = 500;
+    private static final long MAX_HEDGE_DELAY_MS = 8000;
+    private static final double UNHEALTHY_ERROR_RATE = 0.5;
+
+    private final List<HttpElevationProvider> providers;
+    private final ExecutorService callExecutor = Executors.newCachedThreadPool();
+
+    static final class Answer {
+        final HttpElevationProvider provider;
+        final double[] elevations;
+        final boolean primary; // From the first configured provider
+
+        Answer(HttpElevationProvider provider, double[] elevations, boolean primary) {
+            this.provider = provider;
+            this.elevations = elevations;
+            this.primary = primary;
+        }
+    }
+
+    /**
+     * @param providers in order of preference
+     */
+    HedgedElevationClient(List<HttpElevationProvider> providers) {
+        this.providers = new ArrayList<>(providers);
+    }
+
+    Answer fetch(List<GeoPoint> batch) throws Exception {
+        List<HttpElevationProvider> order = preferenceOrder();
+        ExecutorCompletionService<Answer> completion = new ExecutorCompletionService<>(callExecutor);
+        List<Future<Answer>> calls = new ArrayList<>();
+        Exception lastError = null;
+        int finished = 0;
+
+        try {
+            calls.add(submit(completion, order.get(0), batch));
+            // A host held back after a 429 won't even send before Retry-After, so hedge right away
+            long hedgeAt = order.get(0).getRateLimiter().isBlocked()
+                    ? System.currentTimeMillis() : System.currentTimeMillis() + hedgeDelay(order.get(0));
+
+            while (true) {
+                Future<Answer> done;
+                if (calls.size() == 1 && order.size() > 1) {
+                    long wait = hedgeAt - System.currentTimeMillis();
+                    done = wait > 0 ? completion.poll(wait, TimeUnit.MILLISECONDS) : null;
+                    if (done == null) {
+                        Log.d(TAG, order.get(0).getName() + " slow, hedging to " + order.get(1).getName());
+                        calls.add(submit(completion, order.get(1), batch));
+                        continue;
+                    }
+                } else {
+                    done = completion.take();
+                }
+                finished++;
+
+                try {
+                    Answer answer = done.get();
+                    if (answer.provider != order.get(0)) {
+                        answer.provider.getMetrics().recordHedgeWin();
+                    }
+                    return answer;
+                } catch (ExecutionException e) {
+                    lastError = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    Log.w(TAG, "Elevation provider failed: " + lastError.getMessage());
+                }
+
+                // Hand the batch on when nothing else is still running
+                if (finished == calls.size()) {
+                    if (calls.size() == order.size()) throw lastError;
+                    calls.add(submit(completion, order.get(calls.size()), batch));
+                }
+            }
+        } finally {
+            for (Future<Answer> call : calls) {
+                call.cancel(true);
+            }
+        }
+    }
+
+    private Future<Answer> submit(ExecutorCompletionService<Answer> completion, HttpElevationProvider provider,
+                                  List<GeoPoint> batch) {
+        boolean primary = provider == providers.get(0);
+        return completion.submit(() -> new Answer(provider, provider.fetchElevations(batch), primary));
+    }
+
+    /**
+     * Configured order, with providers failing most of their recent calls moved to the back
+     */
+    private List<HttpElevationProvider> preferenceOrder() {
+        List<HttpElevationProvider> healthy = new ArrayList<>();
+        List<HttpElevationProvider> unhealthy = new ArrayList<>();
+        for (HttpElevationProvider provider : providers) {
+            if (provider.getMetrics().recentErrorRate() < UNHEALTHY_ERROR_RATE) {
+                healthy.add(provider);
+            } else {
+                unhealthy.add(provider);
+            }
+        }
+        healthy.addAll(unhealthy);
+        return healthy;
+    }
+
+    private static long hedgeDelay(HttpElevationProvider provider) {
+        long percentile = provider.getMetrics().latencyPercentile(HEDGE_PERCENTILE);
+        if (percentile < 0) return DEFAULT_HEDGE_DELAY_MS;
+        return Math.max(MIN_HEDGE_DELAY_MS, Math.min(MAX_HEDGE_DELAY_MS, percentile));
+    }
+
+    void logMetrics() {
+        for (HttpElevationProvider provider : providers) {
+            Log.d(TAG, provider.getName() + ": " + provider.getMetrics() + ", rate " +
+                    String.format(Locale.US, "%.2f", provider.getRateLimiter().getRate()) + "/s");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package be.kuleuven.gt.grvlfinder;
+
+import org.osmdroid.util.GeoPoint;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Elevation web API answering one GET per batch with JSON. Requests are paced by the limiter of the
+ * host (shared by every dataset on it) and timed into the provider's metrics.
+ */
+abstract class HttpElevationProvider implements ElevationProvider {
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_TIMEOUT_MS = 10000; // A slow host is hedged long before this
+
+    private final String name;
+    private final AdaptiveRateLimiter rateLimiter;
+    private final ProviderMetrics metrics = new ProviderMetrics();
+
+    HttpElevationProvider(String name, AdaptiveRateLimiter rateLimiter) {
+        this.name = name;
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    ProviderMetrics getMetrics() {
+        return metrics;
+    }
+
+    AdaptiveRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    abstract String buildUrl(List<GeoPoint> points);
+
+    abstract double[] parseResponse(String responseText, int expectedCount) throws Exception;
+
+    @Override
+    public double[] fetchElevations(List<GeoPoint> points) throws Exception {
+        rateLimiter.acquire();
+        long start = System.currentTimeMillis();
+        try {
+            double[] elevations = parseResponse(get(buildUrl(points)), points.size());
+            metrics.recordSuccess(System.currentTimeMillis() - start);
+            rateLimiter.onSuccess();
+            return elevations;
+        } catch (RateLimitedException e) {
+            metrics.recordFailure(true);
+            rateLimiter.onRateLimited(e.retryAfterMs);
+            throw e;
+        } catch (Exception e) {
+            // A hedge that lost is cancelled by interrupting it, which says nothing about the host
+            if (!wasInterrupted(e)) metrics.recordFailure(false);
+            throw e;
+        }
+    }
+
+    private static boolean wasInterrupted(Exception e) {
+        if (Thread.currentThread().isInterrupted() || e instanceof InterruptedException) return true;
+        return e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+    }
+
+    private static String get(String fullUrl) throws Exception {
+        HttpURLConnection conn = null;
+        try {
+            URL url = new URL(fullUrl);
+            conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestMethod("GET");
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setRequestProperty("User-Agent", "GRVLFinder-Android/1.0");
+
+            int responseCode = conn.getResponseCode();
+            if (responseCode == 429) {
+                throw new RateLimitedException(RateLimitedException.parseRetryAfter(conn.getHeaderField("Retry-After")));
+            }
+            if (responseCode != 200) {
+                throw new Exception("API returned HTTP " + responseCode);
+            }
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
+            StringBuilder response = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                response.append(line);
+            }
+            reader.close();
+            return response.toString();
+
+        } finally {
+            if (conn != null) conn.disconnect();
+        }
+    }
+}
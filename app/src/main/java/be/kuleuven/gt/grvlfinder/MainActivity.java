@@ -22,15 +22,18 @@ import org.osmdroid.views.overlay.MapEventsOverlay;
 import org.osmdroid.views.overlay.Polyline;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
 
 public class MainActivity extends BaseMapActivity {
 
     private static final String TAG = "MainActivity";
-    private static final double MAX_VIEWPORT_SPAN_DEG = 0.3;
-    private static final long CACHE_TTL_MS = 60 * 1000;
+    private static final double MAX_VIEWPORT_SPAN_DEG = 1.0; // Larger viewports are fetched as parallel tile chunks
 
     private Button findButton, exportButton, undoButton, criteriaButton, drawExploreButton, gpxAnalyzerButton;
     private Button weatherButton; // NEW
@@ -42,9 +45,16 @@ public class MainActivity extends BaseMapActivity {
     private RouteManager routeManager;
 
     private List<Polyline> currentPolylines = new ArrayList<>();
-    private BoundingBox lastBBoxQueried = null;
     private List<PolylineResult> lastResultsCache = null;
-    private long lastQueryTimeMs = 0;
+
+    // Rescoring and slope updates run here, one after another, each producing a new result list.
+    // workerResults is the newest list and only touched on that thread; lastResultsCache is only
+    // swapped on the UI thread, and only while resultsEpoch still matches the search it came from.
+    // Owned by this activity instance and shut down with it, since the submitted work captures it.
+    private final ExecutorService rescoreExecutor = Executors.newSingleThreadExecutor();
+    private List<PolylineResult> workerResults = null;
+    private int resultsEpoch = 0;
+    private ElevationService.EnrichmentJob elevationJob = null;
 
     private boolean isDrawingRoute = false;
     private boolean hasLoadedRoads = false;
@@ -56,7 +66,6 @@ public class MainActivity extends BaseMapActivity {
 
     private boolean hasLoadedWeatherOnce = false;
     private GeoPoint lastWeatherFetchLocation = null;
-    private static final double WEATHER_REFETCH_DISTANCE_KM = 5.0;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -64,6 +73,10 @@ public class MainActivity extends BaseMapActivity {
         setContentView(R.layout.activity_main);
 
         initializeMap(findViewById(R.id.map));
+        RoadTileCache.init(this);
+        ElevationCache.init(this);
+        SrtmDemProvider.init(this);
+        WeatherCache.init(this);
 
         initializeWeights();
         scoreCalculator = new WeatherAwareScoreCalculator(weights);
@@ -89,17 +102,40 @@ public class MainActivity extends BaseMapActivity {
             public boolean onScroll(org.osmdroid.events.ScrollEvent event) {
                 // Optional: Fetch weather when user scrolls to new area
                 // fetchWeatherForCurrentViewport();
+                onViewportChanged();
                 return false;
             }
 
             @Override
             public boolean onZoom(org.osmdroid.events.ZoomEvent event) {
+                onViewportChanged();
                 return false;
             }
         });
 
     }
 
+    @Override
+    protected void onDestroy() {
+        // Drop queued rescoring and any result still on its way to the UI thread
+        resultsEpoch++;
+        rescoreExecutor.shutdownNow();
+        if (elevationJob != null) {
+            elevationJob.cancel();
+            elevationJob = null;
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Elevation still being fetched follows the viewport: visible roads first, low value roads elsewhere dropped
+     */
+    private void onViewportChanged() {
+        if (elevationJob != null) {
+            elevationJob.setViewport(map.getBoundingBox());
+        }
+    }
+
     private void bindUI() {
         findButton = findViewById(R.id.findButton);
         exportButton = findViewById(R.id.exportButton);
@@ -195,6 +231,16 @@ public class MainActivity extends BaseMapActivity {
         }
     }
 
+    /**
+     * Warn about loaded roads that get a mud penalty, using the same per-road rain as the scores
+     */
+    private void showMudWarning() {
+        String warning = scoreCalculator.getMudWarning(lastResultsCache);
+        if (warning != null) {
+            Toast.makeText(this, warning, Toast.LENGTH_LONG).show();
+        }
+    }
+
     private void fetchWeatherForLocation(GeoPoint location) {
         Log.d(TAG, "Fetching weather for: " + location.getLatitude() + ", " + location.getLongitude());
 
@@ -210,23 +256,12 @@ public class MainActivity extends BaseMapActivity {
                             WeatherLegendView.updateWeatherStatus(weatherLegendView, condition);
                         }
 
-                        // Show notification if muddy
-                        if (condition.isMuddy) {
-                            Toast.makeText(MainActivity.this,
-                                    condition.warningMessage,
-                                    Toast.LENGTH_LONG).show();
-                        }
+                        // Show notification if loaded roads get a mud penalty
+                        showMudWarning();
 
                         // Re-score existing roads if we have them
                         if (lastResultsCache != null && !lastResultsCache.isEmpty()) {
-                            for (PolylineResult road : lastResultsCache) {
-                                int newScore = scoreCalculator.calculateScore(
-                                        road.getTags(),
-                                        road.getPoints()
-                                );
-                                road.setScore(newScore);
-                            }
-                            updateMapFilter();
+                            rescoreLoadedRoads();
                         }
 
                         Log.d(TAG, "Weather updated: " + condition.rainyDaysCount +
@@ -404,6 +439,11 @@ public class MainActivity extends BaseMapActivity {
         }
         currentPolylines.clear();
 
+        addResultPolylines(results);
+        map.invalidate();
+    }
+
+    private void addResultPolylines(List<PolylineResult> results) {
         for (PolylineResult pr : results) {
             Polyline pl = new Polyline();
             pl.setPoints(pr.getPoints());
@@ -428,7 +468,6 @@ public class MainActivity extends BaseMapActivity {
             map.getOverlays().add(pl);
             currentPolylines.add(pl);
         }
-        map.invalidate();
     }
 
     private void initializeWeights() {
@@ -453,14 +492,6 @@ public class MainActivity extends BaseMapActivity {
         }
     }
 
-    private boolean bboxSimilar(BoundingBox a, BoundingBox b) {
-        double tol = 0.002;
-        return Math.abs(a.getLatNorth() - b.getLatNorth()) < tol &&
-                Math.abs(a.getLatSouth() - b.getLatSouth()) < tol &&
-                Math.abs(a.getLonEast() - b.getLonEast()) < tol &&
-                Math.abs(a.getLonWest() - b.getLonWest()) < tol;
-    }
-
     private static final int REQ_PERM_LOCATION = 1234;
 
     @Override
@@ -481,7 +512,7 @@ public class MainActivity extends BaseMapActivity {
                         updateUIForBikeType();
                         Toast.makeText(MainActivity.this,
                                 "Selected: " + bikeType.getDisplayName(), Toast.LENGTH_SHORT).show();
-                        invalidateCache();
+                        applyScoringChange();
                     }
 
                     @Override
@@ -513,7 +544,7 @@ public class MainActivity extends BaseMapActivity {
 
                         Toast.makeText(MainActivity.this,
                                 "Custom criteria saved", Toast.LENGTH_SHORT).show();
-                        invalidateCache();
+                        applyScoringChange();
                     }
                 });
     }
@@ -553,12 +584,84 @@ public class MainActivity extends BaseMapActivity {
     }
 
     private void invalidateCache() {
-        lastBBoxQueried = null;
-        lastResultsCache = null;
-        lastQueryTimeMs = 0;
+        // Raw roads stay in RoadTileCache, they are rescored on the next search
+        publishResults(null);
         hasLoadedRoads = false;
     }
 
+    /**
+     * Start over with a new result set (or none); pending background updates of the old one are dropped
+     */
+    private void publishResults(List<PolylineResult> results) {
+        if (elevationJob != null && results == null) {
+            elevationJob.cancel();
+            elevationJob = null;
+        }
+        lastResultsCache = results;
+        resultsEpoch++;
+        runOnWorker(() -> workerResults = results);
+    }
+
+    /**
+     * Queue work on the rescore thread; callbacks arriving after onDestroy are dropped
+     */
+    private void runOnWorker(Runnable task) {
+        if (rescoreExecutor.isShutdown()) return;
+        rescoreExecutor.execute(task);
+    }
+
+    /**
+     * Replace the result list by transform(newest list) computed on the worker, then redraw.
+     * The displayed list is never modified; the new one is swapped in unless a newer search came first.
+     */
+    private void updateResultsInBackground(String what, UnaryOperator<List<PolylineResult>> transform) {
+        int epoch = resultsEpoch;
+        runOnWorker(() -> {
+            if (workerResults == null || workerResults.isEmpty()) return;
+
+            long start = System.currentTimeMillis();
+            List<PolylineResult> updated = transform.apply(workerResults);
+            workerResults = updated;
+            Log.d(TAG, what + " " + updated.size() + " roads in " + (System.currentTimeMillis() - start) + " ms");
+
+            runOnUiThread(() -> {
+                if (epoch != resultsEpoch) {
+                    Log.d(TAG, "Discarding update of an older result set");
+                    return;
+                }
+                lastResultsCache = updated;
+                routeManager.setLastResults(updated);
+                // Update the map display
+                updateMapFilter();
+            });
+        });
+    }
+
+    /**
+     * Weights or bike type changed: rescore the loaded roads in place from their score components.
+     * Only when the new bike type needs slopes the loaded roads don't have do we go back to the network.
+     */
+    private void applyScoringChange() {
+        if (lastResultsCache == null || lastResultsCache.isEmpty()) {
+            invalidateCache();
+            return;
+        }
+
+        if (bikeTypeManager.shouldFetchElevationData() && !hasSlopeData(lastResultsCache)) {
+            invalidateCache();
+            return;
+        }
+
+        rescoreLoadedRoads();
+    }
+
+    private static boolean hasSlopeData(List<PolylineResult> roads) {
+        for (PolylineResult road : roads) {
+            if (road.getMaxSlopePercent() >= 0) return true;
+        }
+        return false;
+    }
+
     private void openTutorial() {
         Intent intent = new Intent(this, TutorialActivity.class);
         startActivity(intent);
@@ -594,12 +697,8 @@ public class MainActivity extends BaseMapActivity {
                             WeatherLegendView.animateUpdate(weatherLegendView);
                         }
 
-                        // Show notification if muddy
-                        if (condition.isMuddy) {
-                            Toast.makeText(MainActivity.this,
-                                    "⚠️ " + condition.rainyDaysCount + " rainy days detected - dirt roads may be muddy",
-                                    Toast.LENGTH_LONG).show();
-                        }
+                        // Show notification if loaded roads get a mud penalty
+                        showMudWarning();
 
                         // Re-score existing roads if we have them
                         if (lastResultsCache != null && !lastResultsCache.isEmpty()) {
@@ -629,30 +728,42 @@ public class MainActivity extends BaseMapActivity {
         }
 
         Log.d(TAG, "Re-scoring " + lastResultsCache.size() + " roads with weather data");
+        rescoreLoadedRoads();
+    }
 
-        for (PolylineResult road : lastResultsCache) {
-            // Recalculate score with weather-aware calculator
-            int newScore;
-            double maxSlope = road.getMaxSlopePercent();
-
-            if (maxSlope >= 0) {
-                newScore = scoreCalculator.calculateScoreWithSlope(
-                        road.getTags(),
-                        road.getPoints(),
-                        maxSlope
-                );
-            } else {
-                newScore = scoreCalculator.calculateScore(
-                        road.getTags(),
-                        road.getPoints()
-                );
-            }
-
-            road.setScore(newScore);
+    /**
+     * Re-score the loaded roads with the current weights, bike type and weather, then redraw.
+     * Scoring runs on a worker against a snapshot taken now and produces rescored copies.
+     */
+    private void rescoreLoadedRoads() {
+        if (lastResultsCache == null || lastResultsCache.isEmpty()) {
+            return;
         }
 
-        // Update the map display
-        updateMapFilter();
+        ScoreCalculator.Snapshot scoring = scoreCalculator.snapshot();
+        updateResultsInBackground("Re-scored", roads -> ScoreCalculator.scoredCopies(roads, scoring));
+    }
+
+    /**
+     * Slopes arrived for some roads: copies of those roads get the slope and a new score, the rest is kept
+     */
+    private void applySlopeData(Map<RoadGeometry, Double> maxSlopes) {
+        ScoreCalculator.Snapshot scoring = scoreCalculator.snapshot();
+        updateResultsInBackground("Applied slopes to", roads -> {
+            List<PolylineResult> updated = new ArrayList<>(roads.size());
+            for (PolylineResult road : roads) {
+                Double maxSlope = maxSlopes.get(road.getGeometry());
+                if (maxSlope == null) {
+                    updated.add(road);
+                    continue;
+                }
+                PolylineResult copy = road.withScore(road.getScore());
+                copy.setMaxSlope(maxSlope);
+                copy.setScore(scoring.score(copy));
+                updated.add(copy);
+            }
+            return Collections.unmodifiableList(updated);
+        });
     }
 
     /**
@@ -668,31 +779,28 @@ public class MainActivity extends BaseMapActivity {
             return;
         }
 
-        // Check cache for road data
-        if (lastBBoxQueried != null && bboxSimilar(bbox, lastBBoxQueried)
-                && lastResultsCache != null
-                && (System.currentTimeMillis() - lastQueryTimeMs) < CACHE_TTL_MS) {
-
-            // Roads are cached, but check if we need fresh weather data
-            GeoPoint currentCenter = new GeoPoint(
-                    (bbox.getLatNorth() + bbox.getLatSouth()) / 2.0,
-                    (bbox.getLonEast() + bbox.getLonWest()) / 2.0
-            );
-
-            if (shouldRefetchWeather(currentCenter)) {
-                Log.d(TAG, "Location changed significantly - fetching fresh weather data");
-                fetchWeatherAndRescoreRoads(currentCenter);
-            }
-
-            updateMapFilter();
-            return;
+        // STEP 1: Fetch weather for this region, or refresh it if we moved far enough
+        GeoPoint currentCenter = new GeoPoint(
+                (bbox.getLatNorth() + bbox.getLatSouth()) / 2.0,
+                (bbox.getLonEast() + bbox.getLonWest()) / 2.0
+        );
+        if (lastWeatherFetchLocation == null) {
+            fetchWeatherForCurrentViewport();
+        } else if (shouldRefetchWeather(currentCenter)) {
+            Log.d(TAG, "Location changed significantly - fetching fresh weather data");
+            fetchWeatherAndRescoreRoads(currentCenter);
         }
 
-        // STEP 1: Fetch weather for this region first
-        fetchWeatherForCurrentViewport();
+        // A new search supersedes elevation work for the previous one
+        if (elevationJob != null) {
+            elevationJob.cancel();
+            elevationJob = null;
+        }
 
-        // STEP 2: Then fetch road data
+        // STEP 2: Then fetch road data - cached tiles are served locally, only missing tiles hit Overpass
         OverpassService.fetchData(bbox, scoreCalculator, bikeTypeManager, new OverpassService.OverpassCallback() {
+            private boolean previousResultsCleared = false;
+
             @Override
             public void onPreExecute() {
                 findButton.setEnabled(false);
@@ -702,13 +810,22 @@ public class MainActivity extends BaseMapActivity {
                 Toast.makeText(MainActivity.this, loadingMessage, Toast.LENGTH_SHORT).show();
             }
 
+            @Override
+            public void onPartialResults(List<PolylineResult> newRoads) {
+                // Tiles are drawn as they arrive, onSuccess replaces them with the final result set
+                if (!previousResultsCleared) {
+                    drawResults(new ArrayList<>());
+                    previousResultsCleared = true;
+                }
+                addResultPolylines(filterManager.applyFilter(newRoads));
+                map.invalidate();
+            }
+
             @Override
             public void onSuccess(List<PolylineResult> results) {
                 findButton.setEnabled(true);
                 progressBar.setVisibility(View.GONE);
-                lastBBoxQueried = bbox;
-                lastResultsCache = results;
-                lastQueryTimeMs = System.currentTimeMillis();
+                publishResults(results);
                 hasLoadedRoads = true;
                 routeManager.setLastResults(results);
                 updateMapFilter();
@@ -717,6 +834,31 @@ public class MainActivity extends BaseMapActivity {
                 Toast.makeText(MainActivity.this, resultMessage, Toast.LENGTH_SHORT).show();
             }
 
+            @Override
+            public void onIncompleteResults(int failedChunks, int totalChunks) {
+                Toast.makeText(MainActivity.this, "Could not load " + failedChunks + " of " + totalChunks
+                        + " map areas - search again to retry them", Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onElevationStarted(ElevationService.EnrichmentJob job) {
+                elevationJob = job;
+            }
+
+            @Override
+            public void onSlopeData(Map<RoadGeometry, Double> maxSlopes) {
+                applySlopeData(maxSlopes);
+            }
+
+            @Override
+            public void onElevationFinished(ElevationService.EnrichmentJob job, int enrichedRoads,
+                                            boolean cancelled) {
+                if (elevationJob == job) {
+                    elevationJob = null;
+                }
+                Log.d(TAG, "Elevation " + (cancelled ? "cancelled" : "done") + " for " + enrichedRoads + " roads");
+            }
+
             @Override
             public void onError(String error) {
                 findButton.setEnabled(true);
@@ -731,10 +873,10 @@ public class MainActivity extends BaseMapActivity {
             return true; // Never fetched before
         }
 
-        double distanceKm = lastWeatherFetchLocation.distanceToAsDouble(currentLocation) / 1000.0;
-        Log.d(TAG, String.format("Distance from last weather fetch: %.2f km", distanceKm));
-
-        return distanceKm >= WEATHER_REFETCH_DISTANCE_KM;
+        // Another weather cell, or today's rain in this one has expired; cached cells cost no request
+        boolean sameCell = WeatherCache.cellKey(lastWeatherFetchLocation.getLatitude(), lastWeatherFetchLocation.getLongitude())
+                == WeatherCache.cellKey(currentLocation.getLatitude(), currentLocation.getLongitude());
+        return !sameCell || !WeatherService.hasCachedWeather(currentLocation);
     }
 
     private void fetchWeatherAndRescoreRoads(GeoPoint location) {
@@ -742,7 +884,8 @@ public class MainActivity extends BaseMapActivity {
             WeatherLegendView.setLoading(weatherLegendView, true);
         }
 
-        WeatherService.fetchWeatherCondition(location, new WeatherService.WeatherCallback() {
+        // Rain for every cell of the viewport, so each road is scored with the rain at its own position
+        WeatherService.fetchWeatherForViewport(map.getBoundingBox(), new WeatherService.WeatherCallback() {
             @Override
             public void onWeatherDataReceived(WeatherService.WeatherCondition condition) {
                 // Update last fetch location
@@ -757,10 +900,11 @@ public class MainActivity extends BaseMapActivity {
                     WeatherLegendView.animateUpdate(weatherLegendView);
                 }
 
-                // Show notification if conditions changed
-                if (condition.isMuddy) {
+                // Show notification if conditions changed, from the same per-road rain as the penalties
+                String mudWarning = scoreCalculator.getMudWarning(lastResultsCache);
+                if (mudWarning != null) {
                     Toast.makeText(MainActivity.this,
-                            "Weather updated: " + condition.rainyDaysCount + " rainy days - dirt roads may be muddy",
+                            "Weather updated: " + mudWarning,
                             Toast.LENGTH_LONG).show();
                 } else {
                     Toast.makeText(MainActivity.this,
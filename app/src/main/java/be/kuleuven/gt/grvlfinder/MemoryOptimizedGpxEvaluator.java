@@ -8,6 +8,7 @@ import android.util.Log;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -368,7 +369,8 @@ public class MemoryOptimizedGpxEvaluator {
 
     /**
      * ROBUST: Fetch chunk data with retry logic and exponential backoff
-     * This ensures we ALWAYS get data for each chunk, preventing incomplete analysis
+     * Server timeouts in dense areas are handled by the fetcher splitting the chunk into quadrants;
+     * what still fails is retried here like rate limits and network timeouts
      */
     private static List<PolylineResult> fetchChunkDataWithRetry(RouteChunk chunk,
                                                                 ScoreCalculator scoreCalculator) {
@@ -392,9 +394,10 @@ public class MemoryOptimizedGpxEvaluator {
                 String errorMsg = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
                 Log.w(TAG, "Attempt " + attempt + " failed for chunk " + chunk.chunkIndex + ": " + errorMsg);
 
-                // Check if it's a rate limit or timeout error
+                // Check if it's a rate limit, a timeout or a server that is still too busy after splitting
                 if (errorMsg.contains("<?xml") || errorMsg.contains("JSONObject") ||
-                        errorMsg.contains("rate") || errorMsg.contains("timeout")) {
+                        errorMsg.contains("HTTP 429") || errorMsg.contains("rate") ||
+                        e instanceof SocketTimeoutException || OverpassFetcher.isTooDense(e)) {
 
                     if (attempt < maxRetries) {
                         try {
@@ -422,7 +425,7 @@ public class MemoryOptimizedGpxEvaluator {
         }
 
         // If all retries failed, return empty list (but we tried hard!)
-        Log.e(TAG, "All " + maxRetries + " attempts failed for chunk " + chunk.chunkIndex + ". Returning empty result.");
+        Log.e(TAG, "All attempts failed for chunk " + chunk.chunkIndex + ". Returning empty result.");
         return new ArrayList<>();
     }
 
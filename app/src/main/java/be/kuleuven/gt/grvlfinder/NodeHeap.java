@@ -0,0 +1,94 @@
+package be.kuleuven.gt.grvlfinder;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of node ids keyed by a double, with decrease-key. Positions are tracked per node,
+ * so a node is in the heap at most once and updating its key does not leave stale entries behind.
+ */
+final class NodeHeap {
+    private final int[] heap;      // node ids, heap ordered by keys
+    private final double[] keys;   // key of heap[i]
+    private final int[] position;  // index in heap per node, -1 when not queued
+    private int size;
+
+    NodeHeap(int nodeCount) {
+        heap = new int[nodeCount];
+        keys = new double[nodeCount];
+        position = new int[nodeCount];
+        Arrays.fill(position, -1);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(int node) {
+        return position[node] >= 0;
+    }
+
+    /**
+     * Smallest key in the heap; only valid when not empty
+     */
+    double peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * Queue a node, or lower its key when it is already queued with a larger one
+     */
+    void push(int node, double key) {
+        int i = position[node];
+        if (i < 0) {
+            i = size++;
+        } else if (key >= keys[i]) {
+            return;
+        }
+        siftUp(i, node, key);
+    }
+
+    int pop() {
+        int top = heap[0];
+        position[top] = -1;
+        size--;
+        if (size > 0) siftDown(0, heap[size], keys[size]);
+        return top;
+    }
+
+    /**
+     * Empty the heap, touching only the nodes still in it so it can be reused for the next search
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) position[heap[i]] = -1;
+        size = 0;
+    }
+
+    private void siftUp(int i, int node, double key) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) break;
+            place(i, heap[parent], keys[parent]);
+            i = parent;
+        }
+        place(i, node, key);
+    }
+
+    private void siftDown(int i, int node, double key) {
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child]) child = right;
+            if (key <= keys[child]) break;
+            place(i, heap[child], keys[child]);
+            i = child;
+        }
+        place(i, node, key);
+    }
+
+    private void place(int i, int node, double key) {
+        heap[i] = node;
+        keys[i] = key;
+        position[node] = i;
+    }
+}
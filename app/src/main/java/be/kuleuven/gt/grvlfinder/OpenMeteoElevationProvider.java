@@ -0,0 +1,54 @@
+package be.kuleuven.gt.grvlfinder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Open-Meteo elevation endpoint (Copernicus DEM 90 m), up to 100 coordinates per call
+ */
+class OpenMeteoElevationProvider extends HttpElevationProvider {
+    private static final String API_URL = "https://api.open-meteo.com/v1/elevation";
+
+    OpenMeteoElevationProvider() {
+        super("open-meteo", new AdaptiveRateLimiter(5.0, 0.2, 5));
+    }
+
+    @Override
+    String buildUrl(List<GeoPoint> points) {
+        StringBuilder latitudes = new StringBuilder();
+        StringBuilder longitudes = new StringBuilder();
+        for (int i = 0; i < points.size(); i++) {
+            if (i > 0) {
+                latitudes.append(",");
+                longitudes.append(",");
+            }
+            latitudes.append(String.format(Locale.US, "%.6f", points.get(i).getLatitude()));
+            longitudes.append(String.format(Locale.US, "%.6f", points.get(i).getLongitude()));
+        }
+        return API_URL + "?latitude=" + latitudes + "&longitude=" + longitudes;
+    }
+
+    @Override
+    double[] parseResponse(String responseText, int expectedCount) throws Exception {
+        JSONObject responseJson = new JSONObject(responseText);
+        if (responseJson.optBoolean("error", false)) {
+            throw new Exception("API error: " + responseJson.optString("reason"));
+        }
+
+        JSONArray results = responseJson.getJSONArray("elevation");
+        double[] elevations = new double[expectedCount];
+        Arrays.fill(elevations, Double.NaN);
+
+        for (int i = 0; i < results.length() && i < expectedCount; i++) {
+            if (!results.isNull(i)) {
+                elevations[i] = results.getDouble(i);
+            }
+        }
+        return elevations;
+    }
+}
@@ -0,0 +1,63 @@
+package be.kuleuven.gt.grvlfinder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One dataset of the public opentopodata.org API (srtm30m, aster30m, ...)
+ */
+class OpenTopoDataProvider extends HttpElevationProvider {
+    private static final String API_URL = "https://api.opentopodata.org/v1/";
+
+    // The public API allows about one call per second per client, whatever the dataset
+    private static final AdaptiveRateLimiter hostLimiter = new AdaptiveRateLimiter(1.0, 0.1, 2);
+
+    private final String dataset;
+
+    OpenTopoDataProvider(String dataset) {
+        super("opentopodata/" + dataset, hostLimiter);
+        this.dataset = dataset;
+    }
+
+    @Override
+    String buildUrl(List<GeoPoint> points) {
+        StringBuilder locations = new StringBuilder();
+        for (int i = 0; i < points.size(); i++) {
+            if (i > 0) locations.append("|");
+            GeoPoint point = points.get(i);
+            locations.append(String.format(Locale.US, "%.6f,%.6f", point.getLatitude(), point.getLongitude()));
+        }
+        return API_URL + dataset + "?locations=" + locations;
+    }
+
+    /**
+     * One elevation per requested location, NaN where the API has no data
+     */
+    @Override
+    double[] parseResponse(String responseText, int expectedCount) throws Exception {
+        JSONObject responseJson = new JSONObject(responseText);
+        String status = responseJson.getString("status");
+
+        if (!"OK".equals(status)) {
+            throw new Exception("API status: " + status);
+        }
+
+        JSONArray results = responseJson.getJSONArray("results");
+        double[] elevations = new double[expectedCount];
+        Arrays.fill(elevations, Double.NaN); // Locations without data stay missing
+
+        for (int i = 0; i < results.length() && i < expectedCount; i++) {
+            JSONObject result = results.getJSONObject(i);
+            if (result.has("elevation") && !result.isNull("elevation")) {
+                elevations[i] = result.getDouble("elevation");
+            }
+        }
+
+        return elevations;
+    }
+}
@@ -0,0 +1,346 @@
+package be.kuleuven.gt.grvlfinder;
+
+import android.util.Log;
+
+import org.osmdroid.util.BoundingBox;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Shared fetch layer for every Overpass query in the app.
+ * Identical or overlapping requests are coalesced: a caller whose bounding box lies inside a
+ * request that is still running (or finished a few seconds ago) waits for that request and
+ * gets a filtered copy of its roads instead of opening another connection.
+ * Queries the server aborts for density (a runtime error remark or HTTP 504) are split into quadrants recursively, and
+ * the span that was too large is remembered per area so later queries there are split up front.
+ */
+public class OverpassFetcher {
+    private static final String TAG = "OverpassFetcher";
+    private static final String OVERPASS_URL = "https://overpass-api.de/api/interpreter";
+
+    // The public instance hands out two slots per IP, more parallel connections just earn 429s
+    private static final Semaphore connectionSlots = new Semaphore(2, true);
+    private static final long RECENT_RESULT_TTL_MS = 30 * 1000;
+    private static final int MAX_RECENT_RESULTS = 8;
+
+    // Below about a kilometre splitting further won't help, the error is not about density
+    private static final double MIN_SPLIT_SPAN_DEG = 0.01;
+    private static final int DENSITY_CELL_SHIFT = 4; // z14 tiles to z10 cells
+
+    private static final List<Request> inFlight = new LinkedList<>();
+    private static final LinkedList<Request> recent = new LinkedList<>();
+    // Largest span (degrees) known to be too heavy, halved, per z10 cell
+    private static final Map<Long, Double> maxSpanByCell = new HashMap<>();
+
+    /**
+     * Timeouts for the two kinds of callers: the map waits longer, GPX analysis retries instead
+     */
+    public enum Profile {
+        INTERACTIVE(20, 10000, 12000),
+        BACKGROUND(10, 8000, 10000);
+
+        final int queryTimeoutSeconds;
+        final int connectTimeoutMs;
+        final int readTimeoutMs;
+
+        Profile(int queryTimeoutSeconds, int connectTimeoutMs, int readTimeoutMs) {
+            this.queryTimeoutSeconds = queryTimeoutSeconds;
+            this.connectTimeoutMs = connectTimeoutMs;
+            this.readTimeoutMs = readTimeoutMs;
+        }
+    }
+
+    private static class Request {
+        final BoundingBox bbox;
+        final ScoreCalculator scoreCalculator;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile List<PolylineResult> roads;
+        volatile Exception error;
+        volatile long completedAt;
+        volatile boolean splitting; // its quadrants must not coalesce back into it
+
+        Request(BoundingBox bbox, ScoreCalculator scoreCalculator) {
+            this.bbox = bbox;
+            this.scoreCalculator = scoreCalculator;
+        }
+
+        boolean covers(BoundingBox other) {
+            return !splitting && bbox.getLatSouth() <= other.getLatSouth() && bbox.getLatNorth() >= other.getLatNorth() &&
+                    bbox.getLonWest() <= other.getLonWest() && bbox.getLonEast() >= other.getLonEast();
+        }
+    }
+
+    /**
+     * Fetch and score all candidate roads in the bounding box, sharing work with matching requests
+     */
+    public static List<PolylineResult> fetch(BoundingBox bbox, ScoreCalculator scoreCalculator,
+                                             Profile profile) throws Exception {
+        Request leader;
+        Request own = null;
+
+        synchronized (OverpassFetcher.class) {
+            leader = findCoveringRequest(bbox);
+            if (leader == null) {
+                own = new Request(bbox, scoreCalculator);
+                inFlight.add(own);
+            }
+        }
+
+        if (own != null) {
+            return execute(own, profile);
+        }
+
+        Log.d(TAG, "Coalescing request for " + describe(bbox) + " with " + describe(leader.bbox));
+        leader.done.await();
+        if (leader.error != null) {
+            throw leader.error;
+        }
+        return copyForCaller(leader, bbox, scoreCalculator);
+    }
+
+    private static Request findCoveringRequest(BoundingBox bbox) {
+        for (Request request : inFlight) {
+            if (request.covers(bbox)) return request;
+        }
+
+        long now = System.currentTimeMillis();
+        Iterator<Request> it = recent.iterator();
+        while (it.hasNext()) {
+            Request request = it.next();
+            if (now - request.completedAt > RECENT_RESULT_TTL_MS) {
+                it.remove();
+            } else if (request.covers(bbox)) {
+                return request;
+            }
+        }
+        return null;
+    }
+
+    private static List<PolylineResult> execute(Request request, Profile profile) throws Exception {
+        try {
+            // Kept for followers as long as the request is recent, so nobody gets the stored list itself
+            request.roads = Collections.unmodifiableList(query(request, profile));
+            return ownCopies(request.roads);
+
+        } catch (Exception e) {
+            request.error = e;
+            throw e;
+
+        } finally {
+            request.completedAt = System.currentTimeMillis();
+            synchronized (OverpassFetcher.class) {
+                inFlight.remove(request);
+                if (request.error == null) {
+                    recent.addFirst(request);
+                    while (recent.size() > MAX_RECENT_RESULTS) recent.removeLast();
+                }
+            }
+            request.done.countDown();
+        }
+    }
+
+    private static List<PolylineResult> query(Request request, Profile profile) throws Exception {
+        BoundingBox bbox = request.bbox;
+        if (canSplit(bbox) && spanOf(bbox) > knownMaxSpan(bbox)) {
+            Log.d(TAG, "Known dense area, splitting " + describe(bbox) + " up front");
+            return fetchQuadrants(request, profile);
+        }
+
+        try {
+            connectionSlots.acquire();
+            try {
+                return executeQuery(buildQuery(bbox, profile), request.scoreCalculator, profile);
+            } finally {
+                connectionSlots.release();
+            }
+
+        } catch (Exception e) {
+            if (!isTooDense(e) || !canSplit(bbox)) throw e;
+
+            Log.w(TAG, "Query for " + describe(bbox) + " too heavy (" + e.getMessage() + "), splitting into quadrants");
+            rememberTooDense(bbox);
+            return fetchQuadrants(request, profile);
+        }
+    }
+
+    /**
+     * Fetch the four quadrants one after another and merge them, ways on the borders only once
+     */
+    private static List<PolylineResult> fetchQuadrants(Request request, Profile profile) throws Exception {
+        synchronized (OverpassFetcher.class) {
+            request.splitting = true;
+        }
+
+        BoundingBox bbox = request.bbox;
+        double midLat = (bbox.getLatNorth() + bbox.getLatSouth()) / 2.0;
+        double midLon = (bbox.getLonEast() + bbox.getLonWest()) / 2.0;
+        BoundingBox[] quadrants = {
+                new BoundingBox(bbox.getLatNorth(), midLon, midLat, bbox.getLonWest()),
+                new BoundingBox(bbox.getLatNorth(), bbox.getLonEast(), midLat, midLon),
+                new BoundingBox(midLat, midLon, bbox.getLatSouth(), bbox.getLonWest()),
+                new BoundingBox(midLat, bbox.getLonEast(), bbox.getLatSouth(), midLon)
+        };
+
+        List<PolylineResult> merged = new ArrayList<>();
+        Set<Long> seenWays = new HashSet<>();
+        for (BoundingBox quadrant : quadrants) {
+            for (PolylineResult road : fetch(quadrant, request.scoreCalculator, profile)) {
+                if (road.getWayId() == 0 || seenWays.add(road.getWayId())) {
+                    merged.add(road);
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Server runtime errors and gateway timeouts mean the area was too heavy for one query. A socket
+     * timeout on our side may just be a slow network, so it is retried by the caller instead.
+     */
+    static boolean isTooDense(Exception e) {
+        String msg = e.getMessage();
+        return msg != null && (msg.contains("HTTP 504") || msg.contains("runtime error"));
+    }
+
+    private static boolean canSplit(BoundingBox bbox) {
+        return spanOf(bbox) / 2.0 >= MIN_SPLIT_SPAN_DEG;
+    }
+
+    private static double spanOf(BoundingBox bbox) {
+        return Math.max(bbox.getLatNorth() - bbox.getLatSouth(), bbox.getLonEast() - bbox.getLonWest());
+    }
+
+    private static synchronized void rememberTooDense(BoundingBox bbox) {
+        double limit = spanOf(bbox) / 2.0;
+        for (long cell : densityCells(bbox)) {
+            Double known = maxSpanByCell.get(cell);
+            if (known == null || limit < known) {
+                maxSpanByCell.put(cell, limit);
+            }
+        }
+    }
+
+    private static synchronized double knownMaxSpan(BoundingBox bbox) {
+        double limit = Double.MAX_VALUE;
+        for (long cell : densityCells(bbox)) {
+            Double known = maxSpanByCell.get(cell);
+            if (known != null) limit = Math.min(limit, known);
+        }
+        return limit;
+    }
+
+    private static List<Long> densityCells(BoundingBox bbox) {
+        int minX = RoadTileCache.lonToTileX(bbox.getLonWest()) >> DENSITY_CELL_SHIFT;
+        int maxX = RoadTileCache.lonToTileX(bbox.getLonEast()) >> DENSITY_CELL_SHIFT;
+        int minY = RoadTileCache.latToTileY(bbox.getLatNorth()) >> DENSITY_CELL_SHIFT;
+        int maxY = RoadTileCache.latToTileY(bbox.getLatSouth()) >> DENSITY_CELL_SHIFT;
+
+        List<Long> cells = new ArrayList<>();
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                cells.add(RoadTileCache.tileKey(x, y));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Followers get their own result objects, restricted to their bbox and scored with their calculator
+     */
+    private static List<PolylineResult> copyForCaller(Request leader, BoundingBox bbox,
+                                                      ScoreCalculator scoreCalculator) {
+        List<PolylineResult> results = new ArrayList<>();
+        for (PolylineResult road : leader.roads) {
+            if (!road.intersects(bbox)) continue;
+
+            int score = (scoreCalculator == leader.scoreCalculator) ? road.getScore() :
+                    scoreCalculator.calculateScore(road);
+            results.add(road.withScore(score));
+        }
+        return results;
+    }
+
+    /**
+     * The leader's result: the same roads, but objects and list it is free to change
+     */
+    private static List<PolylineResult> ownCopies(List<PolylineResult> roads) {
+        List<PolylineResult> results = new ArrayList<>(roads.size());
+        for (PolylineResult road : roads) {
+            results.add(road.withScore(road.getScore()));
+        }
+        return results;
+    }
+
+    private static String buildQuery(BoundingBox bbox, Profile profile) {
+        String bboxStr = bbox.getLatSouth() + "," + bbox.getLonWest() + "," +
+                bbox.getLatNorth() + "," + bbox.getLonEast();
+
+        return "[out:json][timeout:" + profile.queryTimeoutSeconds + "];(" +
+                "way[\"surface\"](" + bboxStr + ");" +
+                "way[\"tracktype\"](" + bboxStr + ");" +
+                "way[\"smoothness\"](" + bboxStr + ");" +
+                "way[\"bicycle\"](" + bboxStr + ");" +
+                "way[\"incline\"](" + bboxStr + ");" +
+                "way[\"highway\"~\"track|unclassified|service|residential|cycleway\"](" + bboxStr + ");" +
+                ");out body geom;";
+    }
+
+    private static List<PolylineResult> executeQuery(String query, ScoreCalculator scoreCalculator,
+                                                     Profile profile) throws Exception {
+        HttpURLConnection conn = null;
+        try {
+            URL url = new URL(OVERPASS_URL);
+            conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setConnectTimeout(profile.connectTimeoutMs);
+            conn.setReadTimeout(profile.readTimeoutMs);
+
+            byte[] out = query.getBytes(StandardCharsets.UTF_8);
+            conn.setFixedLengthStreamingMode(out.length);
+            conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+            conn.connect();
+
+            try (OutputStream os = conn.getOutputStream()) {
+                os.write(out);
+            }
+
+            int status = conn.getResponseCode();
+            if (status < 200 || status >= 300) {
+                throw new Exception("Overpass server returned HTTP " + status);
+            }
+
+            try (InputStream is = conn.getInputStream()) {
+                if (is == null) {
+                    throw new Exception("No response from Overpass server");
+                }
+                // Ways are parsed and scored straight from the network stream
+                return OverpassStreamParser.parse(new BufferedInputStream(is), scoreCalculator);
+            }
+
+        } finally {
+            if (conn != null) conn.disconnect();
+        }
+    }
+
+    private static String describe(BoundingBox bbox) {
+        return String.format(java.util.Locale.US, "[%.4f,%.4f,%.4f,%.4f]",
+                bbox.getLatSouth(), bbox.getLonWest(), bbox.getLatNorth(), bbox.getLonEast());
+    }
+}
@@ -4,35 +4,61 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
 import org.osmdroid.util.BoundingBox;
-import org.osmdroid.util.GeoPoint;
-
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class OverpassService {
     private static final String TAG = "OverpassService";
-    private static final String OVERPASS_URL = "https://overpass-api.de/api/interpreter";
     private static final ExecutorService executor = Executors.newSingleThreadExecutor();
 
+    // Chunks of 8x8 z14 tiles are roughly 0.18 x 0.11 degrees, well within one query's timeout
+    private static final int CHUNK_TILES = 8;
+    private static final int TILE_FETCH_THREADS = 2;
+    private static final ExecutorService tileExecutor = Executors.newFixedThreadPool(TILE_FETCH_THREADS);
+
     public interface OverpassCallback {
         void onPreExecute();
         void onSuccess(List<PolylineResult> results);
         void onError(String error);
+
+        /**
+         * Called with the roads of each tile chunk as it arrives, before onSuccess delivers the full set
+         */
+        default void onPartialResults(List<PolylineResult> newRoads) {}
+
+        /**
+         * Called after onSuccess when some tile chunks could not be fetched, so the delivered set misses
+         * their roads; searching again retries only those tiles
+         */
+        default void onIncompleteResults(int failedChunks, int totalChunks) {}
+
+        /**
+         * Elevation enrichment started after onSuccess; the job can be re-prioritised or cancelled
+         */
+        default void onElevationStarted(ElevationService.EnrichmentJob job) {}
+
+        /**
+         * Measured max slopes for some of the delivered roads, keyed by road geometry
+         */
+        default void onSlopeData(Map<RoadGeometry, Double> maxSlopes) {}
+
+        /**
+         * The job that finished; an older, cancelled job can report after a newer one has started
+         */
+        default void onElevationFinished(ElevationService.EnrichmentJob job, int enrichedRoads, boolean cancelled) {}
     }
 
     public static void fetchData(BoundingBox bbox, ScoreCalculator scoreCalculator,
@@ -47,94 +73,54 @@ public class OverpassService {
             try {
                 //Fetch OSM road data (no elevations yet)
                 Log.d(TAG, "Fetching OSM road data...");
-                List<PolylineResult> results = fetchDataSync(bbox, scoreCalculator);
+                FetchResult fetched = fetchDataSync(bbox, scoreCalculator, callback == null ? null :
+                        newRoads -> mainHandler.post(() -> callback.onPartialResults(newRoads)));
+                List<PolylineResult> results = fetched.roads;
 
                 if (results.isEmpty()) {
                     mainHandler.post(() -> {
                         if (callback != null) callback.onSuccess(new ArrayList<>());
                     });
+                    reportFailedChunks(fetched, mainHandler, callback);
                     return;
                 }
 
                 Log.d(TAG, "Found " + results.size() + " roads");
 
+                // Tag-based scores are final enough to show right away
+                Collections.sort(results, (a, b) -> Integer.compare(b.getScore(), a.getScore()));
+                mainHandler.post(() -> {
+                    if (callback != null) {
+                        Log.d(TAG, "Delivering " + results.size() + " roads with tag scores");
+                        callback.onSuccess(results);
+                    }
+                });
+                reportFailedChunks(fetched, mainHandler, callback);
+
                 //Decide whether to fetch elevation data based on bike type
                 boolean shouldFetchElevation = bikeTypeManager != null &&
                         bikeTypeManager.shouldFetchElevationData();
 
-                if (shouldFetchElevation) {
-                    Log.d(TAG, "Fetching elevation data for current bike mode...");
-
-                    // Add slope data using strategic elevation sampling
-                    ElevationService.addSlopeDataToRoads(results, new ElevationService.RoadElevationCallback() {
-                        @Override
-                        public void onSuccess(List<PolylineResult> updatedResults) {
-                            Log.d(TAG, "Recalculating scores with accurate slope data...");
-
-                            //Recalculate scores using the new slope data
-                            for (PolylineResult road : updatedResults) {
-                                double maxSlope = road.getMaxSlopePercent();
-
-                                if (maxSlope >= 0) { // Valid slope data
-                                    int oldScore = road.getScore();
-                                    int newScore = scoreCalculator.calculateScoreWithSlope(
-                                            road.getTags(),
-                                            road.getPoints(),
-                                            maxSlope
-                                    );
-                                    road.setScore(newScore);
-
-                                    Log.d(TAG, String.format("Road slope %.1f%% - Score: %d -> %d",
-                                            maxSlope, oldScore, newScore));
-
-                                    // Extra debug for steep roads
-                                    if (maxSlope > 12.0) {
-                                        Log.w(TAG, String.format("STEEP ROAD: %.1f%% slope, final score: %d",
-                                                maxSlope, newScore));
-                                    }
-                                } else {
-                                    Log.d(TAG, "Road has no slope data, keeping original score: " + road.getScore());
-                                }
-                            }
-
-                            // Final sort by score
-                            Collections.sort(updatedResults, (a, b) -> Integer.compare(b.getScore(), a.getScore()));
+                if (shouldFetchElevation && callback != null) {
+                    Log.d(TAG, "Fetching elevation data progressively for current bike mode...");
 
-                            mainHandler.post(() -> {
-                                if (callback != null) {
-                                    Log.d(TAG, "Completed processing " + updatedResults.size() + " roads with elevation data");
-                                    callback.onSuccess(updatedResults);
+                    // Slopes refine the delivered scores as they arrive, most valuable roads first
+                    ElevationService.EnrichmentJob job = ElevationService.enrichProgressively(results, bbox,
+                            new ElevationService.SlopeListener() {
+                                @Override
+                                public void onSlopes(Map<RoadGeometry, Double> maxSlopes) {
+                                    callback.onSlopeData(maxSlopes);
                                 }
-                            });
-                        }
-
-                        @Override
-                        public void onError(String error) {
-                            Log.w(TAG, "Elevation processing failed: " + error + ". Continuing without elevation data.");
 
-                            // Continue without elevation data - just sort by current scores
-                            Collections.sort(results, (a, b) -> Integer.compare(b.getScore(), a.getScore()));
-
-                            mainHandler.post(() -> {
-                                if (callback != null) {
-                                    callback.onSuccess(results);
+                                @Override
+                                public void onFinished(ElevationService.EnrichmentJob finished, int enrichedRoads,
+                                                       boolean cancelled) {
+                                    callback.onElevationFinished(finished, enrichedRoads, cancelled);
                                 }
                             });
-                        }
-                    });
-
+                    mainHandler.post(() -> callback.onElevationStarted(job));
                 } else {
                     Log.d(TAG, "Skipping elevation data fetch for current bike mode");
-
-                    // Just sort by current scores without elevation processing
-                    Collections.sort(results, (a, b) -> Integer.compare(b.getScore(), a.getScore()));
-
-                    mainHandler.post(() -> {
-                        if (callback != null) {
-                            Log.d(TAG, "Completed processing " + results.size() + " roads without elevation data");
-                            callback.onSuccess(results);
-                        }
-                    });
                 }
 
             } catch (Exception e) {
@@ -148,115 +134,149 @@ public class OverpassService {
         });
     }
 
-    private static List<PolylineResult> fetchDataSync(BoundingBox bbox, ScoreCalculator scoreCalculator) throws Exception {
-        String bboxStr = bbox.getLatSouth() + "," + bbox.getLonWest() + "," +
-                bbox.getLatNorth() + "," + bbox.getLonEast();
-
-        String query = "[out:json][timeout:20];(" +
-                "way[\"surface\"](" + bboxStr + ");" +
-                "way[\"tracktype\"](" + bboxStr + ");" +
-                "way[\"smoothness\"](" + bboxStr + ");" +
-                "way[\"bicycle\"](" + bboxStr + ");" +
-                "way[\"incline\"](" + bboxStr + ");" +
-                "way[\"highway\"~\"track|unclassified|service|residential|cycleway\"](" + bboxStr + ");" +
-                ");out body geom;";
+    /**
+     * Tell the callback, after onSuccess, that part of the viewport is missing
+     */
+    private static void reportFailedChunks(FetchResult fetched, Handler mainHandler, OverpassCallback callback) {
+        if (fetched.failedChunks > 0 && callback != null) {
+            mainHandler.post(() -> callback.onIncompleteResults(fetched.failedChunks, fetched.totalChunks));
+        }
+    }
 
-        return executeQuery(query, scoreCalculator);
+    /**
+     * Roads of a viewport and how many of its tile chunks could not be fetched
+     */
+    private static final class FetchResult {
+        final List<PolylineResult> roads;
+        final int failedChunks;
+        final int totalChunks;
+
+        FetchResult(List<PolylineResult> roads, int failedChunks, int totalChunks) {
+            this.roads = roads;
+            this.failedChunks = failedChunks;
+            this.totalChunks = totalChunks;
+        }
     }
 
-    private static List<PolylineResult> executeQuery(String query, ScoreCalculator scoreCalculator) throws Exception {
-        HttpURLConnection conn = null;
-        try {
-            URL url = new URL(OVERPASS_URL);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setDoOutput(true);
-            conn.setConnectTimeout(10000);
-            conn.setReadTimeout(12000);
-
-            byte[] out = query.getBytes(StandardCharsets.UTF_8);
-            conn.setFixedLengthStreamingMode(out.length);
-            conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
-            conn.connect();
-
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(out);
-            }
+    /**
+     * Assemble the viewport from the tile cache, querying Overpass only for missing tiles.
+     * Missing tiles are grouped into chunks that are fetched in parallel, centre first;
+     * every completed chunk is handed to onChunk (if set) with roads not delivered before.
+     */
+    private static FetchResult fetchDataSync(BoundingBox bbox, ScoreCalculator scoreCalculator,
+                                             Consumer<List<PolylineResult>> onChunk) throws Exception {
+        RoadTileCache cache = RoadTileCache.getInstance();
+        if (cache == null) {
+            return new FetchResult(queryBoundingBox(bbox, scoreCalculator), 0, 1);
+        }
 
-            int status = conn.getResponseCode();
-            InputStream is = (status >= 200 && status < 400) ?
-                    conn.getInputStream() : conn.getErrorStream();
+        List<Long> tiles = RoadTileCache.tilesCovering(bbox);
+        List<Long> missing = cache.findMissingTiles(tiles);
+        Log.d(TAG, "Viewport covers " + tiles.size() + " tiles, " + missing.size() + " not cached");
 
-            if (is == null) {
-                throw new Exception("No response from Overpass server");
-            }
+        if (missing.isEmpty()) {
+            return new FetchResult(cache.getRoads(tiles, bbox, scoreCalculator), 0, 0);
+        }
 
-            BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) {
-                sb.append(line).append("\n");
-            }
+        Set<Long> deliveredWays = new HashSet<>();
+        if (onChunk != null && missing.size() < tiles.size()) {
+            List<Long> cached = new ArrayList<>(tiles);
+            cached.removeAll(new HashSet<>(missing));
+            deliverNewRoads(cache.getRoads(cached, bbox, scoreCalculator), deliveredWays, onChunk);
+        }
 
-            return parseJsonResponse(sb.toString(), scoreCalculator);
+        List<List<Long>> chunks = groupIntoChunks(missing, bbox);
+        Log.d(TAG, "Fetching " + missing.size() + " tiles in " + chunks.size() + " chunks");
 
-        } finally {
-            if (conn != null) conn.disconnect();
+        CompletionService<List<Long>> completion = new ExecutorCompletionService<>(tileExecutor);
+        for (List<Long> chunk : chunks) {
+            completion.submit(() -> {
+                List<PolylineResult> fetched = queryBoundingBox(RoadTileCache.boundsOf(chunk), scoreCalculator);
+                cache.putRoads(chunk, fetched);
+                return chunk;
+            });
         }
-    }
 
-    private static List<PolylineResult> parseJsonResponse(String jsonText, ScoreCalculator scoreCalculator) throws Exception {
-        JSONObject root = new JSONObject(jsonText);
-        JSONArray elements = root.optJSONArray("elements");
-        if (elements == null) return new ArrayList<>();
+        Exception firstError = null;
+        int failed = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            try {
+                List<Long> chunk = completion.take().get();
+                if (onChunk != null) {
+                    deliverNewRoads(cache.getRoads(chunk, bbox, scoreCalculator), deliveredWays, onChunk);
+                }
+            } catch (ExecutionException e) {
+                failed++;
+                if (firstError == null) {
+                    firstError = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+                }
+            }
+        }
 
-        List<PolylineResult> results = new ArrayList<>();
+        if (failed == chunks.size()) {
+            throw firstError;
+        }
+        if (failed > 0) {
+            // Failed tiles stay uncached, so the next search retries only those
+            Log.w(TAG, failed + " of " + chunks.size() + " chunks failed: " + firstError.getMessage());
+        }
 
-        for (int i = 0; i < elements.length(); i++) {
-            JSONObject el = elements.getJSONObject(i);
-            if (!"way".equals(el.optString("type", ""))) continue;
+        return new FetchResult(cache.getRoads(tiles, bbox, scoreCalculator), failed, chunks.size());
+    }
 
-            Map<String, String> tagsMap = extractTags(el.optJSONObject("tags"));
-            List<GeoPoint> points = extractGeometry(el.optJSONArray("geometry"));
+    /**
+     * Group tiles into square chunks of CHUNK_TILES per side, ordered by distance to the viewport centre
+     */
+    private static List<List<Long>> groupIntoChunks(List<Long> tiles, BoundingBox bbox) {
+        Map<Long, List<Long>> byChunk = new HashMap<>();
+        for (long tile : tiles) {
+            long chunkKey = RoadTileCache.tileKey(RoadTileCache.tileX(tile) / CHUNK_TILES,
+                    RoadTileCache.tileY(tile) / CHUNK_TILES);
+            List<Long> chunk = byChunk.get(chunkKey);
+            if (chunk == null) {
+                chunk = new ArrayList<>();
+                byChunk.put(chunkKey, chunk);
+            }
+            chunk.add(tile);
+        }
 
-            if (points.size() < 2) continue;
+        double centerX = RoadTileCache.lonToTileX((bbox.getLonWest() + bbox.getLonEast()) / 2.0) / (double) CHUNK_TILES;
+        double centerY = RoadTileCache.latToTileY((bbox.getLatNorth() + bbox.getLatSouth()) / 2.0) / (double) CHUNK_TILES;
 
-            // Set initial elevation to 0 - will be updated by ElevationService
-            for (GeoPoint point : points) {
-                point.setAltitude(0.0);
-            }
+        List<Long> keys = new ArrayList<>(byChunk.keySet());
+        Collections.sort(keys, (a, b) -> Double.compare(
+                distanceSq(a, centerX, centerY), distanceSq(b, centerX, centerY)));
 
-            // Calculate initial score without elevation data (slope scoring will be 0)
-            int score = scoreCalculator.calculateScore(tagsMap, points);
-            results.add(new PolylineResult(points, score, tagsMap));
+        List<List<Long>> chunks = new ArrayList<>();
+        for (long key : keys) {
+            chunks.add(byChunk.get(key));
         }
+        return chunks;
+    }
 
-        Log.d(TAG, "Parsed " + results.size() + " roads from OSM data");
-        return results;
+    private static double distanceSq(long chunkKey, double centerX, double centerY) {
+        double dx = RoadTileCache.tileX(chunkKey) + 0.5 - centerX;
+        double dy = RoadTileCache.tileY(chunkKey) + 0.5 - centerY;
+        return dx * dx + dy * dy;
     }
 
-    private static Map<String, String> extractTags(JSONObject tags) throws Exception {
-        Map<String, String> tagsMap = new HashMap<>();
-        if (tags != null && tags.names() != null) {
-            for (int t = 0; t < tags.names().length(); t++) {
-                String key = tags.names().getString(t);
-                tagsMap.put(key, tags.optString(key));
+    /**
+     * Ways crossing chunk borders come back from every chunk, only the first copy is delivered
+     */
+    private static void deliverNewRoads(List<PolylineResult> roads, Set<Long> deliveredWays,
+                                        Consumer<List<PolylineResult>> onChunk) {
+        List<PolylineResult> fresh = new ArrayList<>();
+        for (PolylineResult road : roads) {
+            if (road.getWayId() == 0 || deliveredWays.add(road.getWayId())) {
+                fresh.add(road);
             }
         }
-        return tagsMap;
+        if (!fresh.isEmpty()) {
+            onChunk.accept(fresh);
+        }
     }
 
-    private static List<GeoPoint> extractGeometry(JSONArray geom) throws Exception {
-        List<GeoPoint> points = new ArrayList<>();
-        if (geom != null) {
-            for (int p = 0; p < geom.length(); p++) {
-                JSONObject gpt = geom.getJSONObject(p);
-                GeoPoint point = new GeoPoint(gpt.getDouble("lat"), gpt.getDouble("lon"));
-                // Initialize with 0 elevation - will be updated later
-                point.setAltitude(0.0);
-                points.add(point);
-            }
-        }
-        return points;
+    private static List<PolylineResult> queryBoundingBox(BoundingBox bbox, ScoreCalculator scoreCalculator) throws Exception {
+        return OverpassFetcher.fetch(bbox, scoreCalculator, OverpassFetcher.Profile.INTERACTIVE);
     }
-}
\ No newline at end of file
+}
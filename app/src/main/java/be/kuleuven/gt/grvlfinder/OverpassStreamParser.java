@@ -0,0 +1,204 @@
+package be.kuleuven.gt.grvlfinder;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming parser for Overpass "out body geom" JSON responses.
+ * Each way is turned into a scored PolylineResult as soon as its element has been read,
+ * so neither the raw response text nor a JSONObject tree is ever held in memory.
+ */
+public class OverpassStreamParser {
+    private static final String TAG = "OverpassStreamParser";
+
+    public interface WayListener {
+        void onWay(PolylineResult road);
+    }
+
+    /**
+     * Parse a complete response into a list of scored roads
+     */
+    public static List<PolylineResult> parse(InputStream in, ScoreCalculator scoreCalculator) throws IOException {
+        List<PolylineResult> results = new ArrayList<>();
+        parse(in, scoreCalculator, results::add);
+        return results;
+    }
+
+    /**
+     * Parse a response and hand every way to the listener as it arrives.
+     * Returns the number of ways that were delivered. A "runtime error" remark (query timeout or
+     * out of memory on the server) is thrown as an IOException once the whole response has been read,
+     * because the elements before it are incomplete.
+     */
+    public static int parse(InputStream in, ScoreCalculator scoreCalculator, WayListener listener) throws IOException {
+        int count = 0;
+        String remark = null;
+
+        try (JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("elements".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        PolylineResult road = readElement(reader, scoreCalculator);
+                        if (road != null) {
+                            listener.onWay(road);
+                            count++;
+                        }
+                    }
+                    reader.endArray();
+                } else if ("remark".equals(name) && reader.peek() == JsonToken.STRING) {
+                    remark = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        if (remark != null) {
+            if (remark.contains("runtime error")) {
+                throw new IOException("Overpass " + remark.trim());
+            }
+            Log.w(TAG, "Overpass remark: " + remark);
+        }
+
+        Log.d(TAG, "Parsed " + count + " roads from OSM data (streaming)");
+        return count;
+    }
+
+    /**
+     * Read one element object. Returns null for non-way elements and ways without usable geometry.
+     */
+    private static PolylineResult readElement(JsonReader reader, ScoreCalculator scoreCalculator) throws IOException {
+        String type = null;
+        long wayId = 0;
+        long[] nodeIds = null;
+        Map<String, String> tags = null;
+        RoadGeometry.Builder points = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+
+            switch (name) {
+                case "type":
+                    type = reader.nextString();
+                    break;
+                case "id":
+                    wayId = reader.nextLong();
+                    break;
+                case "nodes":
+                    nodeIds = readNodeIds(reader);
+                    break;
+                case "tags":
+                    tags = readTags(reader);
+                    break;
+                case "geometry":
+                    points = readGeometry(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (!"way".equals(type) || points == null || points.size() < 2) {
+            return null;
+        }
+        if (tags == null) {
+            tags = new HashMap<>();
+        }
+        if (nodeIds != null && nodeIds.length != points.size()) {
+            // Geometry had gaps, ids no longer line up with the points
+            nodeIds = null;
+        }
+
+        // Initial score without elevation data (slope scoring will be 0)
+        PolylineResult road = new PolylineResult(wayId, nodeIds, points.build(), 0, tags);
+        road.setScore(scoreCalculator.calculateScore(road));
+        return road;
+    }
+
+    private static long[] readNodeIds(JsonReader reader) throws IOException {
+        long[] ids = new long[16];
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.NUMBER) {
+                reader.skipValue();
+                continue;
+            }
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = reader.nextLong();
+        }
+        reader.endArray();
+        return Arrays.copyOf(ids, count);
+    }
+
+    private static Map<String, String> readTags(JsonReader reader) throws IOException {
+        Map<String, String> tags = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            tags.put(key, reader.nextString());
+        }
+        reader.endObject();
+        return tags;
+    }
+
+    private static RoadGeometry.Builder readGeometry(JsonReader reader) throws IOException {
+        RoadGeometry.Builder points = new RoadGeometry.Builder();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            double lat = Double.NaN;
+            double lon = Double.NaN;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("lat".equals(name)) {
+                    lat = reader.nextDouble();
+                } else if ("lon".equals(name)) {
+                    lon = reader.nextDouble();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (!Double.isNaN(lat) && !Double.isNaN(lon)) {
+                points.add(lat, lon);
+            }
+        }
+        reader.endArray();
+        return points;
+    }
+}
@@ -220,18 +220,7 @@ public class PolylineBasedGpxEvaluator {
                                 Log.d(TAG, "Recalculating scores with elevation data for " + updatedRoads.size() + " roads");
 
                                 // Recalculate scores with slope data
-                                for (PolylineResult road : updatedRoads) {
-                                    double maxSlope = road.getMaxSlopePercent();
-                                    if (maxSlope >= 0) {
-                                        int newScore = scoreCalculator.calculateScoreWithSlope(
-                                                road.getTags(), road.getPoints(), maxSlope);
-                                        road.setScore(newScore);
-
-                                        if (maxSlope > 12.0) {
-                                            Log.d(TAG, String.format("Steep road: %.1f%% slope, score: %d", maxSlope, newScore));
-                                        }
-                                    }
-                                }
+                                scoreCalculator.scoreAll(updatedRoads);
                                 elevationSuccess.set(true);
                             } finally {
                                 elevationLatch.countDown();
@@ -445,16 +434,7 @@ public class PolylineBasedGpxEvaluator {
                     ScoreCalculator scoreCalculator = new ScoreCalculator(bikeTypeManager.getCurrentWeights());
                     scoreCalculator.setBikeTypeManager(bikeTypeManager);
 
-                    for (PolylineResult road : updatedRoads) {
-                        double maxSlope = road.getMaxSlopePercent();
-                        if (maxSlope >= 0) {
-                            int newScore = scoreCalculator.calculateScoreWithSlope(
-                                    road.getTags(), road.getPoints(), maxSlope);
-                            road.setScore(newScore);
-
-                            Log.d(TAG, String.format("Road with %.1f%% slope got score %d", maxSlope, newScore));
-                        }
-                    }
+                    scoreCalculator.scoreAll(updatedRoads);
 
                     // Phase 4: Final classification with accurate scores
                     classifyMatchedSegments(segments, roadDistances, analysis);
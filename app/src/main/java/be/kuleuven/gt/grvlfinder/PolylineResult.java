@@ -1,38 +1,118 @@
 package be.kuleuven.gt.grvlfinder;
 
+import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 import java.util.List;
 import java.util.Map;
 
 public class PolylineResult {
-    private List<GeoPoint> points;
+    private long wayId; // OSM way id, 0 when the road did not come from OSM
+    private long[] nodeIds; // OSM node id per point, null when unknown
+    private RoadGeometry geometry;
     private int score;
     private Map<String, String> tags;
     private double maxSlopePercent = -1; // -1 means not calculated
+    private ScoreComponents components; // unweighted criteria, computed on first use
 
     public PolylineResult(List<GeoPoint> points, int score, Map<String, String> tags) {
-        this.points = points;
+        this(0, points, score, tags);
+    }
+
+    public PolylineResult(long wayId, List<GeoPoint> points, int score, Map<String, String> tags) {
+        this(wayId, null, points, score, tags);
+    }
+
+    public PolylineResult(long wayId, long[] nodeIds, List<GeoPoint> points, int score, Map<String, String> tags) {
+        this(wayId, nodeIds, RoadGeometry.fromPoints(points), score, tags);
+    }
+
+    public PolylineResult(long wayId, long[] nodeIds, RoadGeometry geometry, int score, Map<String, String> tags) {
+        this.wayId = wayId;
+        this.nodeIds = nodeIds;
+        this.geometry = geometry;
         this.score = score;
-        this.tags = tags;
+        this.tags = TagDictionary.intern(tags); // Scoring tags shared with every road that has the same ones
         this.maxSlopePercent = -1; // Will be calculated after elevation data is added
     }
 
     // Getters and setters
-    public List<GeoPoint> getPoints() { return points; }
+    public long getWayId() { return wayId; }
+    public long[] getNodeIds() { return nodeIds; }
+    public RoadGeometry getGeometry() { return geometry; }
+
+    /**
+     * GeoPoint view of the geometry, created lazily. Altitudes set on these points are not kept,
+     * use setElevations to store elevation data.
+     */
+    public List<GeoPoint> getPoints() { return geometry.toGeoPoints(); }
 
     public void setPoints(List<GeoPoint> points) {
-        this.points = points;
+        this.geometry = RoadGeometry.fromPoints(points);
+        this.components = null;
+        if (nodeIds != null && nodeIds.length != points.size()) nodeIds = null;
         this.maxSlopePercent = ScoreCalculator.calculateMaxSlopePercent(points);
     }
 
+    public void setElevations(double[] elevations) { geometry.setElevations(elevations); }
+
     public int getScore() { return score; }
     public void setScore(int score) { this.score = score; }
     public Map<String, String> getTags() { return tags; }
-    public void setTags(Map<String, String> tags) { this.tags = tags; }
+    public void setTags(Map<String, String> tags) {
+        this.tags = TagDictionary.intern(tags);
+        this.components = null;
+    }
+
+    /**
+     * Per-criterion units of this road; a score is their dot product with the weights,
+     * so reweighting never needs the tags or the geometry again
+     */
+    public ScoreComponents getComponents() {
+        ScoreComponents c = components;
+        if (c == null) {
+            c = ScoreComponents.of(tags, geometry.getLengthMeters());
+            components = c;
+        }
+        return c;
+    }
     public double getMaxSlopePercent() { return maxSlopePercent; }
 
     public void setMaxSlope(double maxSlope) {
 
         this.maxSlopePercent = maxSlope;
     }
-}
\ No newline at end of file
+
+    /**
+     * Copy that shares geometry and tags but carries its own score
+     */
+    public PolylineResult withScore(int score) {
+        PolylineResult copy = new PolylineResult(wayId, nodeIds, geometry, score, tags);
+        copy.maxSlopePercent = maxSlopePercent;
+        copy.components = components;
+        return copy;
+    }
+
+    /**
+     * Graph key of point i: its OSM node id when known, otherwise a key derived from the coordinate.
+     * Shared nodes of different ways get the same key, which is what connects them in a road graph.
+     */
+    public long nodeKey(int i) {
+        if (nodeIds != null && nodeIds.length == geometry.size()) {
+            return nodeIds[i];
+        }
+        return coordinateKey(getPoints().get(i));
+    }
+
+    /**
+     * Packs the coordinate at 1e-6 degree precision; always negative so it can't collide with OSM ids
+     */
+    public static long coordinateKey(GeoPoint p) {
+        long lat = Math.round((p.getLatitude() + 90.0) * 1e6);
+        long lon = Math.round((p.getLongitude() + 180.0) * 1e6);
+        return -(((lat << 29) | lon) + 1);
+    }
+
+    public boolean intersects(BoundingBox bbox) {
+        return geometry.intersects(bbox);
+    }
+}
@@ -0,0 +1,79 @@
+package be.kuleuven.gt.grvlfinder;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Latency and error counts of one elevation provider. Percentiles and the error rate are taken over
+ * the last WINDOW calls, so they follow the provider's current state rather than its history.
+ */
+class ProviderMetrics {
+    private static final int WINDOW = 50;
+
+    private final long[] latencies = new long[WINDOW];
+    private final boolean[] failed = new boolean[WINDOW];
+    private int next = 0;
+    private int recorded = 0;
+
+    private long requests = 0;
+    private long failures = 0;
+    private long rateLimited = 0;
+    private long hedgeWins = 0;
+
+    synchronized void recordSuccess(long latencyMs) {
+        requests++;
+        record(latencyMs, false);
+    }
+
+    synchronized void recordFailure(boolean wasRateLimited) {
+        requests++;
+        failures++;
+        if (wasRateLimited) rateLimited++;
+        record(-1, true);
+    }
+
+    /**
+     * This provider answered first after being hedged in
+     */
+    synchronized void recordHedgeWin() {
+        hedgeWins++;
+    }
+
+    private void record(long latencyMs, boolean failure) {
+        latencies[next] = latencyMs;
+        failed[next] = failure;
+        next = (next + 1) % WINDOW;
+        if (recorded < WINDOW) recorded++;
+    }
+
+    /**
+     * Latency percentile (0..1) of recent successful calls, -1 when there are none
+     */
+    synchronized long latencyPercentile(double percentile) {
+        long[] recent = new long[recorded];
+        int n = 0;
+        for (int i = 0; i < recorded; i++) {
+            if (!failed[i]) recent[n++] = latencies[i];
+        }
+        if (n == 0) return -1;
+
+        Arrays.sort(recent, 0, n);
+        int index = (int) Math.ceil(percentile * n) - 1;
+        return recent[Math.max(0, Math.min(n - 1, index))];
+    }
+
+    synchronized double recentErrorRate() {
+        if (recorded == 0) return 0;
+        int errors = 0;
+        for (int i = 0; i < recorded; i++) {
+            if (failed[i]) errors++;
+        }
+        return errors / (double) recorded;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%d requests, %d failed (%d rate limited), %d hedge wins, p50 %d ms, p90 %d ms",
+                requests, failures, rateLimited, hedgeWins, latencyPercentile(0.5), latencyPercentile(0.9));
+    }
+}
@@ -0,0 +1,27 @@
+package be.kuleuven.gt.grvlfinder;
+
+/**
+ * The server answered HTTP 429
+ */
+class RateLimitedException extends Exception {
+    private static final long DEFAULT_RETRY_AFTER_MS = 2000;
+
+    final long retryAfterMs;
+
+    RateLimitedException(long retryAfterMs) {
+        super("API returned HTTP 429");
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * Retry-After in seconds; HTTP dates and missing headers fall back to a default
+     */
+    static long parseRetryAfter(String header) {
+        if (header != null) {
+            try {
+                return Math.max(0, Long.parseLong(header.trim())) * 1000;
+            } catch (NumberFormatException ignored) {}
+        }
+        return DEFAULT_RETRY_AFTER_MS;
+    }
+}
@@ -0,0 +1,291 @@
+package be.kuleuven.gt.grvlfinder;
+
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact polyline geometry for roads.
+ * Coordinates are stored in 1e-6 degrees, delta encoded and packed as zig-zag varints, so a typical
+ * OSM vertex takes 2-4 bytes instead of a GeoPoint object. Elevation is only stored once it is known.
+ * GeoPoint lists are created on demand (drawing, legacy callers) and only held softly.
+ */
+public class RoadGeometry {
+    private static final double E6 = 1e6;
+    private static final double EARTH_RADIUS_METERS = 6378137; // Same sphere as GeoPoint.distanceToAsDouble
+
+    private final byte[] packed;
+    private final int size;
+    private final int minLatE6, maxLatE6, minLonE6, maxLonE6;
+    private volatile float[] elevations; // null when no elevation is known
+    private volatile SoftReference<List<GeoPoint>> pointsView;
+    private double lengthMeters = -1; // computed on first use
+
+    private RoadGeometry(byte[] packed, int size, float[] elevations) {
+        this.packed = packed;
+        this.size = size;
+        this.elevations = elevations;
+
+        int minLat = Integer.MAX_VALUE, maxLat = Integer.MIN_VALUE;
+        int minLon = Integer.MAX_VALUE, maxLon = Integer.MIN_VALUE;
+        int[] lat = new int[size];
+        int[] lon = new int[size];
+        decode(lat, lon);
+        for (int i = 0; i < size; i++) {
+            minLat = Math.min(minLat, lat[i]);
+            maxLat = Math.max(maxLat, lat[i]);
+            minLon = Math.min(minLon, lon[i]);
+            maxLon = Math.max(maxLon, lon[i]);
+        }
+        this.minLatE6 = minLat;
+        this.maxLatE6 = maxLat;
+        this.minLonE6 = minLon;
+        this.maxLonE6 = maxLon;
+    }
+
+    /**
+     * Collects coordinates without creating GeoPoints, then packs them once
+     */
+    public static class Builder {
+        private int[] lat = new int[16];
+        private int[] lon = new int[16];
+        private int size;
+
+        public Builder add(double latitude, double longitude) {
+            if (size == lat.length) {
+                lat = Arrays.copyOf(lat, size * 2);
+                lon = Arrays.copyOf(lon, size * 2);
+            }
+            lat[size] = (int) Math.round(latitude * E6);
+            lon[size] = (int) Math.round(longitude * E6);
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public RoadGeometry build() {
+            return new RoadGeometry(pack(lat, lon, size), size, null);
+        }
+    }
+
+    public static RoadGeometry fromPoints(List<GeoPoint> points) {
+        Builder builder = new Builder();
+        float[] altitudes = null;
+
+        for (int i = 0; i < points.size(); i++) {
+            GeoPoint p = points.get(i);
+            builder.add(p.getLatitude(), p.getLongitude());
+            if (p.getAltitude() != 0.0) {
+                if (altitudes == null) altitudes = new float[points.size()];
+                altitudes[i] = (float) p.getAltitude();
+            }
+        }
+
+        return new RoadGeometry(pack(builder.lat, builder.lon, builder.size), builder.size, altitudes);
+    }
+
+    /**
+     * Restore a geometry written with getPacked()
+     */
+    public static RoadGeometry fromPacked(byte[] packed, int size) {
+        return new RoadGeometry(packed, size, null);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getMinLatitude() { return minLatE6 / E6; }
+    public double getMaxLatitude() { return maxLatE6 / E6; }
+    public double getMinLongitude() { return minLonE6 / E6; }
+    public double getMaxLongitude() { return maxLonE6 / E6; }
+
+    /**
+     * Length along the polyline in metres, -1 when there are fewer than two points
+     */
+    public double getLengthMeters() {
+        if (lengthMeters < 0 && size >= 2) {
+            int[] lat = new int[size];
+            int[] lon = new int[size];
+            decode(lat, lon);
+
+            double length = 0;
+            for (int i = 1; i < size; i++) {
+                double lat1 = Math.toRadians(lat[i - 1] / E6);
+                double lat2 = Math.toRadians(lat[i] / E6);
+                double sinLat = Math.sin((lat2 - lat1) / 2);
+                double sinLon = Math.sin(Math.toRadians((lon[i] - lon[i - 1]) / E6) / 2);
+                double h = sinLat * sinLat + Math.cos(lat1) * Math.cos(lat2) * sinLon * sinLon;
+                length += EARTH_RADIUS_METERS * 2 * Math.asin(Math.min(1, Math.sqrt(h)));
+            }
+            lengthMeters = length;
+        }
+        return lengthMeters;
+    }
+
+    public byte[] getPacked() {
+        return packed;
+    }
+
+    /**
+     * Decode all coordinates into the given arrays (1e-6 degrees), which must hold at least size() values
+     */
+    public void decode(int[] latE6, int[] lonE6) {
+        int pos = 0;
+        int lat = 0, lon = 0;
+        for (int i = 0; i < size; i++) {
+            int value = 0, shift = 0, b;
+            do {
+                b = packed[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            lat += (value >>> 1) ^ -(value & 1);
+
+            value = 0;
+            shift = 0;
+            do {
+                b = packed[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            lon += (value >>> 1) ^ -(value & 1);
+
+            latE6[i] = lat;
+            lonE6[i] = lon;
+        }
+    }
+
+    public boolean hasElevation() {
+        return elevations != null;
+    }
+
+    /**
+     * Elevation of vertex i in metres, NaN when unknown
+     */
+    public double getElevation(int i) {
+        float[] e = elevations;
+        return e != null ? e[i] : Double.NaN;
+    }
+
+    public void setElevations(double[] values) {
+        float[] e = new float[size];
+        for (int i = 0; i < size && i < values.length; i++) {
+            e[i] = (float) values[i];
+        }
+        elevations = e;
+        pointsView = null;
+    }
+
+    /**
+     * True when any segment of the line touches the box, also when it crosses the box without a vertex inside
+     */
+    public boolean intersects(BoundingBox bbox) {
+        int south = (int) Math.floor(bbox.getLatSouth() * E6);
+        int north = (int) Math.ceil(bbox.getLatNorth() * E6);
+        int west = (int) Math.floor(bbox.getLonWest() * E6);
+        int east = (int) Math.ceil(bbox.getLonEast() * E6);
+
+        if (maxLatE6 < south || minLatE6 > north || maxLonE6 < west || minLonE6 > east) return false;
+        if (minLatE6 >= south && maxLatE6 <= north && minLonE6 >= west && maxLonE6 <= east) return true;
+
+        int[] lat = new int[size];
+        int[] lon = new int[size];
+        decode(lat, lon);
+        if (size == 1) return outcode(lat[0], lon[0], south, north, west, east) == 0;
+        for (int i = 1; i < size; i++) {
+            if (segmentIntersects(lat[i - 1], lon[i - 1], lat[i], lon[i], south, north, west, east)) return true;
+        }
+        return false;
+    }
+
+    private static final int LEFT = 1, RIGHT = 2, BELOW = 4, ABOVE = 8;
+
+    private static int outcode(int lat, int lon, int south, int north, int west, int east) {
+        int code = 0;
+        if (lon < west) code |= LEFT;
+        else if (lon > east) code |= RIGHT;
+        if (lat < south) code |= BELOW;
+        else if (lat > north) code |= ABOVE;
+        return code;
+    }
+
+    /**
+     * A segment whose bounds overlap the box touches it unless all four corners lie strictly on one side of it
+     */
+    static boolean segmentIntersects(int lat1, int lon1, int lat2, int lon2,
+                                     int south, int north, int west, int east) {
+        int code1 = outcode(lat1, lon1, south, north, west, east);
+        int code2 = outcode(lat2, lon2, south, north, west, east);
+        if (code1 == 0 || code2 == 0) return true;
+        if ((code1 & code2) != 0) return false;
+
+        int sw = side(lat1, lon1, lat2, lon2, south, west);
+        return sw != side(lat1, lon1, lat2, lon2, south, east)
+                || sw != side(lat1, lon1, lat2, lon2, north, west)
+                || sw != side(lat1, lon1, lat2, lon2, north, east)
+                || sw == 0;
+    }
+
+    /**
+     * Sign of the cross product: which side of the line through 1 and 2 the point is on, 0 when on it
+     */
+    private static int side(int lat1, int lon1, int lat2, int lon2, int lat, int lon) {
+        long cross = (long) (lon2 - lon1) * (lat - lat1) - (long) (lat2 - lat1) * (lon - lon1);
+        return Long.signum(cross);
+    }
+
+    /**
+     * GeoPoint list for osmdroid and older callers. Kept softly and rebuilt after GC or an elevation update;
+     * altitudes set on these points are not written back, use setElevations instead.
+     */
+    public List<GeoPoint> toGeoPoints() {
+        SoftReference<List<GeoPoint>> ref = pointsView;
+        List<GeoPoint> points = ref != null ? ref.get() : null;
+        if (points != null) return points;
+
+        int[] lat = new int[size];
+        int[] lon = new int[size];
+        decode(lat, lon);
+        float[] e = elevations;
+
+        points = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            GeoPoint p = new GeoPoint(lat[i] / E6, lon[i] / E6);
+            if (e != null) p.setAltitude(e[i]);
+            points.add(p);
+        }
+        pointsView = new SoftReference<>(points);
+        return points;
+    }
+
+    private static byte[] pack(int[] lat, int[] lon, int size) {
+        byte[] out = new byte[size * 10];
+        int pos = 0;
+        int prevLat = 0, prevLon = 0;
+        for (int i = 0; i < size; i++) {
+            pos = writeVarint(out, pos, lat[i] - prevLat);
+            pos = writeVarint(out, pos, lon[i] - prevLon);
+            prevLat = lat[i];
+            prevLon = lon[i];
+        }
+        return Arrays.copyOf(out, pos);
+    }
+
+    private static int writeVarint(byte[] out, int pos, int delta) {
+        int value = (delta << 1) ^ (delta >> 31);
+        while ((value & ~0x7F) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+}
@@ -0,0 +1,78 @@
+package be.kuleuven.gt.grvlfinder;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Tags of one road: the interned TagSet with the keys scoring reads, plus the road's other tags
+ * (name, ref, ...) as plain strings that go away with the road. Obtain instances through
+ * TagDictionary.intern.
+ */
+final class RoadTags extends AbstractMap<String, String> {
+    private final TagSet shared;
+    private final String[] others; // key, value, key, value, ...
+
+    RoadTags(TagSet shared, String[] others) {
+        this.shared = shared;
+        this.others = others;
+    }
+
+    TagSet shared() {
+        return shared;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (key instanceof String && TagDictionary.isShared((String) key)) return shared.get(key);
+        for (int i = 0; i < others.length; i += 2) {
+            if (others[i].equals(key)) return others[i + 1];
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return shared.size() + others.length / 2;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                Iterator<Map.Entry<String, String>> sharedEntries = shared.entrySet().iterator();
+                return new Iterator<Map.Entry<String, String>>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return sharedEntries.hasNext() || next < others.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (sharedEntries.hasNext()) return sharedEntries.next();
+                        if (next >= others.length) throw new NoSuchElementException();
+                        int i = next;
+                        next += 2;
+                        return new SimpleImmutableEntry<>(others[i], others[i + 1]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return RoadTags.this.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,432 @@
+package be.kuleuven.gt.grvlfinder;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.osmdroid.util.BoundingBox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Road cache keyed by fixed slippy-map tiles (zoom 14).
+ * An in-memory LRU sits in front of an on-disk store in the app cache directory, so panning
+ * or returning to an area only asks Overpass for the tiles that are not cached yet.
+ * Roads are stored unscored; scores depend on the bike type and are recalculated on read.
+ */
+public class RoadTileCache {
+    private static final String TAG = "RoadTileCache";
+    public static final int ZOOM = 14;
+
+    private static final String DIR_NAME = "road_tiles";
+    private static final int FILE_VERSION = 3;
+    private static final long DEFAULT_TTL_MS = 7L * 24 * 60 * 60 * 1000; // OSM tags rarely change within a week
+    private static final int DEFAULT_MAX_MEMORY_VERTICES = 300_000;
+    private static final long DEFAULT_MAX_DISK_BYTES = 64L * 1024 * 1024;
+
+    private static RoadTileCache instance;
+
+    private final File directory;
+    private long ttlMs = DEFAULT_TTL_MS;
+    private int maxMemoryVertices = DEFAULT_MAX_MEMORY_VERTICES;
+    private long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+
+    private final LinkedHashMap<Long, TileEntry> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private int memoryVertices = 0;
+
+    private static class TileEntry {
+        final List<PolylineResult> roads;
+        final long fetchedAt;
+        final int vertexCount;
+
+        TileEntry(List<PolylineResult> roads, long fetchedAt) {
+            this.roads = roads;
+            this.fetchedAt = fetchedAt;
+            int vertices = 0;
+            for (PolylineResult road : roads) {
+                vertices += road.getGeometry().size();
+            }
+            this.vertexCount = vertices;
+        }
+    }
+
+    private RoadTileCache(File directory) {
+        this.directory = directory;
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Could not create tile cache directory " + directory);
+        }
+    }
+
+    public static synchronized void init(Context context) {
+        if (instance == null) {
+            instance = new RoadTileCache(new File(context.getApplicationContext().getCacheDir(), DIR_NAME));
+        }
+    }
+
+    /**
+     * Returns the shared cache, or null when init() has not been called (e.g. GPX-only flows)
+     */
+    public static synchronized RoadTileCache getInstance() {
+        return instance;
+    }
+
+    public synchronized void setTtlMs(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    public synchronized void setMaxMemoryVertices(int maxMemoryVertices) {
+        this.maxMemoryVertices = maxMemoryVertices;
+        trimMemory();
+    }
+
+    public synchronized void setMaxDiskBytes(long maxDiskBytes) {
+        this.maxDiskBytes = maxDiskBytes;
+        trimDisk();
+    }
+
+    // ---- Tile math ----
+
+    public static long tileKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    public static int tileX(long key) {
+        return (int) (key >>> 32);
+    }
+
+    public static int tileY(long key) {
+        return (int) key;
+    }
+
+    public static int lonToTileX(double lon) {
+        int n = 1 << ZOOM;
+        int x = (int) Math.floor((lon + 180.0) / 360.0 * n);
+        return Math.max(0, Math.min(n - 1, x));
+    }
+
+    public static int latToTileY(double lat) {
+        int n = 1 << ZOOM;
+        double latRad = Math.toRadians(lat);
+        int y = (int) Math.floor((1.0 - Math.log(Math.tan(latRad) + 1.0 / Math.cos(latRad)) / Math.PI) / 2.0 * n);
+        return Math.max(0, Math.min(n - 1, y));
+    }
+
+    private static double tileXToLon(int x) {
+        return x / (double) (1 << ZOOM) * 360.0 - 180.0;
+    }
+
+    private static double tileYToLat(int y) {
+        double n = Math.PI - 2.0 * Math.PI * y / (double) (1 << ZOOM);
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+
+    public static BoundingBox tileBounds(long key) {
+        int x = tileX(key);
+        int y = tileY(key);
+        return new BoundingBox(tileYToLat(y), tileXToLon(x + 1), tileYToLat(y + 1), tileXToLon(x));
+    }
+
+    /**
+     * All tiles that intersect the bounding box, row by row
+     */
+    public static List<Long> tilesCovering(BoundingBox bbox) {
+        int minX = lonToTileX(bbox.getLonWest());
+        int maxX = lonToTileX(bbox.getLonEast());
+        int minY = latToTileY(bbox.getLatNorth());
+        int maxY = latToTileY(bbox.getLatSouth());
+
+        List<Long> tiles = new ArrayList<>();
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                tiles.add(tileKey(x, y));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Smallest bounding box containing all given tiles
+     */
+    public static BoundingBox boundsOf(Collection<Long> tiles) {
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+        int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+        for (long key : tiles) {
+            minX = Math.min(minX, tileX(key));
+            maxX = Math.max(maxX, tileX(key));
+            minY = Math.min(minY, tileY(key));
+            maxY = Math.max(maxY, tileY(key));
+        }
+        return new BoundingBox(tileYToLat(minY), tileXToLon(maxX + 1), tileYToLat(maxY + 1), tileXToLon(minX));
+    }
+
+    // ---- Cache access ----
+
+    /**
+     * Tiles from the list that have no fresh entry in memory or on disk
+     */
+    public synchronized List<Long> findMissingTiles(List<Long> tiles) {
+        List<Long> missing = new ArrayList<>();
+        for (long key : tiles) {
+            if (lookup(key) == null) {
+                missing.add(key);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Store a query result for the given tiles. Every road is filed under each requested tile
+     * it touches; tiles that received no roads are cached as empty so they are not fetched again.
+     */
+    public synchronized void putRoads(Collection<Long> tiles, List<PolylineResult> roads) {
+        Set<Long> requested = new LinkedHashSet<>(tiles);
+        Map<Long, List<PolylineResult>> byTile = new HashMap<>();
+        for (long key : requested) {
+            byTile.put(key, new ArrayList<>());
+        }
+
+        for (PolylineResult road : roads) {
+            RoadGeometry geometry = road.getGeometry();
+            for (int y = latToTileY(geometry.getMaxLatitude()); y <= latToTileY(geometry.getMinLatitude()); y++) {
+                for (int x = lonToTileX(geometry.getMinLongitude()); x <= lonToTileX(geometry.getMaxLongitude()); x++) {
+                    List<PolylineResult> tileRoads = byTile.get(tileKey(x, y));
+                    if (tileRoads != null) {
+                        tileRoads.add(road);
+                    }
+                }
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, List<PolylineResult>> entry : byTile.entrySet()) {
+            TileEntry tile = new TileEntry(entry.getValue(), now);
+            putInMemory(entry.getKey(), tile);
+            writeToDisk(entry.getKey(), tile);
+        }
+        trimDisk();
+
+        Log.d(TAG, "Cached " + roads.size() + " roads in " + byTile.size() + " tiles");
+    }
+
+    /**
+     * Assemble the roads of all given tiles, deduplicated by way id and restricted to the
+     * bounding box. Scores are recalculated with the caller's calculator.
+     */
+    public synchronized List<PolylineResult> getRoads(List<Long> tiles, BoundingBox bbox,
+                                                      ScoreCalculator scoreCalculator) {
+        Map<Long, PolylineResult> byWayId = new LinkedHashMap<>();
+        List<PolylineResult> anonymous = new ArrayList<>();
+
+        for (long key : tiles) {
+            TileEntry tile = lookup(key);
+            if (tile == null) continue;
+
+            for (PolylineResult road : tile.roads) {
+                if (road.getWayId() == 0) {
+                    anonymous.add(road);
+                } else if (!byWayId.containsKey(road.getWayId())) {
+                    byWayId.put(road.getWayId(), road);
+                }
+            }
+        }
+
+        List<PolylineResult> results = new ArrayList<>();
+        for (PolylineResult road : byWayId.values()) {
+            if (road.intersects(bbox)) results.add(copyScored(road, scoreCalculator));
+        }
+        for (PolylineResult road : anonymous) {
+            if (road.intersects(bbox)) results.add(copyScored(road, scoreCalculator));
+        }
+        return results;
+    }
+
+    public synchronized void clear() {
+        memory.clear();
+        memoryVertices = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!f.delete()) Log.w(TAG, "Could not delete " + f);
+            }
+        }
+    }
+
+    /**
+     * Callers get their own result objects so rescoring one result set never touches the cache
+     */
+    private static PolylineResult copyScored(PolylineResult road, ScoreCalculator scoreCalculator) {
+        int score = scoreCalculator.calculateScore(road);
+        return road.withScore(score);
+    }
+
+    private TileEntry lookup(long key) {
+        long now = System.currentTimeMillis();
+
+        TileEntry tile = memory.get(key);
+        if (tile != null) {
+            if (now - tile.fetchedAt < ttlMs) {
+                touch(key, now);
+                return tile;
+            }
+            removeFromMemory(key);
+        }
+
+        tile = readFromDisk(key);
+        if (tile != null && now - tile.fetchedAt < ttlMs) {
+            touch(key, now);
+            putInMemory(key, tile);
+            return tile;
+        }
+        return null;
+    }
+
+    /**
+     * The file time is the last access, so trimDisk evicts least recently used tiles;
+     * expiry uses the fetch time stored inside the file
+     */
+    private void touch(long key, long now) {
+        File file = fileFor(key);
+        if (!file.setLastModified(now) && file.exists()) {
+            Log.w(TAG, "Could not update access time of " + file.getName());
+        }
+    }
+
+    private void putInMemory(long key, TileEntry tile) {
+        removeFromMemory(key);
+        memory.put(key, tile);
+        memoryVertices += tile.vertexCount;
+        trimMemory();
+    }
+
+    private void removeFromMemory(long key) {
+        TileEntry old = memory.remove(key);
+        if (old != null) memoryVertices -= old.vertexCount;
+    }
+
+    private void trimMemory() {
+        Iterator<Map.Entry<Long, TileEntry>> it = memory.entrySet().iterator();
+        while (memoryVertices > maxMemoryVertices && it.hasNext()) {
+            Map.Entry<Long, TileEntry> eldest = it.next();
+            memoryVertices -= eldest.getValue().vertexCount;
+            it.remove();
+        }
+    }
+
+    // ---- Disk store ----
+
+    private File fileFor(long key) {
+        return new File(directory, ZOOM + "_" + tileX(key) + "_" + tileY(key) + ".bin");
+    }
+
+    private void writeToDisk(long key, TileEntry tile) {
+        File file = fileFor(key);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_VERSION);
+            out.writeLong(tile.fetchedAt);
+            out.writeInt(tile.roads.size());
+            for (PolylineResult road : tile.roads) {
+                out.writeLong(road.getWayId());
+
+                long[] nodeIds = road.getNodeIds();
+                out.writeInt(nodeIds != null ? nodeIds.length : 0);
+                if (nodeIds != null) {
+                    for (long id : nodeIds) out.writeLong(id);
+                }
+
+                Map<String, String> tags = road.getTags();
+                out.writeShort(tags.size());
+                for (Map.Entry<String, String> tag : tags.entrySet()) {
+                    out.writeUTF(tag.getKey());
+                    out.writeUTF(tag.getValue());
+                }
+
+                RoadGeometry geometry = road.getGeometry();
+                byte[] packed = geometry.getPacked();
+                out.writeInt(geometry.size());
+                out.writeInt(packed.length);
+                out.write(packed);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write tile " + file.getName() + ": " + e.getMessage());
+            if (!file.delete()) Log.w(TAG, "Could not remove partial tile " + file.getName());
+        }
+    }
+
+    private TileEntry readFromDisk(long key) {
+        File file = fileFor(key);
+        if (!file.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION) return null;
+            long fetchedAt = in.readLong();
+
+            int roadCount = in.readInt();
+            List<PolylineResult> roads = new ArrayList<>(roadCount);
+            for (int r = 0; r < roadCount; r++) {
+                long wayId = in.readLong();
+
+                int nodeCount = in.readInt();
+                long[] nodeIds = null;
+                if (nodeCount > 0) {
+                    nodeIds = new long[nodeCount];
+                    for (int n = 0; n < nodeCount; n++) nodeIds[n] = in.readLong();
+                }
+
+                int tagCount = in.readShort();
+                Map<String, String> tags = new HashMap<>();
+                for (int t = 0; t < tagCount; t++) {
+                    tags.put(in.readUTF(), in.readUTF());
+                }
+
+                int pointCount = in.readInt();
+                byte[] packed = new byte[in.readInt()];
+                in.readFully(packed);
+                RoadGeometry geometry = RoadGeometry.fromPacked(packed, pointCount);
+
+                roads.add(new PolylineResult(wayId, nodeIds, geometry, 0, tags));
+            }
+            return new TileEntry(roads, fetchedAt);
+
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable tile " + file.getName() + ": " + e.getMessage());
+            if (!file.delete()) Log.w(TAG, "Could not remove tile " + file.getName());
+            return null;
+        }
+    }
+
+    /**
+     * Delete the least recently used tiles until the store fits the size cap
+     */
+    private void trimDisk() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        long total = 0;
+        for (File f : files) total += f.length();
+        if (total <= maxDiskBytes) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File f : files) {
+            if (total <= maxDiskBytes) break;
+            long length = f.length();
+            if (f.delete()) total -= length;
+        }
+        Log.d(TAG, "Trimmed disk cache to " + (total / 1024) + " KB");
+    }
+}
@@ -12,6 +12,9 @@ import java.util.*;
 
 public class RouteManager {
     private static final String TAG = "RouteManager";
+    private static final double MAX_SNAP_DISTANCE_METERS = 500.0;
+    private static final double MAX_NODE_SNAP_METERS = 150.0; // Path ends must be this close to a node
+    private static final int MAX_PATH_ITERATIONS = 5000;
     private List<GeoPoint> drawnRoute = new ArrayList<>();
     private Polyline drawnPolyline = null;
     private Marker startMarker = null;
@@ -21,7 +24,7 @@ public class RouteManager {
     private BikeTypeManager bikeTypeManager;
     private ScoreCalculator scoreCalculator;
     private Context context;
-    private RoadNetwork roadNetwork;
+    private RoutingGraph roadNetwork;
 
     public RouteManager(MapView mapView) {
         this.mapView = mapView;
@@ -34,14 +37,23 @@ public class RouteManager {
     }
 
     public void setLastResults(List<PolylineResult> results) {
+        List<PolylineResult> previous = this.lastResults;
         this.lastResults = results;
-        // Build road network graph whenever roads are updated
-        if (results != null && !results.isEmpty()) {
-            roadNetwork = new RoadNetwork(results);
-            Log.d(TAG, "Built road network with " + roadNetwork.nodes.size() + " nodes");
+        // Build road network graph whenever roads are updated; rescored copies keep the geometry
+        if (results != null && !results.isEmpty() && !(roadNetwork != null && sameGeometry(previous, results))) {
+            roadNetwork = RoutingGraph.build(results, (road, distance) -> distance, MAX_NODE_SNAP_METERS);
+            Log.d(TAG, "Built road network with " + roadNetwork.nodeCount() + " nodes");
         }
     }
 
+    private static boolean sameGeometry(List<PolylineResult> a, List<PolylineResult> b) {
+        if (a == null || a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i).getGeometry() != b.get(i).getGeometry()) return false;
+        }
+        return true;
+    }
+
     public void addPointToRoute(GeoPoint tappedPoint) {
         GeoPoint snappedPoint = snapToNearestRoad(tappedPoint);
         // Add visual feedback marker at snap location
@@ -85,139 +97,31 @@ public class RouteManager {
     }
 
     private List<GeoPoint> findPathAStar(GeoPoint start, GeoPoint end) {
-        if (roadNetwork == null || roadNetwork.nodes.isEmpty()) {
+        if (roadNetwork == null || roadNetwork.nodeCount() == 0) {
             return null;
         }
 
         // Find nearest nodes to start and end
-        RoadNode startNode = roadNetwork.findNearestNode(start);
-        RoadNode endNode = roadNetwork.findNearestNode(end);
+        int startNode = roadNetwork.nearestNode(start, MAX_NODE_SNAP_METERS);
+        int endNode = roadNetwork.nearestNode(end, MAX_NODE_SNAP_METERS);
 
-        if (startNode == null || endNode == null) {
+        if (startNode < 0 || endNode < 0) {
             Log.d(TAG, "Could not find start/end nodes in network");
             return null;
         }
 
-        // A* algorithm
-        PriorityQueue<PathNode> openSet = new PriorityQueue<>((a, b) ->
-                Double.compare(a.fScore, b.fScore));
-
-        Map<RoadNode, PathNode> allNodes = new HashMap<>();
-        Set<RoadNode> closedSet = new HashSet<>();
-
-        PathNode startPath = new PathNode(startNode, null, 0,
-                startNode.point.distanceToAsDouble(endNode.point));
-        openSet.add(startPath);
-        allNodes.put(startNode, startPath);
-
-        int iterations = 0;
-        int maxIterations = 5000;
-
-        while (!openSet.isEmpty() && iterations < maxIterations) {
-            iterations++;
-            PathNode current = openSet.poll();
-
-            if (current.node == endNode) {
-                // Found path! Reconstruct it
-                Log.d(TAG, "Path found in " + iterations + " iterations");
-                return reconstructPath(current, start, end);
-            }
-
-            closedSet.add(current.node);
-
-            // Check all neighbors
-            for (RoadEdge edge : current.node.edges) {
-                RoadNode neighbor = edge.to;
-
-                if (closedSet.contains(neighbor)) continue;
-
-                double tentativeG = current.gScore + edge.distance;
-
-                PathNode neighborPath = allNodes.get(neighbor);
-
-                if (neighborPath == null) {
-                    double h = neighbor.point.distanceToAsDouble(endNode.point);
-                    neighborPath = new PathNode(neighbor, current, tentativeG, tentativeG + h);
-                    allNodes.put(neighbor, neighborPath);
-                    openSet.add(neighborPath);
-                } else if (tentativeG < neighborPath.gScore) {
-                    neighborPath.gScore = tentativeG;
-                    neighborPath.fScore = tentativeG + neighbor.point.distanceToAsDouble(endNode.point);
-                    neighborPath.parent = current;
-                    openSet.remove(neighborPath);
-                    openSet.add(neighborPath);
-                }
-            }
-        }
-
-        Log.d(TAG, "No path found after " + iterations + " iterations");
-        return null;
-    }
-
-    private List<GeoPoint> reconstructPath(PathNode endPath, GeoPoint actualStart, GeoPoint actualEnd) {
-        List<RoadNode> nodePath = new ArrayList<>();
-        PathNode current = endPath;
-
-        while (current != null) {
-            nodePath.add(current.node);
-            current = current.parent;
-        }
-
-        Collections.reverse(nodePath);
-
-        // Now convert node path to full point path following road geometry
-        List<GeoPoint> fullPath = new ArrayList<>();
-
-        for (int i = 0; i < nodePath.size() - 1; i++) {
-            RoadNode from = nodePath.get(i);
-            RoadNode to = nodePath.get(i + 1);
-
-            // Find the edge connecting these nodes
-            RoadEdge connectingEdge = null;
-            for (RoadEdge edge : from.edges) {
-                if (edge.to == to) {
-                    connectingEdge = edge;
-                    break;
-                }
-            }
-
-            if (connectingEdge != null && connectingEdge.road != null) {
-                // Add the actual road geometry points
-                List<GeoPoint> roadPoints = connectingEdge.road.getPoints();
-
-                // Find closest indices to from and to points
-                int startIdx = findClosestIndex(roadPoints, from.point);
-                int endIdx = findClosestIndex(roadPoints, to.point);
-
-                // Add points in correct order
-                if (startIdx < endIdx) {
-                    for (int j = startIdx; j <= endIdx && j < roadPoints.size(); j++) {
-                        fullPath.add(roadPoints.get(j));
-                    }
-                } else {
-                    for (int j = startIdx; j >= endIdx && j >= 0; j--) {
-                        fullPath.add(roadPoints.get(j));
-                    }
-                }
-            }
+        int[] edges = roadNetwork.findPath(startNode, endNode, MAX_PATH_ITERATIONS);
+        if (edges == null || edges.length == 0) {
+            return null;
         }
 
-        return fullPath.isEmpty() ? null : fullPath;
-    }
-
-    private int findClosestIndex(List<GeoPoint> points, GeoPoint target) {
-        int closestIdx = 0;
-        double minDist = Double.MAX_VALUE;
-
-        for (int i = 0; i < points.size(); i++) {
-            double dist = points.get(i).distanceToAsDouble(target);
-            if (dist < minDist) {
-                minDist = dist;
-                closestIdx = i;
-            }
+        // Every edge is one segment of its road, so the nodes along the path are the road geometry
+        List<GeoPoint> fullPath = new ArrayList<>(edges.length + 1);
+        fullPath.add(roadNetwork.point(startNode));
+        for (int edge : edges) {
+            fullPath.add(roadNetwork.point(roadNetwork.edgeTarget(edge)));
         }
-
-        return closestIdx;
+        return fullPath;
     }
 
     private void addStraightLine(GeoPoint from, GeoPoint to) {
@@ -240,24 +144,25 @@ public class RouteManager {
         GeoPoint bestPoint = null;
         double minDist = Double.MAX_VALUE;
 
-        // Check all road segments
-        for (PolylineResult pr : lastResults) {
-            List<GeoPoint> pts = pr.getPoints();
-            for (int i = 0; i < pts.size() - 1; i++) {
-                GeoPoint a = pts.get(i);
-                GeoPoint b = pts.get(i + 1);
-
-                GeoPoint proj = projectOntoSegment(clicked, a, b);
-                double dist = clicked.distanceToAsDouble(proj);
-
-                if (dist < minDist) {
-                    minDist = dist;
-                    bestPoint = proj;
+        // Every road segment is an edge of the network, so only edges of nearby nodes can be close enough:
+        // a segment that close has an endpoint within the snap distance plus half its length
+        if (roadNetwork != null) {
+            double radius = MAX_SNAP_DISTANCE_METERS + roadNetwork.maxEdgeMeters() / 2;
+            for (int node : roadNetwork.nodesWithin(clicked, radius)) {
+                GeoPoint nodePoint = roadNetwork.point(node);
+                for (int edge = roadNetwork.firstEdge(node); edge < roadNetwork.firstEdge(node + 1); edge++) {
+                    GeoPoint proj = projectOntoSegment(clicked, nodePoint, roadNetwork.point(roadNetwork.edgeTarget(edge)));
+                    double dist = clicked.distanceToAsDouble(proj);
+
+                    if (dist < minDist) {
+                        minDist = dist;
+                        bestPoint = proj;
+                    }
                 }
             }
         }
 
-        if (minDist <= 500.0 && bestPoint != null) {
+        if (minDist <= MAX_SNAP_DISTANCE_METERS && bestPoint != null) {
             Log.d(TAG, "Snapped to road " + minDist + "m away");
             return bestPoint;
         }
@@ -356,90 +261,4 @@ public class RouteManager {
         drawnRoute.clear();
         updateRouteDisplay();
     }
-
-    // Road network classes
-    private static class RoadNetwork {
-        Map<String, RoadNode> nodes = new HashMap<>();
-
-        RoadNetwork(List<PolylineResult> roads) {
-
-            buildNetwork(roads);
-        }
-
-        private void buildNetwork(List<PolylineResult> roads) {
-            for (PolylineResult road : roads) {
-                List<GeoPoint> points = road.getPoints();
-
-                // Add edges for each segment
-                for (int i = 0; i < points.size() - 1; i++) {
-                    GeoPoint p1 = points.get(i);
-                    GeoPoint p2 = points.get(i + 1);
-
-                    RoadNode n1 = getOrCreateNode(p1);
-                    RoadNode n2 = getOrCreateNode(p2);
-
-                    double distance = p1.distanceToAsDouble(p2);
-
-                    // Add bidirectional edges
-                    n1.edges.add(new RoadEdge(n2, distance, road));
-                    n2.edges.add(new RoadEdge(n1, distance, road));
-                }
-            }
-        }
-
-        private RoadNode getOrCreateNode(GeoPoint point) {
-            String key = String.format("%.6f,%.6f", point.getLatitude(), point.getLongitude());
-            return nodes.computeIfAbsent(key, k -> new RoadNode(point));
-        }
-
-        RoadNode findNearestNode(GeoPoint point) {
-            RoadNode nearest = null;
-            double minDist = Double.MAX_VALUE;
-
-            for (RoadNode node : nodes.values()) {
-                double dist = point.distanceToAsDouble(node.point);
-                if (dist < minDist) {
-                    minDist = dist;
-                    nearest = node;
-                }
-            }
-
-            return (minDist < 150) ? nearest : null;
-        }
-    }
-
-    private static class RoadNode {
-        GeoPoint point;
-        List<RoadEdge> edges = new ArrayList<>();
-
-        RoadNode(GeoPoint point) {
-            this.point = point;
-        }
-    }
-
-    private static class RoadEdge {
-        RoadNode to;
-        double distance;
-        PolylineResult road;
-
-        RoadEdge(RoadNode to, double distance, PolylineResult road) {
-            this.to = to;
-            this.distance = distance;
-            this.road = road;
-        }
-    }
-
-    private static class PathNode {
-        RoadNode node;
-        PathNode parent;
-        double gScore;
-        double fScore;
-
-        PathNode(RoadNode node, PathNode parent, double gScore, double fScore) {
-            this.node = node;
-            this.parent = parent;
-            this.gScore = gScore;
-            this.fScore = fScore;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,399 @@
+package be.kuleuven.gt.grvlfinder;
+
+import android.util.Log;
+
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Road network in compressed sparse row form: nodes are ints, the edges leaving node n are
+ * firstEdge(n) .. firstEdge(n + 1) in flat target, weight and road arrays. Every road segment becomes
+ * an edge in both directions. Roads share a node where they share an OSM node id, see
+ * PolylineResult.nodeKey.
+ * A* runs over the arrays with a primitive heap and per-node state reused between searches.
+ */
+final class RoutingGraph {
+    private static final String TAG = "RoutingGraph";
+    private static final double EARTH_RADIUS_METERS = 6378137; // Same sphere as GeoPoint.distanceToAsDouble
+    // Straight-line distance is measured on a flat projection; leave room for its error over a graph's extent
+    private static final double STRAIGHT_LINE_MARGIN = 0.95;
+
+    /**
+     * Cost of travelling along a segment of a road, given its length in metres
+     */
+    interface EdgeCost {
+        double weight(PolylineResult road, double meters);
+    }
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final int[] edgeStart;   // edges of node n are edgeStart[n] .. edgeStart[n + 1]
+    private final int[] edgeTarget;
+    private final float[] edgeWeight;
+    private final int[] edgeRoad;    // index into roads
+    private final int[] edgeReverse; // same segment in the other direction
+    private final List<PolylineResult> roads;
+    private final double maxEdgeMeters;
+    private final double minWeightPerMeter;
+    private final SpatialGridIndex index;
+
+    // Search state, stamped per search so nothing has to be cleared for the next one
+    private double[] gScore;
+    private int[] parentEdge;
+    private int[] reachedIn;
+    private int[] settledIn;
+    private NodeHeap open;
+    private int searchId;
+
+    private RoutingGraph(double[] latitudes, double[] longitudes, int[] edgeStart, int[] edgeTarget,
+                         float[] edgeWeight, int[] edgeRoad, int[] edgeReverse, List<PolylineResult> roads,
+                         double maxEdgeMeters, double minWeightPerMeter, double cellMeters) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.edgeStart = edgeStart;
+        this.edgeTarget = edgeTarget;
+        this.edgeWeight = edgeWeight;
+        this.edgeRoad = edgeRoad;
+        this.edgeReverse = edgeReverse;
+        this.roads = roads;
+        this.maxEdgeMeters = maxEdgeMeters;
+        this.minWeightPerMeter = minWeightPerMeter;
+        this.index = new SpatialGridIndex(latitudes, longitudes, latitudes.length, cellMeters);
+    }
+
+    /**
+     * @param cellMeters grid cell size of the node index, about the usual snap distance
+     */
+    static RoutingGraph build(List<PolylineResult> roadList, EdgeCost cost, double cellMeters) {
+        List<PolylineResult> roads = new ArrayList<>(roadList.size());
+        int segments = 0;
+        int longest = 0;
+        for (PolylineResult road : roadList) {
+            int points = road.getGeometry().size();
+            if (points < 2) continue;
+            roads.add(road);
+            segments += points - 1;
+            longest = Math.max(longest, points);
+        }
+
+        // One entry per segment first, then spread into both directions
+        NodeIds ids = new NodeIds(segments + roads.size());
+        double[] latitudes = new double[16];
+        double[] longitudes = new double[16];
+        int nodeCount = 0;
+        int[] from = new int[segments];
+        int[] to = new int[segments];
+        float[] weight = new float[segments];
+        int[] road = new int[segments];
+        int[] degree = new int[segments + roads.size() + 1];
+        double maxEdgeMeters = 0;
+        double minWeightPerMeter = Double.POSITIVE_INFINITY;
+
+        // Coordinates straight from the packed geometry, without building GeoPoints
+        int[] latE6 = new int[longest];
+        int[] lonE6 = new int[longest];
+
+        int s = 0;
+        for (int r = 0; r < roads.size(); r++) {
+            PolylineResult result = roads.get(r);
+            RoadGeometry geometry = result.getGeometry();
+            geometry.decode(latE6, lonE6);
+
+            int previous = -1;
+            for (int i = 0; i < geometry.size(); i++) {
+                int node = ids.getOrAdd(result.nodeKey(i), nodeCount);
+                if (node == nodeCount) {
+                    if (nodeCount == latitudes.length) {
+                        latitudes = Arrays.copyOf(latitudes, nodeCount * 2);
+                        longitudes = Arrays.copyOf(longitudes, nodeCount * 2);
+                    }
+                    latitudes[nodeCount] = latE6[i] / 1e6;
+                    longitudes[nodeCount] = lonE6[i] / 1e6;
+                    nodeCount++;
+                }
+
+                if (previous >= 0) {
+                    double meters = segmentMeters(latE6[i - 1], lonE6[i - 1], latE6[i], lonE6[i]);
+                    maxEdgeMeters = Math.max(maxEdgeMeters, meters);
+                    from[s] = previous;
+                    to[s] = node;
+                    weight[s] = (float) cost.weight(result, meters);
+                    if (meters > 0) minWeightPerMeter = Math.min(minWeightPerMeter, weight[s] / meters);
+                    road[s] = r;
+                    degree[previous + 1]++;
+                    degree[node + 1]++;
+                    s++;
+                }
+                previous = node;
+            }
+        }
+
+        int[] edgeStart = Arrays.copyOf(degree, nodeCount + 1);
+        for (int n = 0; n < nodeCount; n++) edgeStart[n + 1] += edgeStart[n];
+
+        int[] edgeTarget = new int[2 * segments];
+        float[] edgeWeight = new float[2 * segments];
+        int[] edgeRoad = new int[2 * segments];
+        int[] edgeReverse = new int[2 * segments];
+        int[] next = Arrays.copyOf(edgeStart, nodeCount);
+        for (int i = 0; i < segments; i++) {
+            int forward = next[from[i]]++;
+            edgeTarget[forward] = to[i];
+            edgeWeight[forward] = weight[i];
+            edgeRoad[forward] = road[i];
+
+            int backward = next[to[i]]++;
+            edgeTarget[backward] = from[i];
+            edgeWeight[backward] = weight[i];
+            edgeRoad[backward] = road[i];
+
+            edgeReverse[forward] = backward;
+            edgeReverse[backward] = forward;
+        }
+        if (Double.isInfinite(minWeightPerMeter)) minWeightPerMeter = 0;
+
+        return new RoutingGraph(Arrays.copyOf(latitudes, nodeCount), Arrays.copyOf(longitudes, nodeCount),
+                edgeStart, edgeTarget, edgeWeight, edgeRoad, edgeReverse, roads, maxEdgeMeters, minWeightPerMeter,
+                cellMeters);
+    }
+
+    /**
+     * Length of a road segment in metres on the sphere GeoPoint.distanceToAsDouble uses. Equirectangular
+     * at the segment's mean latitude, which for segments up to a few kilometres is within millimetres
+     * of haversine and needs a single cosine.
+     */
+    private static double segmentMeters(int lat1E6, int lon1E6, int lat2E6, int lon2E6) {
+        double radiansPerE6 = Math.PI / 180 / 1e6;
+        double dy = (lat2E6 - lat1E6) * radiansPerE6;
+        double dx = (lon2E6 - lon1E6) * radiansPerE6 * Math.cos((lat1E6 + lat2E6) / 2.0 * radiansPerE6);
+        return EARTH_RADIUS_METERS * Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // ---- Structure ----
+
+    int nodeCount() {
+        return latitudes.length;
+    }
+
+    int edgeCount() {
+        return edgeTarget.length;
+    }
+
+    /**
+     * First edge leaving a node; firstEdge(node + 1) is one past its last
+     */
+    int firstEdge(int node) {
+        return edgeStart[node];
+    }
+
+    int edgeTarget(int edge) {
+        return edgeTarget[edge];
+    }
+
+    float edgeWeight(int edge) {
+        return edgeWeight[edge];
+    }
+
+    /**
+     * The same segment travelled the other way, leaving from this edge's target
+     */
+    int reverseEdge(int edge) {
+        return edgeReverse[edge];
+    }
+
+    PolylineResult edgeRoad(int edge) {
+        return roads.get(edgeRoad[edge]);
+    }
+
+    GeoPoint point(int node) {
+        return new GeoPoint(latitudes[node], longitudes[node]);
+    }
+
+    double maxEdgeMeters() {
+        return maxEdgeMeters;
+    }
+
+    /**
+     * Lowest edge weight per metre of segment, so straight-line metres times this never exceed the
+     * weight of a path
+     */
+    double minWeightPerMeter() {
+        return minWeightPerMeter;
+    }
+
+    // ---- Spatial queries ----
+
+    /**
+     * Nearest node within maxMeters, or -1
+     */
+    int nearestNode(GeoPoint point, double maxMeters) {
+        return index.nearest(point.getLatitude(), point.getLongitude(), maxMeters);
+    }
+
+    int[] nodesWithin(GeoPoint point, double radiusMeters) {
+        return index.within(point.getLatitude(), point.getLongitude(), radiusMeters);
+    }
+
+    double distanceMeters(int from, int to) {
+        return index.distanceMeters(latitudes[to], longitudes[to], from);
+    }
+
+    /**
+     * Lower bound on the weight of any path between two nodes from their straight-line distance,
+     * also when weights are metres divided by a road factor
+     */
+    double straightLineBound(int from, int to) {
+        return distanceMeters(from, to) * minWeightPerMeter * STRAIGHT_LINE_MARGIN;
+    }
+
+    // ---- Search ----
+
+    /**
+     * Weight of the lightest path from source to every node (Dijkstra), infinite where unreachable
+     */
+    double[] distancesFrom(int source) {
+        int n = nodeCount();
+        double[] distance = new double[n];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        boolean[] settled = new boolean[n];
+        NodeHeap heap = new NodeHeap(n);
+
+        distance[source] = 0;
+        heap.push(source, 0);
+        while (!heap.isEmpty()) {
+            int current = heap.pop();
+            settled[current] = true;
+            for (int e = edgeStart[current]; e < edgeStart[current + 1]; e++) {
+                int neighbor = edgeTarget[e];
+                if (settled[neighbor]) continue;
+                double d = distance[current] + edgeWeight[e];
+                if (d < distance[neighbor]) {
+                    distance[neighbor] = d;
+                    heap.push(neighbor, d);
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * A* from source to target with straightLineBound to the target as heuristic.
+     *
+     * @param maxSettled give up after expanding this many nodes
+     * @return edges along the path in travel order (empty when source is target), or null when the
+     * target was not reached
+     */
+    synchronized int[] findPath(int source, int target, int maxSettled) {
+        prepareSearch();
+        int id = searchId;
+
+        gScore[source] = 0;
+        parentEdge[source] = -1;
+        reachedIn[source] = id;
+        open.push(source, straightLineBound(source, target));
+
+        int iterations = 0;
+        try {
+            while (!open.isEmpty() && iterations < maxSettled) {
+                iterations++;
+                int current = open.pop();
+
+                if (current == target) {
+                    Log.d(TAG, "Path found in " + iterations + " iterations");
+                    return edgesTo(target);
+                }
+                settledIn[current] = id;
+
+                double g = gScore[current];
+                for (int e = edgeStart[current]; e < edgeStart[current + 1]; e++) {
+                    int neighbor = edgeTarget[e];
+                    if (settledIn[neighbor] == id) continue;
+
+                    double tentativeG = g + edgeWeight[e];
+                    if (reachedIn[neighbor] == id && tentativeG >= gScore[neighbor]) continue;
+
+                    reachedIn[neighbor] = id;
+                    gScore[neighbor] = tentativeG;
+                    parentEdge[neighbor] = e;
+                    open.push(neighbor, tentativeG + straightLineBound(neighbor, target));
+                }
+            }
+        } finally {
+            open.clear();
+        }
+
+        Log.w(TAG, "No path found after " + iterations + " iterations");
+        return null;
+    }
+
+    private void prepareSearch() {
+        if (open == null) {
+            int n = nodeCount();
+            gScore = new double[n];
+            parentEdge = new int[n];
+            reachedIn = new int[n];
+            settledIn = new int[n];
+            open = new NodeHeap(n);
+        }
+        searchId++;
+    }
+
+    private int[] edgesTo(int target) {
+        int length = 0;
+        for (int node = target; parentEdge[node] >= 0; node = sourceOf(parentEdge[node])) length++;
+
+        int[] edges = new int[length];
+        int node = target;
+        for (int i = length - 1; i >= 0; i--) {
+            edges[i] = parentEdge[node];
+            node = sourceOf(edges[i]);
+        }
+        return edges;
+    }
+
+    /**
+     * Node an edge leaves from
+     */
+    int sourceOf(int edge) {
+        return edgeTarget[edgeReverse[edge]];
+    }
+
+    /**
+     * Open addressing map from node key to node id, used only while building
+     */
+    private static final class NodeIds {
+        private final long[] keys;
+        private final int[] values;
+        private final int mask;
+
+        NodeIds(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(values, -1);
+            mask = capacity - 1;
+        }
+
+        /**
+         * Id of the key, after storing nextId for it when it was not present
+         */
+        int getOrAdd(long key, int nextId) {
+            int slot = (int) mix(key) & mask;
+            while (values[slot] >= 0) {
+                if (keys[slot] == key) return values[slot];
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = nextId;
+            return nextId;
+        }
+
+        private static long mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return h ^ (h >>> 32);
+        }
+    }
+}
@@ -3,212 +3,231 @@ package be.kuleuven.gt.grvlfinder;
 import org.osmdroid.util.GeoPoint;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class ScoreCalculator {
     private static final String TAG = "ScoreCalculator";
-    private Map<String, Integer> weights;
-    private BikeTypeManager bikeTypeManager;
+    private static final int PARALLEL_THRESHOLD = 512; // Below this, scoring is cheaper than forking
 
-    public ScoreCalculator(Map<String, Integer> weights) {
-        this.weights = weights;
-    }
+    private volatile Map<String, Integer> weights; // Replaced, never modified, so readers see a consistent map
+    private volatile BikeTypeManager bikeTypeManager;
 
-    public void setBikeTypeManager(BikeTypeManager bikeTypeManager) {
-        this.bikeTypeManager = bikeTypeManager;
-    }
+    // Compiled from the current weights, rebuilt when either weight source changes
+    private volatile CompiledProfile compiled;
+    private volatile int weightsVersion = 0;
+    private volatile Snapshot latestSnapshot; // Reused while profile and subclass state are unchanged
 
-    public int calculateScore(Map<String, String> tags, List<GeoPoint> points) {
-        // Use bike type manager weights if available, otherwise fall back to instance weights
-        Map<String, Integer> currentWeights = (bikeTypeManager != null) ?
-                bikeTypeManager.getCurrentWeights() : weights;
+    private static final class CompiledProfile {
+        final ScoringProfile profile;
+        final int ownVersion;
+        final int bikeTypeVersion;
 
-        return calculateScoreWithWeights(tags, points, currentWeights);
+        CompiledProfile(ScoringProfile profile, int ownVersion, int bikeTypeVersion) {
+            this.profile = profile;
+            this.ownVersion = ownVersion;
+            this.bikeTypeVersion = bikeTypeVersion;
+        }
     }
 
-    private int calculateScoreWithWeights(Map<String, String> tags, List<GeoPoint> points,
-                                          Map<String, Integer> currentWeights) {
-        int score = 0;
+    public ScoreCalculator(Map<String, Integer> weights) {
+        this.weights = new HashMap<>(weights);
+    }
 
-        int w_surface = currentWeights.getOrDefault("surface", 3);
-        int w_smoothness = currentWeights.getOrDefault("smoothness", 2);
-        int w_tracktype = currentWeights.getOrDefault("tracktype", 2);
-        int w_bicycle = currentWeights.getOrDefault("bicycle", 2);
-        int w_width = currentWeights.getOrDefault("width", 1);
-        int w_length = currentWeights.getOrDefault("length", 1);
-        int w_slope = currentWeights.getOrDefault("slope", 5);
+    /**
+     * Immutable scoring state taken at one moment: the compiled weights plus whatever a subclass
+     * adds (weather). Safe to share between threads while the UI keeps editing weights.
+     */
+    public static class Snapshot {
+        protected final ScoringProfile profile;
 
-        // Apply bike-type specific scoring
-        if (bikeTypeManager != null && bikeTypeManager.prefersPavedRoads()) {
-            score += calculateRoadSurfaceScore(tags.get("surface"), w_surface);
-        } else {
-            score += calculateSurfaceScore(tags.get("surface"), w_surface);
+        protected Snapshot(ScoringProfile profile) {
+            this.profile = profile;
         }
 
-        score += calculateSmoothnessScore(tags.get("smoothness"), w_smoothness);
-        score += calculateTracktypeScore(tags.get("tracktype"), w_tracktype);
-        score += calculateBicycleScore(tags.get("bicycle"), w_bicycle);
-        score += calculateWidthScore(tags.get("width"), w_width);
-        score += calculateLengthScore(points, w_length);
-        score += calculateSlopeScore(tags, w_slope);
-
-        return Math.max(0, score);
-    }
-
-    public int calculateScoreWithSlope(Map<String, String> tags, List<GeoPoint> points, double maxSlopePercent) {
-        // Use bike type manager weights if available
-        Map<String, Integer> currentWeights = (bikeTypeManager != null) ?
-                bikeTypeManager.getCurrentWeights() : weights;
+        /**
+         * Score of a road, using its measured slope when it has one
+         */
+        public int score(PolylineResult road) {
+            double maxSlope = road.getMaxSlopePercent();
+            return maxSlope >= 0 ? scoreWithSlope(road, maxSlope) : scoreFromTags(road);
+        }
 
-        int baseScore = calculateScoreWithWeights(tags, points, currentWeights);
-        // Remove the slope score from tags (which might be inaccurate)
-        int w_slope = currentWeights.getOrDefault("slope", 5);
-        baseScore -= calculateSlopeScore(tags, w_slope);
+        /**
+         * Score from tags and length only, ignoring any measured slope
+         */
+        public int scoreFromTags(PolylineResult road) {
+            return score(road.getTags(), road.getComponents());
+        }
 
-        // Add the accurate slope score only if bike type uses slope penalties
-        if (bikeTypeManager == null || bikeTypeManager.shouldPenalizeSlopes()) {
-            baseScore += calculateAccurateSlopeScore(maxSlopePercent, w_slope);
+        public int scoreWithSlope(PolylineResult road, double maxSlopePercent) {
+            return scoreWithSlope(road.getTags(), road.getComponents(), maxSlopePercent);
         }
 
-        return Math.max(0, baseScore);
-    }
+        protected int score(Map<String, String> tags, ScoreComponents components) {
+            return profile.score(components);
+        }
 
-    private int calculateRoadSurfaceScore(String surface, int weight) {
-        if (surface == null) return 0;
-        switch (surface.toLowerCase()) {
-            case "asphalt": case "paved": case "concrete": case "concrete:plates":
-                return 3 * weight; // High score for paved surfaces
-            case "compacted": case "fine_gravel":
-                return 1 * weight; // Acceptable for road bikes
-            case "gravel": case "pebblestone":
-                return -1 * weight; // Slight penalty for gravel
-            case "ground": case "earth": case "dirt": case "unpaved":
-                return -3 * weight; // Strong penalty for unpaved
-            default:
-                return 0;
+        protected int scoreWithSlope(Map<String, String> tags, ScoreComponents components, double maxSlopePercent) {
+            return profile.scoreWithSlope(components, maxSlopePercent);
         }
     }
 
-    private int calculateSurfaceScore(String surface, int weight) {
-        if (surface == null) return 0;
-        switch (surface.toLowerCase()) {
-            case "gravel": case "fine_gravel": case "pebblestone": case "compacted":
-                return 2 * weight;
-            case "ground": case "earth": case "dirt": case "unpaved":
-                return 1 * weight;
-            case "asphalt": case "paved": case "concrete": case "concrete:plates":
-                return -4 * weight;
-            default:
-                return 0;
+    /**
+     * Freeze the current weights, bike type (and in subclasses weather) for batch scoring.
+     * The same snapshot is handed out until any of them changes, so single-road scoring allocates nothing.
+     */
+    public Snapshot snapshot() {
+        ScoringProfile profile = getProfile();
+        Snapshot latest = latestSnapshot;
+        if (latest != null && latest.profile == profile && isCurrent(latest)) {
+            return latest;
         }
+        latest = createSnapshot(profile);
+        latestSnapshot = latest;
+        return latest;
     }
 
-    private int calculateSmoothnessScore(String smoothness, int weight) {
-        if (smoothness == null) return 0;
-        switch (smoothness.toLowerCase()) {
-            case "good": return 1 * weight;
-            case "bad": return -1 * weight;
-            default: return 0;
-        }
+    protected Snapshot createSnapshot(ScoringProfile profile) {
+        return new Snapshot(profile);
     }
 
-    private int calculateTracktypeScore(String tracktype, int weight) {
-        if (tracktype == null) return 0;
-        switch (tracktype.toLowerCase()) {
-            case "grade2": case "grade3": return weight;
-            case "grade1": return -weight;
-            default: return 0;
-        }
+    /**
+     * Whether a snapshot with the current profile still matches the state a subclass adds
+     */
+    protected boolean isCurrent(Snapshot snapshot) {
+        return true;
     }
 
-    private int calculateBicycleScore(String bicycle, int weight) {
-        if (bicycle == null) return 0;
-        switch (bicycle.toLowerCase()) {
-            case "yes": case "designated": return weight;
-            case "no": return -2 * weight;
-            default: return 0;
-        }
+    public void setBikeTypeManager(BikeTypeManager bikeTypeManager) {
+        this.bikeTypeManager = bikeTypeManager;
+        weightsVersion++;
     }
 
-    private int calculateWidthScore(String width, int weight) {
-        if (width == null) return 0;
-        try {
-            String numStr = width.replaceAll("[^0-9.]", "");
-            double meters = Double.parseDouble(numStr);
-            if (meters >= 3) return weight;
-            else if (meters < 1.5) return -weight;
-            return 0;
-        } catch (NumberFormatException e) {
-            return 0;
+    /**
+     * The scoring profile for the current weights and bike type
+     */
+    public ScoringProfile getProfile() {
+        BikeTypeManager manager = bikeTypeManager;
+        int ownVersion = weightsVersion;
+        int bikeTypeVersion = (manager != null) ? manager.getWeightsVersion() : -1;
+        CompiledProfile current = compiled;
+        if (current != null && current.ownVersion == ownVersion && current.bikeTypeVersion == bikeTypeVersion) {
+            return current.profile;
         }
-    }
 
-    private int calculateLengthScore(List<GeoPoint> points, int weight) {
-        if (points == null || points.size() < 2) return 0;
+        synchronized (this) {
+            current = compiled;
+            if (current != null && current.ownVersion == ownVersion && current.bikeTypeVersion == bikeTypeVersion) {
+                return current.profile;
+            }
 
-        double length = 0;
-        for (int i = 1; i < points.size(); i++) {
-            length += points.get(i-1).distanceToAsDouble(points.get(i));
+            // Versions are read before the weights, so a concurrent update at worst triggers one more compile
+            // Use bike type manager weights if available, otherwise fall back to instance weights
+            Map<String, Integer> currentWeights = (manager != null) ?
+                    manager.getCurrentWeights() : weights;
+            ScoringProfile profile = ScoringProfile.compile(currentWeights,
+                    manager != null && manager.prefersPavedRoads(),
+                    manager == null || manager.shouldPenalizeSlopes());
+            compiled = new CompiledProfile(profile, ownVersion, bikeTypeVersion);
+            return profile;
         }
+    }
 
-        if (length >= 300) return weight;
-        else if (length < 50) return -weight;
-        return 0;
+    public int calculateScore(Map<String, String> tags, List<GeoPoint> points) {
+        return snapshot().score(tags, ScoreComponents.of(tags, lengthOf(points)));
     }
 
-    private int calculateSlopeScore(Map<String, String> tags, int weight) {
-        if (weight == 0) return 0;
+    /**
+     * Score a road from its cached score components, without touching tags or GeoPoints
+     */
+    public int calculateScore(PolylineResult road) {
+        return snapshot().scoreFromTags(road);
+    }
 
-        String incline = tags.get("incline");
-        if (incline == null) return 0; // No penalty for missing data
+    /**
+     * The slope score from tags (which might be inaccurate) is replaced by the measured slope,
+     * but only if the bike type uses slope penalties
+     */
+    public int calculateScoreWithSlope(Map<String, String> tags, List<GeoPoint> points, double maxSlopePercent) {
+        return snapshot().scoreWithSlope(tags, ScoreComponents.of(tags, lengthOf(points)), maxSlopePercent);
+    }
 
-        try {
-            // Parse incline value (can be "5%", "steep", "up", etc.)
-            String cleaned = incline.toLowerCase().replaceAll("[^0-9.-]", "");
-            if (cleaned.isEmpty()) {
-                // Handle text values
-                switch (incline.toLowerCase()) {
-                    case "steep": return -weight * 200; // Much harsher penalty
-                    case "up": case "down": return -weight * 50;
-                    default: return 0;
-                }
-            }
+    public int calculateScoreWithSlope(PolylineResult road, double maxSlopePercent) {
+        return snapshot().scoreWithSlope(road, maxSlopePercent);
+    }
 
-            double slopePercent = Double.parseDouble(cleaned);
-            return calculateSlopeScoreFromPercent(slopePercent, weight);
+    /**
+     * Score roads in place with one snapshot of the current weights, in parallel for large lists.
+     * Roads with a measured slope are scored with it. Only the score components are used, so this
+     * needs no network access and no tag parsing.
+     */
+    public void scoreAll(List<PolylineResult> roads) {
+        scoreAll(roads, snapshot());
+    }
 
-        } catch (NumberFormatException e) {
-            Log.w(TAG, "Could not parse incline: " + incline);
-            return 0;
+    public static void scoreAll(List<PolylineResult> roads, Snapshot snapshot) {
+        if (roads.size() < PARALLEL_THRESHOLD) {
+            for (PolylineResult road : roads) {
+                road.setScore(snapshot.score(road));
+            }
+            return;
         }
+        PolylineResult[] array = roads.toArray(new PolylineResult[0]);
+        ForkJoinPool.commonPool().invoke(new ScoreTask(array, 0, array.length, snapshot));
     }
 
     /**
-     * Accurate slope scoring using calculated slope data
+     * Copy-on-write variant of scoreAll: returns an unmodifiable list of rescored copies (sharing geometry
+     * and tags) and leaves the given roads untouched, so they can stay on screen while this runs
      */
-    private int calculateAccurateSlopeScore(double maxSlopePercent, int weight) {
-        if (maxSlopePercent < 0) {
-            return 0; // No data, no penalty
+    public static List<PolylineResult> scoredCopies(List<PolylineResult> roads, Snapshot snapshot) {
+        List<PolylineResult> copies = new ArrayList<>(roads.size());
+        for (PolylineResult road : roads) {
+            copies.add(road.withScore(road.getScore()));
         }
+        scoreAll(copies, snapshot);
+        return Collections.unmodifiableList(copies);
+    }
 
-        return calculateSlopeScoreFromPercent(maxSlopePercent, weight);
+    private static final class ScoreTask extends RecursiveAction {
+        private final PolylineResult[] roads;
+        private final int from, to;
+        private final Snapshot snapshot;
+
+        ScoreTask(PolylineResult[] roads, int from, int to, Snapshot snapshot) {
+            this.roads = roads;
+            this.from = from;
+            this.to = to;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    roads[i].setScore(snapshot.score(roads[i]));
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ScoreTask(roads, from, mid, snapshot), new ScoreTask(roads, mid, to, snapshot));
+        }
     }
 
-    private int calculateSlopeScoreFromPercent(double slopePercent, int weight) {
-        // Use absolute value for consistent scoring
-        double absSlope = Math.abs(slopePercent);
+    private static double lengthOf(List<GeoPoint> points) {
+        if (points == null || points.size() < 2) return -1;
 
-        // MASSIVELY increased penalties for slopes above 12%
-        if (absSlope >= 20.0) {
-            return -weight * 1000; // Essentially eliminates the road from consideration
-        } else if (absSlope >= 15.0) {
-            return -weight * 500;  // Extreme penalty - road will score very poorly
-        } else if (absSlope >= 12.0) {
-            return -weight * 250;  // Very harsh penalty - this is your main target
-        } else {
-            return 0;              // Gentle slope, no penalty
+        double length = 0;
+        for (int i = 1; i < points.size(); i++) {
+            length += points.get(i-1).distanceToAsDouble(points.get(i));
         }
+        return length;
     }
 
     @Deprecated
@@ -218,8 +237,10 @@ public class ScoreCalculator {
     }
 
     public void updateWeights(Map<String, Integer> newWeights) {
-        this.weights.clear();
-        this.weights.putAll(newWeights);
+        // Swap in a copy: clearing the shared map raced with scoring threads, and emptied it
+        // when the caller passed the same map it had given to the constructor
+        this.weights = new HashMap<>(newWeights);
+        weightsVersion++;
 
         // If we have a bike type manager, update its custom weights if in custom mode
         if (bikeTypeManager != null && bikeTypeManager.getCurrentBikeType() == BikeType.CUSTOM) {
@@ -0,0 +1,164 @@
+package be.kuleuven.gt.grvlfinder;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unweighted per-criterion score components of a road.
+ * Every criterion contributes unit x weight, so once a road's units are known any weight vector or
+ * bike type is scored with a dot product (see ScoringProfile) without looking at the tags again.
+ * Components only depend on the tags and the length class, so roads with the same TagSet share instances.
+ */
+public final class ScoreComponents {
+    private static final String TAG = "ScoreComponents";
+
+    // Unit contribution per (lower case) tag value
+    private static final Map<String, Integer> GRAVEL_SURFACE_UNITS = new HashMap<>();
+    private static final Map<String, Integer> ROAD_SURFACE_UNITS = new HashMap<>();
+    private static final Map<String, Integer> SMOOTHNESS_UNITS = new HashMap<>();
+    private static final Map<String, Integer> TRACKTYPE_UNITS = new HashMap<>();
+    private static final Map<String, Integer> BICYCLE_UNITS = new HashMap<>();
+    private static final Map<String, Integer> INCLINE_TEXT_UNITS = new HashMap<>();
+
+    static {
+        putAll(GRAVEL_SURFACE_UNITS, 2, "gravel", "fine_gravel", "pebblestone", "compacted");
+        putAll(GRAVEL_SURFACE_UNITS, 1, "ground", "earth", "dirt", "unpaved");
+        putAll(GRAVEL_SURFACE_UNITS, -4, "asphalt", "paved", "concrete", "concrete:plates");
+
+        putAll(ROAD_SURFACE_UNITS, 3, "asphalt", "paved", "concrete", "concrete:plates"); // Paved surfaces
+        putAll(ROAD_SURFACE_UNITS, 1, "compacted", "fine_gravel"); // Acceptable for road bikes
+        putAll(ROAD_SURFACE_UNITS, -1, "gravel", "pebblestone");
+        putAll(ROAD_SURFACE_UNITS, -3, "ground", "earth", "dirt", "unpaved");
+
+        putAll(SMOOTHNESS_UNITS, 1, "good");
+        putAll(SMOOTHNESS_UNITS, -1, "bad");
+
+        putAll(TRACKTYPE_UNITS, 1, "grade2", "grade3");
+        putAll(TRACKTYPE_UNITS, -1, "grade1");
+
+        putAll(BICYCLE_UNITS, 1, "yes", "designated");
+        putAll(BICYCLE_UNITS, -2, "no");
+
+        putAll(INCLINE_TEXT_UNITS, -200, "steep"); // Much harsher penalty
+        putAll(INCLINE_TEXT_UNITS, -50, "up", "down");
+    }
+
+    // Surface has two scales: gravel bikes like unpaved, road bikes like asphalt
+    public final int gravelSurface;
+    public final int roadSurface;
+    public final int smoothness;
+    public final int tracktype;
+    public final int bicycle;
+    public final int width;
+    public final int length;
+    public final int tagSlope; // from the incline tag, replaced by the measured slope when known
+
+    private ScoreComponents(Map<String, String> tags, int length) {
+        this.gravelSurface = unit(GRAVEL_SURFACE_UNITS, tags.get("surface"));
+        this.roadSurface = unit(ROAD_SURFACE_UNITS, tags.get("surface"));
+        this.smoothness = unit(SMOOTHNESS_UNITS, tags.get("smoothness"));
+        this.tracktype = unit(TRACKTYPE_UNITS, tags.get("tracktype"));
+        this.bicycle = unit(BICYCLE_UNITS, tags.get("bicycle"));
+        this.width = widthUnit(tags.get("width"));
+        this.length = length;
+        this.tagSlope = inclineUnit(tags.get("incline"));
+    }
+
+    /**
+     * Components for a road; pass a negative length when the road has fewer than two points
+     */
+    public static ScoreComponents of(Map<String, String> tags, double lengthMeters) {
+        int length = lengthUnit(lengthMeters);
+        if (tags instanceof TagSet) {
+            return ((TagSet) tags).components(length);
+        }
+        if (tags instanceof RoadTags) {
+            return ((RoadTags) tags).shared().components(length);
+        }
+        return new ScoreComponents(tags, length);
+    }
+
+    /**
+     * Used by TagSet to fill its per-length-class cache
+     */
+    static ScoreComponents compute(Map<String, String> tags, int length) {
+        return new ScoreComponents(tags, length);
+    }
+
+    static int lengthUnit(double lengthMeters) {
+        if (lengthMeters < 0) return 0;
+        if (lengthMeters >= 300) return 1;
+        if (lengthMeters < 50) return -1;
+        return 0;
+    }
+
+    /**
+     * Unit for a measured maximum slope in percent
+     */
+    static int slopeUnit(double slopePercent) {
+        double absSlope = Math.abs(slopePercent);
+        if (absSlope >= 20.0) return -1000; // Essentially eliminates the road from consideration
+        if (absSlope >= 15.0) return -500;
+        if (absSlope >= 12.0) return -250;
+        return 0;                           // Gentle slope, no penalty
+    }
+
+    private static int unit(Map<String, Integer> table, String value) {
+        if (value == null) return 0;
+        Integer unit = table.get(value);
+        if (unit == null) unit = table.get(value.toLowerCase());
+        return unit != null ? unit : 0;
+    }
+
+    private static int widthUnit(String width) {
+        if (width == null) return 0;
+        try {
+            double meters = Double.parseDouble(keepChars(width, false));
+            if (meters >= 3) return 1;
+            else if (meters < 1.5) return -1;
+            return 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Incline can be "5%", "-8 %", "steep", "up", ...
+     */
+    private static int inclineUnit(String incline) {
+        if (incline == null) return 0; // No penalty for missing data
+
+        String cleaned = keepChars(incline, true);
+        if (cleaned.isEmpty()) {
+            return unit(INCLINE_TEXT_UNITS, incline);
+        }
+        try {
+            return slopeUnit(Double.parseDouble(cleaned));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Could not parse incline: " + incline);
+            return 0;
+        }
+    }
+
+    /**
+     * Digits and dots (and minus signs when allowed) of the value, without a regex
+     */
+    private static String keepChars(String value, boolean allowMinus) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c >= '0' && c <= '9') || c == '.' || (allowMinus && c == '-')) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void putAll(Map<String, Integer> table, int unit, String... values) {
+        for (String value : values) {
+            table.put(value, unit);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package be.kuleuven.gt.grvlfinder;
+
+import java.util.Map;
+
+/**
+ * Weights and bike type compiled into an immutable scoring profile.
+ * A road's score is the dot product of this profile with the road's ScoreComponents, so rescoring
+ * after a weight or bike type change is a few int multiplications per road, with no tag lookups.
+ * A new profile is compiled whenever the weights or the bike type change.
+ */
+public final class ScoringProfile {
+    private final int surfaceWeight;
+    private final int smoothnessWeight;
+    private final int tracktypeWeight;
+    private final int bicycleWeight;
+    private final int widthWeight;
+    private final int lengthWeight;
+    private final int slopeWeight;
+    private final boolean prefersPavedRoads;
+    private final boolean penalizeSlopes;
+
+    private ScoringProfile(Map<String, Integer> weights, boolean prefersPavedRoads, boolean penalizeSlopes) {
+        this.surfaceWeight = weights.getOrDefault("surface", 3);
+        this.smoothnessWeight = weights.getOrDefault("smoothness", 2);
+        this.tracktypeWeight = weights.getOrDefault("tracktype", 2);
+        this.bicycleWeight = weights.getOrDefault("bicycle", 2);
+        this.widthWeight = weights.getOrDefault("width", 1);
+        this.lengthWeight = weights.getOrDefault("length", 1);
+        this.slopeWeight = weights.getOrDefault("slope", 5);
+        this.prefersPavedRoads = prefersPavedRoads;
+        this.penalizeSlopes = penalizeSlopes;
+    }
+
+    public static ScoringProfile compile(Map<String, Integer> weights, boolean prefersPavedRoads,
+                                         boolean penalizeSlopes) {
+        return new ScoringProfile(weights, prefersPavedRoads, penalizeSlopes);
+    }
+
+    /**
+     * Score as ScoreCalculator.calculateScore
+     */
+    public int score(ScoreComponents c) {
+        return Math.max(0, tagScore(c) + c.length * lengthWeight);
+    }
+
+    /**
+     * Score with the tag-based slope replaced by the measured one, as ScoreCalculator.calculateScoreWithSlope
+     */
+    public int scoreWithSlope(ScoreComponents c, double maxSlopePercent) {
+        // The clamped base score is the starting point, as it always has been
+        int score = score(c) - c.tagSlope * slopeWeight;
+        if (penalizeSlopes) {
+            score += accurateSlopeScore(maxSlopePercent);
+        }
+        return Math.max(0, score);
+    }
+
+    /**
+     * Weighted tag criteria, without the length
+     */
+    public int tagScore(ScoreComponents c) {
+        return (prefersPavedRoads ? c.roadSurface : c.gravelSurface) * surfaceWeight
+                + c.smoothness * smoothnessWeight
+                + c.tracktype * tracktypeWeight
+                + c.bicycle * bicycleWeight
+                + c.width * widthWeight
+                + c.tagSlope * slopeWeight;
+    }
+
+    /**
+     * Penalty for a measured slope, 0 when no slope data is available (negative value)
+     */
+    public int accurateSlopeScore(double maxSlopePercent) {
+        if (maxSlopePercent < 0) return 0;
+        return ScoreComponents.slopeUnit(maxSlopePercent) * slopeWeight;
+    }
+
+    public boolean penalizesSlopes() {
+        return penalizeSlopes;
+    }
+}
@@ -9,29 +9,53 @@ import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 /**
  * Production-ready routing service that scores roads based on bike type preferences
- * Uses A* pathfinding with road quality scores as weights
+ * Uses bidirectional A* with landmark bounds and road quality scores as weights; routes within the
+ * last fetched area reuse its graph and landmarks
  */
 public class SmartRoutingService {
     private static final String TAG = "SmartRoutingService";
     private static final ExecutorService executor = Executors.newSingleThreadExecutor();
     private static final double MAX_DISTANCE_KM = 50.0; // Maximum route distance
-    private static final int MAX_NODES = 10000; // Prevent infinite loops
+    private static final int LANDMARKS = 8; // Lower bound tables per graph, one float per node each
+    private static final long SEARCH_BUDGET_MS = 3000; // Interactive limit for landmark setup plus search
+    private static final double MAX_SNAP_METERS = 100; // Max distance from start/end to the road network
+
+    // Weight = distance / (score factor); higher score = lower weight = preferred path
+    static final RoutingGraph.EdgeCost SCORE_WEIGHTED_DISTANCE = (road, distance) ->
+            distance / Math.max(1.0, (road.getScore() + 30.0) / 30.0);
 
     private Context context;
     private BikeTypeManager bikeTypeManager;
     private ScoreCalculator scoreCalculator;
+    private RoadNetwork network; // Last fetched area, only touched on the executor
+
+    /**
+     * Graph of one fetched area, scored with one scoring snapshot, and its landmark router once built
+     */
+    private static final class RoadNetwork {
+        final BoundingBox bbox;
+        final ScoreCalculator.Snapshot scoring;
+        final RoutingGraph graph;
+        AltRouter router;
+
+        RoadNetwork(BoundingBox bbox, ScoreCalculator.Snapshot scoring, RoutingGraph graph) {
+            this.bbox = bbox;
+            this.scoring = scoring;
+            this.graph = graph;
+        }
+
+        boolean covers(BoundingBox area, ScoreCalculator.Snapshot currentScoring) {
+            return scoring == currentScoring
+                    && area.getLatNorth() <= bbox.getLatNorth() && area.getLatSouth() >= bbox.getLatSouth()
+                    && area.getLonEast() <= bbox.getLonEast() && area.getLonWest() >= bbox.getLonWest();
+        }
+    }
 
     public SmartRoutingService(Context context, BikeTypeManager bikeTypeManager, ScoreCalculator scoreCalculator) {
         this.context = context.getApplicationContext();
@@ -49,43 +73,58 @@ public class SmartRoutingService {
 
         executor.execute(() -> {
             try {
-                //Fetch road network in bounding box
                 BoundingBox bbox = createExpandedBBox(start, end);
-                Log.d(TAG, "Fetching road network...");
+                ScoreCalculator.Snapshot scoring = scoreCalculator.snapshot();
+                boolean reused = network != null && network.covers(bbox, scoring);
 
-                List<PolylineResult> roads = OverpassServiceSync.fetchDataSync(bbox, scoreCalculator);
+                if (!reused) {
+                    //Fetch road network in bounding box
+                    Log.d(TAG, "Fetching road network...");
 
-                if (roads.isEmpty()) {
-                    mainHandler.post(() -> callback.onError("No roads found in area"));
-                    return;
-                }
+                    List<PolylineResult> roads = OverpassServiceSync.fetchDataSync(bbox, scoreCalculator);
+
+                    if (roads.isEmpty()) {
+                        mainHandler.post(() -> callback.onError("No roads found in area"));
+                        return;
+                    }
 
-                Log.d(TAG, "Found " + roads.size() + " roads, building graph...");
+                    Log.d(TAG, "Found " + roads.size() + " roads, building graph...");
 
-                //Build road network graph
-                RoadGraph graph = buildRoadGraph(roads);
+                    //Build road network graph
+                    network = new RoadNetwork(bbox, scoring, buildRoadGraph(roads));
+                } else {
+                    Log.d(TAG, "Route inside the previous area, reusing its graph");
+                }
+                RoutingGraph graph = network.graph;
 
                 //Find nearest nodes to start and end
-                RoadNode startNode = graph.findNearestNode(start);
-                RoadNode endNode = graph.findNearestNode(end);
+                int startNode = graph.nearestNode(start, MAX_SNAP_METERS);
+                int endNode = graph.nearestNode(end, MAX_SNAP_METERS);
 
-                if (startNode == null || endNode == null) {
+                if (startNode < 0 || endNode < 0) {
                     mainHandler.post(() -> callback.onError("Cannot connect start/end to road network"));
                     return;
                 }
 
                 Log.d(TAG, "Running A* pathfinding...");
 
-                //Run A* pathfinding with score-based weights
-                List<GeoPoint> route = findBestPath(graph, startNode, endNode, start, end);
+                //Run bidirectional A* with landmark bounds on the score-based weights
+                long started = System.currentTimeMillis();
+                if (network.router == null) {
+                    // Landmarks get at most half the budget, so the search itself keeps the rest
+                    network.router = new AltRouter(graph, LANDMARKS, startNode, started + SEARCH_BUDGET_MS / 2);
+                }
+                int[] edges = network.router.findPath(startNode, endNode,
+                        Math.max(0, started + SEARCH_BUDGET_MS - System.currentTimeMillis()));
 
-                if (route == null || route.isEmpty()) {
+                if (edges == null) {
                     mainHandler.post(() -> callback.onError("No route found"));
                     return;
                 }
+                List<GeoPoint> route = pathPoints(graph, startNode, edges, start, end);
 
                 //Calculate route metrics
-                RouteMetrics metrics = calculateRouteMetrics(route, roads);
+                RouteMetrics metrics = calculateRouteMetrics(route, graph, edges);
 
                 Log.d(TAG, "Route found: " + route.size() + " points, " +
                         String.format("%.1f km", metrics.totalDistanceKm));
@@ -102,112 +141,30 @@ public class SmartRoutingService {
     /**
      * Build road graph from OSM data
      */
-    private RoadGraph buildRoadGraph(List<PolylineResult> roads) {
-        RoadGraph graph = new RoadGraph();
-
-        for (PolylineResult road : roads) {
-            List<GeoPoint> points = road.getPoints();
-            int score = road.getScore();
-
-            // Add nodes and edges for this road
-            for (int i = 0; i < points.size() - 1; i++) {
-                GeoPoint p1 = points.get(i);
-                GeoPoint p2 = points.get(i + 1);
-
-                RoadNode n1 = graph.getOrCreateNode(p1);
-                RoadNode n2 = graph.getOrCreateNode(p2);
-
-                double distance = p1.distanceToAsDouble(p2);
-
-                // Weight = distance / (score factor)
-                // Higher score = lower weight = preferred path
-                double scoreFactor = Math.max(1.0, (score + 30.0) / 30.0);
-                double weight = distance / scoreFactor;
-
-                graph.addEdge(n1, n2, weight, road);
-            }
-        }
-
-        return graph;
+    private RoutingGraph buildRoadGraph(List<PolylineResult> roads) {
+        return RoutingGraph.build(roads, SCORE_WEIGHTED_DISTANCE, MAX_SNAP_METERS);
     }
 
     /**
-     * A* pathfinding algorithm with score-based weights
+     * Route points along the path edges, from the actual start to the actual end
      */
-    private List<GeoPoint> findBestPath(RoadGraph graph, RoadNode start, RoadNode end,
-                                        GeoPoint actualStart, GeoPoint actualEnd) {
-
-        PriorityQueue<PathNode> openSet = new PriorityQueue<>((a, b) ->
-                Double.compare(a.fScore, b.fScore));
-
-        Map<RoadNode, PathNode> allNodes = new HashMap<>();
-        Set<RoadNode> closedSet = new HashSet<>();
-
-        PathNode startPath = new PathNode(start, null, 0, start.point.distanceToAsDouble(end.point));
-        openSet.add(startPath);
-        allNodes.put(start, startPath);
-
-        int iterations = 0;
-
-        while (!openSet.isEmpty() && iterations < MAX_NODES) {
-            iterations++;
-
-            PathNode current = openSet.poll();
-
-            if (current.node.equals(end)) {
-                // Reconstruct path
-                List<GeoPoint> path = new ArrayList<>();
-                path.add(actualStart); // Add actual start point
-
-                PathNode node = current;
-                while (node != null) {
-                    path.add(node.node.point);
-                    node = node.parent;
-                }
-
-                Collections.reverse(path);
-                path.add(actualEnd); // Add actual end point
-
-                return path;
-            }
-
-            closedSet.add(current.node);
-
-            // Explore neighbors
-            for (RoadEdge edge : current.node.edges) {
-                RoadNode neighbor = edge.to;
-
-                if (closedSet.contains(neighbor)) continue;
-
-                double tentativeG = current.gScore + edge.weight;
-
-                PathNode neighborPath = allNodes.get(neighbor);
-
-                if (neighborPath == null) {
-                    double h = neighbor.point.distanceToAsDouble(end.point);
-                    neighborPath = new PathNode(neighbor, current, tentativeG, tentativeG + h);
-                    allNodes.put(neighbor, neighborPath);
-                    openSet.add(neighborPath);
-                } else if (tentativeG < neighborPath.gScore) {
-                    neighborPath.gScore = tentativeG;
-                    neighborPath.fScore = tentativeG + neighbor.point.distanceToAsDouble(end.point);
-                    neighborPath.parent = current;
-
-                    // Re-add to priority queue with updated priority
-                    openSet.remove(neighborPath);
-                    openSet.add(neighborPath);
-                }
-            }
+    private List<GeoPoint> pathPoints(RoutingGraph graph, int startNode, int[] edges,
+                                      GeoPoint actualStart, GeoPoint actualEnd) {
+        List<GeoPoint> path = new ArrayList<>(edges.length + 3);
+        path.add(actualStart); // Add actual start point
+        path.add(graph.point(startNode));
+        for (int edge : edges) {
+            path.add(graph.point(graph.edgeTarget(edge)));
         }
-
-        Log.w(TAG, "No path found after " + iterations + " iterations");
-        return null;
+        path.add(actualEnd); // Add actual end point
+        return path;
     }
 
     /**
-     * Calculate detailed route metrics
+     * Calculate detailed route metrics; the legs to and from the road network only count
+     * towards the total distance
      */
-    private RouteMetrics calculateRouteMetrics(List<GeoPoint> route, List<PolylineResult> roads) {
+    private RouteMetrics calculateRouteMetrics(List<GeoPoint> route, RoutingGraph graph, int[] edges) {
         RouteMetrics metrics = new RouteMetrics();
 
         double totalDistance = 0;
@@ -223,24 +180,24 @@ public class SmartRoutingService {
             double segmentDist = p1.distanceToAsDouble(p2);
             totalDistance += segmentDist;
 
-            // Find matching road for this segment
-            PolylineResult matchingRoad = findMatchingRoad(p1, p2, roads);
+            // Route segment i follows path edge i - 1, see pathPoints
+            int edge = i - 1;
+            if (edge < 0 || edge >= edges.length) continue;
+            PolylineResult road = graph.edgeRoad(edges[edge]);
 
-            if (matchingRoad != null) {
-                String surface = matchingRoad.getTags().get("surface");
+            String surface = road.getTags().get("surface");
 
-                if (isGravelSurface(surface)) {
-                    gravelDistance += segmentDist;
-                } else if (isPavedSurface(surface)) {
-                    pavedDistance += segmentDist;
-                }
+            if (isGravelSurface(surface)) {
+                gravelDistance += segmentDist;
+            } else if (isPavedSurface(surface)) {
+                pavedDistance += segmentDist;
+            }
 
-                // Check slope
-                double slope = matchingRoad.getMaxSlopePercent();
-                if (slope > maxSlope) {
-                    maxSlope = slope;
-                    steepestPoint = p1;
-                }
+            // Check slope
+            double slope = road.getMaxSlopePercent();
+            if (slope > maxSlope) {
+                maxSlope = slope;
+                steepestPoint = p1;
             }
         }
 
@@ -253,45 +210,6 @@ public class SmartRoutingService {
         return metrics;
     }
 
-    private PolylineResult findMatchingRoad(GeoPoint p1, GeoPoint p2, List<PolylineResult> roads) {
-        double minDist = Double.MAX_VALUE;
-        PolylineResult closest = null;
-
-        for (PolylineResult road : roads) {
-            List<GeoPoint> points = road.getPoints();
-
-            for (int i = 0; i < points.size() - 1; i++) {
-                GeoPoint a = points.get(i);
-                GeoPoint b = points.get(i + 1);
-
-                double dist1 = distanceToSegment(p1, a, b);
-                double dist2 = distanceToSegment(p2, a, b);
-                double avgDist = (dist1 + dist2) / 2.0;
-
-                if (avgDist < minDist) {
-                    minDist = avgDist;
-                    closest = road;
-                }
-            }
-        }
-
-        return (minDist < 50) ? closest : null;
-    }
-
-    private double distanceToSegment(GeoPoint p, GeoPoint a, GeoPoint b) {
-        double ax = a.getLongitude(), ay = a.getLatitude();
-        double bx = b.getLongitude(), by = b.getLatitude();
-        double px = p.getLongitude(), py = p.getLatitude();
-
-        double dx = bx - ax, dy = by - ay;
-        if (dx == 0 && dy == 0) return p.distanceToAsDouble(a);
-
-        double t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / (dx * dx + dy * dy)));
-
-        GeoPoint projected = new GeoPoint(ay + t * dy, ax + t * dx);
-        return p.distanceToAsDouble(projected);
-    }
-
     private boolean isGravelSurface(String surface) {
         if (surface == null) return false;
         surface = surface.toLowerCase();
@@ -322,74 +240,6 @@ public class SmartRoutingService {
     }
 
     // Inner classes
-    private static class RoadGraph {
-        private Map<String, RoadNode> nodes = new HashMap<>();
-
-        RoadNode getOrCreateNode(GeoPoint point) {
-            String key = pointKey(point);
-            return nodes.computeIfAbsent(key, k -> new RoadNode(point));
-        }
-
-        void addEdge(RoadNode from, RoadNode to, double weight, PolylineResult road) {
-            from.edges.add(new RoadEdge(to, weight, road));
-            to.edges.add(new RoadEdge(from, weight, road)); // Bidirectional
-        }
-
-        RoadNode findNearestNode(GeoPoint point) {
-            RoadNode nearest = null;
-            double minDist = Double.MAX_VALUE;
-
-            for (RoadNode node : nodes.values()) {
-                double dist = point.distanceToAsDouble(node.point);
-                if (dist < minDist) {
-                    minDist = dist;
-                    nearest = node;
-                }
-            }
-
-            return (minDist < 100) ? nearest : null; // Max 100m snap distance
-        }
-
-        private String pointKey(GeoPoint p) {
-            return String.format("%.6f,%.6f", p.getLatitude(), p.getLongitude());
-        }
-    }
-
-    private static class RoadNode {
-        GeoPoint point;
-        List<RoadEdge> edges = new ArrayList<>();
-
-        RoadNode(GeoPoint point) {
-            this.point = point;
-        }
-    }
-
-    private static class RoadEdge {
-        RoadNode to;
-        double weight;
-        PolylineResult road;
-
-        RoadEdge(RoadNode to, double weight, PolylineResult road) {
-            this.to = to;
-            this.weight = weight;
-            this.road = road;
-        }
-    }
-
-    private static class PathNode {
-        RoadNode node;
-        PathNode parent;
-        double gScore;
-        double fScore;
-
-        PathNode(RoadNode node, PathNode parent, double gScore, double fScore) {
-            this.node = node;
-            this.parent = parent;
-            this.gScore = gScore;
-            this.fScore = fScore;
-        }
-    }
-
     public static class RouteMetrics {
         public double totalDistanceKm;
         public double gravelDistanceKm;
@@ -0,0 +1,150 @@
+package be.kuleuven.gt.grvlfinder;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over a fixed set of points (graph nodes), for nearest-point and within-radius queries
+ * that only look at the few cells around the query instead of every point.
+ * Cells are grouped in flat arrays sorted by cell key; distances use an equirectangular approximation,
+ * which is exact to well below a metre at snapping distances.
+ */
+final class SpatialGridIndex {
+    private static final double METERS_PER_DEGREE = 111_320.0;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double cellMeters;
+    private final double cellLat;      // cell size in degrees
+    private final double cellLon;
+    private final double lonScale;     // metres per degree of longitude / metres per degree of latitude
+
+    private final long[] cellKeys;     // distinct occupied cells, ascending
+    private final int[] cellStart;     // points of cellKeys[i] are points[cellStart[i] .. cellStart[i + 1])
+    private final int[] points;
+
+    /**
+     * @param cellMeters roughly the usual query radius; smaller cells mean fewer candidates per cell
+     *                   but more cells per query
+     */
+    SpatialGridIndex(double[] latitudes, double[] longitudes, int count, double cellMeters) {
+        this.latitudes = Arrays.copyOf(latitudes, count);
+        this.longitudes = Arrays.copyOf(longitudes, count);
+        this.cellMeters = cellMeters;
+
+        double latSum = 0;
+        for (int i = 0; i < count; i++) latSum += latitudes[i];
+        double referenceLat = count > 0 ? latSum / count : 0;
+        this.lonScale = Math.max(0.01, Math.cos(Math.toRadians(referenceLat)));
+        this.cellLat = cellMeters / METERS_PER_DEGREE;
+        this.cellLon = cellLat / lonScale;
+
+        // Distinct occupied cells in ascending order, then a counting sort of the points into them
+        long[] keyed = new long[count];
+        for (int i = 0; i < count; i++) {
+            keyed[i] = cellKey(row(latitudes[i]), column(longitudes[i]));
+        }
+        long[] sorted = Arrays.copyOf(keyed, count);
+        Arrays.sort(sorted);
+        int cells = 0;
+        for (int i = 0; i < count; i++) {
+            if (cells == 0 || sorted[cells - 1] != sorted[i]) sorted[cells++] = sorted[i];
+        }
+        cellKeys = Arrays.copyOf(sorted, cells);
+
+        int[] cellOf = new int[count];
+        cellStart = new int[cells + 1];
+        for (int i = 0; i < count; i++) {
+            cellOf[i] = Arrays.binarySearch(cellKeys, keyed[i]);
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) cellStart[c + 1] += cellStart[c];
+
+        points = new int[count];
+        int[] next = Arrays.copyOf(cellStart, cells);
+        for (int i = 0; i < count; i++) {
+            points[next[cellOf[i]]++] = i;
+        }
+    }
+
+    int size() {
+        return latitudes.length;
+    }
+
+    /**
+     * Nearest point within maxMeters, or -1
+     */
+    int nearest(double lat, double lon, double maxMeters) {
+        int centerRow = row(lat);
+        int centerColumn = column(lon);
+        int maxRing = (int) Math.ceil(maxMeters / cellMeters) + 1;
+
+        int best = -1;
+        double bestDistance = maxMeters;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Every point in this ring or beyond is at least (ring - 1) cells away
+            if ((ring - 1) * cellMeters > bestDistance) break;
+
+            for (int r = centerRow - ring; r <= centerRow + ring; r++) {
+                boolean edgeRow = r == centerRow - ring || r == centerRow + ring;
+                int step = edgeRow ? 1 : 2 * ring; // Inner rows: only the two edge columns
+                for (int c = centerColumn - ring; c <= centerColumn + ring; c += Math.max(1, step)) {
+                    int cell = Arrays.binarySearch(cellKeys, cellKey(r, c));
+                    if (cell < 0) continue;
+                    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                        int id = points[i];
+                        double distance = distanceMeters(lat, lon, id);
+                        if (distance <= bestDistance) {
+                            bestDistance = distance;
+                            best = id;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * All points within radiusMeters, in no particular order
+     */
+    int[] within(double lat, double lon, double radiusMeters) {
+        int rows = (int) Math.ceil(radiusMeters / cellMeters);
+        int centerRow = row(lat);
+        int centerColumn = column(lon);
+
+        int[] found = new int[16];
+        int n = 0;
+        for (int r = centerRow - rows; r <= centerRow + rows; r++) {
+            for (int c = centerColumn - rows; c <= centerColumn + rows; c++) {
+                int cell = Arrays.binarySearch(cellKeys, cellKey(r, c));
+                if (cell < 0) continue;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int id = points[i];
+                    if (distanceMeters(lat, lon, id) <= radiusMeters) {
+                        if (n == found.length) found = Arrays.copyOf(found, n * 2);
+                        found[n++] = id;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    double distanceMeters(double lat, double lon, int id) {
+        double dy = (latitudes[id] - lat) * METERS_PER_DEGREE;
+        double dx = (longitudes[id] - lon) * METERS_PER_DEGREE * lonScale;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private int row(double lat) {
+        return (int) Math.floor(lat / cellLat);
+    }
+
+    private int column(double lon) {
+        return (int) Math.floor(lon / cellLon);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+}
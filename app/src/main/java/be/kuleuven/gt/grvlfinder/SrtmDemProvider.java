@@ -0,0 +1,175 @@
+package be.kuleuven.gt.grvlfinder;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.osmdroid.util.GeoPoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Offline elevation from standard SRTM .hgt tiles (1 x 1 degree, SRTM1 3601 or SRTM3 1201 samples
+ * per side, big endian 16 bit metres, rows from north to south) placed in the app's "dem" directory.
+ * Tiles are memory mapped on first use and elevations are bilinearly interpolated, so sampling a
+ * whole viewport takes milliseconds and needs no network.
+ */
+public class SrtmDemProvider implements ElevationProvider {
+    private static final String TAG = "SrtmDemProvider";
+    private static final String DIR_NAME = "dem";
+    private static final short VOID = -32768; // SRTM no-data marker
+
+    private static SrtmDemProvider instance;
+
+    private final File directory;
+    private final Map<Integer, Tile> tiles = new HashMap<>(); // null value: no tile file for that degree
+
+    private static class Tile {
+        final MappedByteBuffer data;
+        final int samples; // per side
+
+        Tile(MappedByteBuffer data, int samples) {
+            this.data = data;
+            this.samples = samples;
+        }
+
+        /**
+         * Height at a grid position, NaN for voids. Absolute reads, so safe to share between threads.
+         */
+        double height(int row, int column) {
+            short h = data.getShort((row * samples + column) * 2);
+            return h == VOID ? Double.NaN : h;
+        }
+    }
+
+    private SrtmDemProvider(File directory) {
+        this.directory = directory;
+    }
+
+    public static synchronized void init(Context context) {
+        if (instance == null) {
+            File base = context.getApplicationContext().getExternalFilesDir(null);
+            if (base == null) base = context.getApplicationContext().getFilesDir();
+            instance = new SrtmDemProvider(new File(base, DIR_NAME));
+        }
+    }
+
+    /**
+     * Returns the shared provider, or null when init() has not been called
+     */
+    public static synchronized SrtmDemProvider getInstance() {
+        return instance;
+    }
+
+    /**
+     * Whether any .hgt tile is installed at all
+     */
+    public boolean hasTiles() {
+        String[] names = directory.list();
+        if (names == null) return false;
+        for (String name : names) {
+            if (name.toLowerCase(Locale.US).endsWith(".hgt")) return true;
+        }
+        return false;
+    }
+
+    public boolean covers(double lat, double lon) {
+        return tileFor(lat, lon) != null;
+    }
+
+    /**
+     * Bilinearly interpolated elevation in metres, NaN when no tile covers the point
+     * or all surrounding samples are voids
+     */
+    public double getElevation(double lat, double lon) {
+        Tile tile = tileFor(lat, lon);
+        if (tile == null) return Double.NaN;
+
+        int last = tile.samples - 1;
+        double y = (Math.floor(lat) + 1 - lat) * last; // rows run from the northern edge
+        double x = (lon - Math.floor(lon)) * last;
+
+        int row = Math.min((int) y, last - 1);
+        int column = Math.min((int) x, last - 1);
+        double fy = y - row;
+        double fx = x - column;
+
+        double h00 = tile.height(row, column);
+        double h01 = tile.height(row, column + 1);
+        double h10 = tile.height(row + 1, column);
+        double h11 = tile.height(row + 1, column + 1);
+
+        double w00 = (1 - fx) * (1 - fy), w01 = fx * (1 - fy), w10 = (1 - fx) * fy, w11 = fx * fy;
+
+        // Renormalise over the valid corners so a single void does not drop the whole cell
+        double sum = 0, weight = 0;
+        if (!Double.isNaN(h00)) { sum += h00 * w00; weight += w00; }
+        if (!Double.isNaN(h01)) { sum += h01 * w01; weight += w01; }
+        if (!Double.isNaN(h10)) { sum += h10 * w10; weight += w10; }
+        if (!Double.isNaN(h11)) { sum += h11 * w11; weight += w11; }
+        return weight > 0 ? sum / weight : Double.NaN;
+    }
+
+    @Override
+    public String getName() {
+        return "local-dem";
+    }
+
+    @Override
+    public double[] fetchElevations(List<GeoPoint> points) {
+        double[] elevations = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            elevations[i] = getElevation(points.get(i).getLatitude(), points.get(i).getLongitude());
+        }
+        return elevations;
+    }
+
+    private Tile tileFor(double lat, double lon) {
+        int latDeg = (int) Math.floor(lat);
+        int lonDeg = (int) Math.floor(lon);
+        int key = (latDeg + 90) * 360 + (lonDeg + 180);
+
+        synchronized (tiles) {
+            if (tiles.containsKey(key)) return tiles.get(key);
+            Tile tile = openTile(latDeg, lonDeg);
+            tiles.put(key, tile);
+            return tile;
+        }
+    }
+
+    private Tile openTile(int latDeg, int lonDeg) {
+        String name = String.format(Locale.US, "%s%02d%s%03d.hgt",
+                latDeg >= 0 ? "N" : "S", Math.abs(latDeg),
+                lonDeg >= 0 ? "E" : "W", Math.abs(lonDeg));
+        File file = new File(directory, name);
+        if (!file.exists()) return null;
+
+        // The mapping stays valid after the channel is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            int samples = (int) Math.round(Math.sqrt(size / 2.0));
+            if ((long) samples * samples * 2 != size || samples < 2) {
+                Log.w(TAG, "Ignoring " + name + ": unexpected size " + size);
+                return null;
+            }
+
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            data.order(ByteOrder.BIG_ENDIAN);
+            Log.d(TAG, "Mapped " + name + " (" + samples + "x" + samples + ")");
+            return new Tile(data, samples);
+
+        } catch (IOException e) {
+            Log.w(TAG, "Could not map " + name + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
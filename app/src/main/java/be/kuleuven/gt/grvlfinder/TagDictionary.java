@@ -0,0 +1,141 @@
+package be.kuleuven.gt.grvlfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide dictionary for OSM tags.
+ * Only the keys scoring reads (plus highway) are interned: their keys and values become small ints,
+ * and every distinct combination of them becomes one shared immutable TagSet with its own id. These
+ * have small vocabularies, so a region has only a few hundred combinations and tens of thousands of
+ * roads share a handful of instances. Free-form tags such as name, ref or operator would make almost
+ * every way unique and would stay in the dictionary for good, so they are kept per road in RoadTags.
+ */
+public final class TagDictionary {
+    private static final Set<String> SHARED_KEYS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "highway", "surface", "smoothness", "tracktype", "bicycle", "width", "incline")));
+
+    private static final ConcurrentHashMap<String, Integer> stringIds = new ConcurrentHashMap<>();
+    private static volatile String[] strings = new String[256];
+    private static int stringCount = 0;
+
+    private static final ConcurrentHashMap<Combination, TagSet> tagSets = new ConcurrentHashMap<>();
+    private static int nextTagSetId = 0;
+
+    private TagDictionary() {}
+
+    /**
+     * Id for the string, adding it to the dictionary if needed
+     */
+    public static int idOf(String s) {
+        Integer id = stringIds.get(s);
+        if (id != null) return id;
+
+        synchronized (TagDictionary.class) {
+            id = stringIds.get(s);
+            if (id != null) return id;
+
+            if (stringCount == strings.length) {
+                strings = Arrays.copyOf(strings, stringCount * 2);
+            }
+            strings[stringCount] = s;
+            id = stringCount++;
+            stringIds.put(s, id);
+            return id;
+        }
+    }
+
+    /**
+     * Id for the string, or -1 when it has never been interned (so no tag set can contain it)
+     */
+    public static int lookup(String s) {
+        Integer id = stringIds.get(s);
+        return id != null ? id : -1;
+    }
+
+    public static String stringOf(int id) {
+        return strings[id];
+    }
+
+    /**
+     * Map with the same entries as the given one: the shared TagSet of its shared keys, wrapped in
+     * RoadTags together with the remaining tags when there are any
+     */
+    public static Map<String, String> intern(Map<String, String> tags) {
+        if (tags instanceof TagSet || tags instanceof RoadTags) return tags;
+
+        int n = 0;
+        long[] pairs = new long[tags.size()];
+        List<String> others = null;
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (tag.getKey() == null || tag.getValue() == null) continue;
+            if (SHARED_KEYS.contains(tag.getKey())) {
+                pairs[n++] = ((long) idOf(tag.getKey()) << 32) | idOf(tag.getValue());
+            } else {
+                if (others == null) others = new ArrayList<>();
+                others.add(tag.getKey());
+                others.add(tag.getValue());
+            }
+        }
+        TagSet shared = internShared(Arrays.copyOf(pairs, n));
+        return others == null ? shared : new RoadTags(shared, others.toArray(new String[0]));
+    }
+
+    static boolean isShared(String key) {
+        return SHARED_KEYS.contains(key);
+    }
+
+    private static TagSet internShared(long[] pairs) {
+        int n = pairs.length;
+        Arrays.sort(pairs); // sorted by key id, so equal combinations have equal arrays
+
+        Combination combination = new Combination(pairs);
+        TagSet existing = tagSets.get(combination);
+        if (existing != null) return existing;
+
+        synchronized (TagDictionary.class) {
+            existing = tagSets.get(combination);
+            if (existing != null) return existing;
+
+            int[] keyIds = new int[n];
+            int[] valueIds = new int[n];
+            for (int i = 0; i < n; i++) {
+                keyIds[i] = (int) (pairs[i] >>> 32);
+                valueIds[i] = (int) pairs[i];
+            }
+            TagSet tagSet = new TagSet(nextTagSetId++, keyIds, valueIds);
+            tagSets.put(combination, tagSet);
+            return tagSet;
+        }
+    }
+
+    public static int tagSetCount() {
+        return tagSets.size();
+    }
+
+    private static final class Combination {
+        final long[] pairs;
+        final int hash;
+
+        Combination(long[] pairs) {
+            this.pairs = pairs;
+            this.hash = Arrays.hashCode(pairs);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Combination && Arrays.equals(pairs, ((Combination) o).pairs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package be.kuleuven.gt.grvlfinder;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable, interned set of the OSM tags scoring reads. Obtain instances through TagDictionary.intern;
+ * two roads with the same such tags share one TagSet, so getId() can key per-combination caches.
+ */
+public final class TagSet extends AbstractMap<String, String> {
+    private final int id;
+    private final int[] keyIds;   // sorted
+    private final int[] valueIds;
+    // Score components per length unit (-1, 0, 1), filled on first use
+    private final ScoreComponents[] components = new ScoreComponents[3];
+
+    TagSet(int id, int[] keyIds, int[] valueIds) {
+        this.id = id;
+        this.keyIds = keyIds;
+        this.valueIds = valueIds;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    ScoreComponents components(int lengthUnit) {
+        ScoreComponents c = components[lengthUnit + 1];
+        if (c == null) {
+            // Immutable and deterministic, so a racing thread at worst computes it twice
+            c = ScoreComponents.compute(this, lengthUnit);
+            components[lengthUnit + 1] = c;
+        }
+        return c;
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(key);
+        return index >= 0 ? TagDictionary.stringOf(valueIds[index]) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return keyIds.length;
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String)) return -1;
+        int keyId = TagDictionary.lookup((String) key);
+        if (keyId < 0) return -1;
+
+        for (int i = 0; i < keyIds.length; i++) {
+            if (keyIds[i] == keyId) return i;
+            if (keyIds[i] > keyId) break;
+        }
+        return -1;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < keyIds.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (next >= keyIds.length) throw new NoSuchElementException();
+                        int i = next++;
+                        return new SimpleImmutableEntry<>(TagDictionary.stringOf(keyIds[i]),
+                                TagDictionary.stringOf(valueIds[i]));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keyIds.length;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof TagSet) return ((TagSet) o).id == id;
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+}
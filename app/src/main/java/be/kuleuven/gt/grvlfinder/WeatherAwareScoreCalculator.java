@@ -1,7 +1,6 @@
 package be.kuleuven.gt.grvlfinder;
 
 import android.util.Log;
-import org.osmdroid.util.GeoPoint;
 import java.util.List;
 import java.util.Map;
 
@@ -11,8 +10,8 @@ import java.util.Map;
  */
 public class WeatherAwareScoreCalculator extends ScoreCalculator {
     private static final String TAG = "WeatherAwareScoreCalc";
-    private WeatherService.WeatherCondition currentWeatherCondition;
-    private boolean weatherDataEnabled = true;
+    private volatile WeatherService.WeatherCondition currentWeatherCondition;
+    private volatile boolean weatherDataEnabled = true;
 
     public WeatherAwareScoreCalculator(Map<String, Integer> weights) {
         super(weights);
@@ -45,81 +44,125 @@ public class WeatherAwareScoreCalculator extends ScoreCalculator {
     }
 
     /**
-     * Calculate score with weather adjustments
+     * Snapshot that also freezes the weather condition, so a batch is scored with one consistent state.
+     * With a weather grid each road gets the rain interpolated at its own position.
      */
     @Override
-    public int calculateScore(Map<String, String> tags, List<GeoPoint> points) {
-        // Get base score from parent class
-        int baseScore = super.calculateScore(tags, points);
-
-        // Apply weather penalty if enabled and data available
-        if (weatherDataEnabled && currentWeatherCondition != null && currentWeatherCondition.isMuddy) {
-            String surface = tags.get("surface");
-            int weatherPenalty = WeatherService.calculateWeatherScorePenalty(
-                    currentWeatherCondition, surface);
-
-            if (weatherPenalty < 0) {
-                Log.d(TAG, String.format("Weather penalty for %s: %d (rainy days: %d)",
-                        surface, weatherPenalty, currentWeatherCondition.rainyDaysCount));
-            }
+    protected Snapshot createSnapshot(ScoringProfile profile) {
+        return new WeatherSnapshot(profile, effectiveCondition());
+    }
 
-            return Math.max(0, baseScore + weatherPenalty);
-        }
+    @Override
+    protected boolean isCurrent(Snapshot snapshot) {
+        return snapshot instanceof WeatherSnapshot
+                && ((WeatherSnapshot) snapshot).condition == effectiveCondition();
+    }
 
-        return baseScore;
+    private WeatherService.WeatherCondition effectiveCondition() {
+        return weatherDataEnabled ? currentWeatherCondition : null;
     }
 
     /**
-     * Calculate score with slope and weather adjustments
+     * Rainy days at the centre of the road's bounds, or at the condition's location without a road or grid;
+     * NaN without a condition. The penalty and the warnings both use this value.
      */
-    @Override
-    public int calculateScoreWithSlope(Map<String, String> tags, List<GeoPoint> points,
-                                       double maxSlopePercent) {
-        // Get base score with slope from parent class
-        int baseScore = super.calculateScoreWithSlope(tags, points, maxSlopePercent);
-
-        // Apply weather penalty if enabled and data available
-        if (weatherDataEnabled && currentWeatherCondition != null && currentWeatherCondition.isMuddy) {
-            String surface = tags.get("surface");
-            int weatherPenalty = WeatherService.calculateWeatherScorePenalty(
-                    currentWeatherCondition, surface);
-
-            if (weatherPenalty < 0) {
-                Log.d(TAG, String.format("Weather penalty for %s with %.1f%% slope: %d",
-                        surface, maxSlopePercent, weatherPenalty));
-            }
+    private static double rainyDaysAt(WeatherService.WeatherCondition condition, PolylineResult road) {
+        if (condition == null) return Double.NaN;
+        WeatherService.WeatherGrid grid = condition.grid;
+        if (road != null && grid != null) {
+            RoadGeometry geometry = road.getGeometry();
+            double rainyDays = grid.rainyDaysAt(
+                    (geometry.getMinLatitude() + geometry.getMaxLatitude()) / 2,
+                    (geometry.getMinLongitude() + geometry.getMaxLongitude()) / 2);
+            if (!Double.isNaN(rainyDays)) return rainyDays;
+        }
+        return condition.rainyDaysCount;
+    }
 
-            return Math.max(0, baseScore + weatherPenalty);
+    private static final class WeatherSnapshot extends Snapshot {
+        private final WeatherService.WeatherCondition condition; // null when there is no penalty
+
+        WeatherSnapshot(ScoringProfile profile, WeatherService.WeatherCondition condition) {
+            super(profile);
+            this.condition = condition;
+        }
+
+        /**
+         * Calculate score with weather adjustments
+         */
+        @Override
+        protected int score(Map<String, String> tags, ScoreComponents components) {
+            return applyWeatherPenalty(super.score(tags, components), tags, rainyDaysAt(condition, null));
         }
 
-        return baseScore;
+        /**
+         * Calculate score with slope and weather adjustments
+         */
+        @Override
+        protected int scoreWithSlope(Map<String, String> tags, ScoreComponents components,
+                                     double maxSlopePercent) {
+            return applyWeatherPenalty(super.scoreWithSlope(tags, components, maxSlopePercent), tags,
+                    rainyDaysAt(condition, null));
+        }
+
+        @Override
+        public int scoreFromTags(PolylineResult road) {
+            return applyWeatherPenalty(profile.score(road.getComponents()), road.getTags(),
+                    rainyDaysAt(condition, road));
+        }
+
+        @Override
+        public int scoreWithSlope(PolylineResult road, double maxSlopePercent) {
+            return applyWeatherPenalty(profile.scoreWithSlope(road.getComponents(), maxSlopePercent),
+                    road.getTags(), rainyDaysAt(condition, road));
+        }
+
+        private int applyWeatherPenalty(int baseScore, Map<String, String> tags, double rainyDays) {
+            int weatherPenalty = WeatherService.calculateWeatherScorePenalty(rainyDays, tags.get("surface"));
+            if (weatherPenalty == 0) return baseScore;
+            return Math.max(0, baseScore + weatherPenalty);
+        }
     }
 
     /**
-     * Get weather warning for a specific road
+     * Get weather warning for a specific road, shown exactly when the road gets a weather penalty
      */
-    public String getWeatherWarning(Map<String, String> tags) {
-        if (!weatherDataEnabled || currentWeatherCondition == null || !currentWeatherCondition.isMuddy) {
+    public String getWeatherWarning(PolylineResult road) {
+        double rainyDays = rainyDaysAt(effectiveCondition(), road);
+        String surface = road.getTags().get("surface");
+        if (WeatherService.calculateWeatherScorePenalty(rainyDays, surface) == 0) {
             return null;
         }
 
-        String surface = tags.get("surface");
-        if (surface == null) return null;
-
         surface = surface.toLowerCase();
 
         if (surface.contains("dirt") || surface.contains("ground") ||
                 surface.contains("earth") || surface.contains("unpaved")) {
-            return "⚠️ May be very muddy - " + currentWeatherCondition.rainyDaysCount +
-                    " rainy days recently";
+            return "⚠️ May be very muddy - " + Math.round(rainyDays) + " rainy days recently";
         }
 
-        if (surface.contains("gravel") || surface.contains("compacted")) {
-            return "⚠️ May be muddy - " + currentWeatherCondition.rainyDaysCount +
-                    " rainy days recently";
+        return "⚠️ May be muddy - " + Math.round(rainyDays) + " rainy days recently";
+    }
+
+    /**
+     * Warning for a set of roads, counting the roads that get a weather penalty; null when none does
+     */
+    public String getMudWarning(List<PolylineResult> roads) {
+        if (roads == null) return null;
+
+        int muddyRoads = 0;
+        double maxRainyDays = 0;
+        for (PolylineResult road : roads) {
+            double rainyDays = rainyDaysAt(effectiveCondition(), road);
+            if (WeatherService.calculateWeatherScorePenalty(rainyDays, road.getTags().get("surface")) != 0) {
+                muddyRoads++;
+                maxRainyDays = Math.max(maxRainyDays, rainyDays);
+            }
         }
+        if (muddyRoads == 0) return null;
 
-        return null;
+        return "⚠️ " + muddyRoads + (muddyRoads == 1 ? " unpaved road" : " unpaved roads")
+                + " may be muddy - up to " + Math.round(maxRainyDays) + " rainy days recently";
     }
 
     /**
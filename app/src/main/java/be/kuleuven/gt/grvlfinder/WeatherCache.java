@@ -0,0 +1,234 @@
+package be.kuleuven.gt.grvlfinder;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.osmdroid.util.GeoPoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Daily precipitation per 0.1 x 0.1 degree grid cell (about 10 km, finer than the weather models behind
+ * Open-Meteo), kept in memory and in one small file per cell in the app cache directory.
+ * A day that had already ended when it was fetched never changes again; the running day expires
+ * after TODAY_TTL_MS. Days older than the analysis window are dropped when a cell is written.
+ */
+public class WeatherCache {
+    private static final String TAG = "WeatherCache";
+
+    public static final int CELLS_PER_DEGREE = 10;
+    private static final String DIR_NAME = "weather";
+    private static final int FILE_VERSION = 1;
+    private static final long TODAY_TTL_MS = 60L * 60 * 1000; // Rain keeps falling today
+    private static final long MAX_FILE_AGE_MS = 14L * 24 * 60 * 60 * 1000; // All days outside the window by then
+
+    private static WeatherCache instance;
+
+    private final File directory;
+    private final Map<Long, TreeMap<String, Day>> memory = new HashMap<>();
+
+    private static class Day {
+        final double precipitationMm;
+        final boolean complete;  // The day had ended when this value was fetched
+        final long fetchedAt;
+
+        Day(double precipitationMm, boolean complete, long fetchedAt) {
+            this.precipitationMm = precipitationMm;
+            this.complete = complete;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    private WeatherCache(File directory) {
+        this.directory = directory;
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Could not create weather cache directory " + directory);
+        }
+        trimDisk();
+    }
+
+    public static synchronized void init(Context context) {
+        if (instance == null) {
+            instance = new WeatherCache(new File(context.getApplicationContext().getCacheDir(), DIR_NAME));
+        }
+    }
+
+    /**
+     * Returns the shared cache, or null when init() has not been called
+     */
+    public static synchronized WeatherCache getInstance() {
+        return instance;
+    }
+
+    // ---- Cell math ----
+
+    public static int latToRow(double lat) {
+        return (int) Math.floor((lat + 90.0) * CELLS_PER_DEGREE);
+    }
+
+    public static int lonToColumn(double lon) {
+        return (int) Math.floor((lon + 180.0) * CELLS_PER_DEGREE);
+    }
+
+    public static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+
+    public static long cellKey(double lat, double lon) {
+        return cellKey(latToRow(lat), lonToColumn(lon));
+    }
+
+    /**
+     * Centre of a cell; weather for the whole cell is fetched there so every point in it agrees
+     */
+    public static GeoPoint cellCenter(long cellKey) {
+        int row = (int) (cellKey >>> 32);
+        int column = (int) cellKey;
+        return new GeoPoint((row + 0.5) / CELLS_PER_DEGREE - 90.0, (column + 0.5) / CELLS_PER_DEGREE - 180.0);
+    }
+
+    // ---- Cache access ----
+
+    /**
+     * Precipitation for every date (yyyy-MM-dd, ascending) of the cell, or null when any of them is
+     * missing or the value for today has expired
+     */
+    public synchronized double[] get(long cellKey, List<String> dates, String today) {
+        TreeMap<String, Day> days = lookup(cellKey);
+        if (days == null) return null;
+
+        long now = System.currentTimeMillis();
+        double[] precipitation = new double[dates.size()];
+        for (int i = 0; i < dates.size(); i++) {
+            String date = dates.get(i);
+            Day day = days.get(date);
+            if (day == null) return null;
+            boolean stillRunning = date.compareTo(today) >= 0;
+            if (!day.complete && (!stillRunning || now - day.fetchedAt > TODAY_TTL_MS)) {
+                return null; // Fetched while the day was running: final total not known yet
+            }
+            precipitation[i] = day.precipitationMm;
+        }
+        return precipitation;
+    }
+
+    /**
+     * Store fetched days for a cell. Complete days already cached are kept as they are; days without
+     * a value (NaN) are left out, so the cell is fetched again.
+     *
+     * @param oldestKept days before this date (yyyy-MM-dd) are dropped from the cell
+     */
+    public synchronized void putAll(long cellKey, List<String> dates, double[] precipitation, String today,
+                                    String oldestKept) {
+        TreeMap<String, Day> days = lookup(cellKey);
+        if (days == null) days = new TreeMap<>();
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < dates.size(); i++) {
+            String date = dates.get(i);
+            Day cached = days.get(date);
+            if (cached != null && cached.complete) continue;
+            if (Double.isNaN(precipitation[i])) continue;
+            days.put(date, new Day(precipitation[i], date.compareTo(today) < 0, now));
+        }
+
+        Iterator<String> it = days.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().compareTo(oldestKept) < 0) it.remove();
+        }
+
+        memory.put(cellKey, days);
+        writeToDisk(cellKey, days);
+    }
+
+    public synchronized void clear() {
+        memory.clear();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!f.delete()) Log.w(TAG, "Could not delete " + f);
+            }
+        }
+    }
+
+    private TreeMap<String, Day> lookup(long cellKey) {
+        TreeMap<String, Day> days = memory.get(cellKey);
+        if (days != null) return days;
+
+        days = readFromDisk(cellKey);
+        if (days != null) memory.put(cellKey, days);
+        return days;
+    }
+
+    // ---- Disk store ----
+
+    private File fileFor(long cellKey) {
+        return new File(directory, (int) (cellKey >>> 32) + "_" + (int) cellKey + ".bin");
+    }
+
+    private void writeToDisk(long cellKey, TreeMap<String, Day> days) {
+        File file = fileFor(cellKey);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(days.size());
+            for (Map.Entry<String, Day> entry : days.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeDouble(entry.getValue().precipitationMm);
+                out.writeBoolean(entry.getValue().complete);
+                out.writeLong(entry.getValue().fetchedAt);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write weather cell " + file.getName() + ": " + e.getMessage());
+            if (!file.delete()) Log.w(TAG, "Could not remove partial cell " + file.getName());
+        }
+    }
+
+    private TreeMap<String, Day> readFromDisk(long cellKey) {
+        File file = fileFor(cellKey);
+        if (!file.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION) return null;
+
+            int size = in.readInt();
+            TreeMap<String, Day> days = new TreeMap<>();
+            for (int i = 0; i < size; i++) {
+                String date = in.readUTF();
+                days.put(date, new Day(in.readDouble(), in.readBoolean(), in.readLong()));
+            }
+            return days;
+
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable weather cell " + file.getName() + ": " + e.getMessage());
+            if (!file.delete()) Log.w(TAG, "Could not remove cell " + file.getName());
+            return null;
+        }
+    }
+
+    /**
+     * Delete cells not written for so long that none of their days is still used
+     */
+    private void trimDisk() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        long now = System.currentTimeMillis();
+        int deleted = 0;
+        for (File f : files) {
+            if (now - f.lastModified() > MAX_FILE_AGE_MS && f.delete()) deleted++;
+        }
+        if (deleted > 0) Log.d(TAG, "Removed " + deleted + " outdated weather cells");
+    }
+}
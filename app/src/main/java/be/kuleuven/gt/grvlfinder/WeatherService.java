@@ -13,9 +13,13 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -32,6 +36,9 @@ public class WeatherService {
     private static final int DAYS_TO_ANALYZE = 7;
     private static final int MIN_RAINY_DAYS = 2;
 
+    private static final int MAX_GRID_CELLS = 150;           // A 1 degree viewport is about 11 x 11 cells
+    private static final int MAX_LOCATIONS_PER_REQUEST = 50; // Keeps the URL well below server limits
+
     public interface WeatherCallback {
         void onWeatherDataReceived(WeatherCondition condition);
         void onError(String error);
@@ -44,6 +51,7 @@ public class WeatherService {
         public String warningMessage;
         public List<DailyWeather> dailyData;
         public GeoPoint location; // Track which location this is for
+        public WeatherGrid grid;  // Rain per cell around location, null when only location was fetched
 
         public WeatherCondition() {
             this.dailyData = new ArrayList<>();
@@ -91,7 +99,58 @@ public class WeatherService {
     }
 
     /**
-     * Fetch weather for the center of a bounding box (viewport)
+     * Rain per WeatherCache cell over a viewport. Roads are scored with the rainy days interpolated
+     * at their own position, so rain on one side of a large viewport no longer counts for the other.
+     */
+    public static class WeatherGrid {
+        private final int firstRow;
+        private final int firstColumn;
+        private final int rows;
+        private final int columns;
+        private final double[] rainyDays; // per cell, row major from south; NaN when unknown
+
+        WeatherGrid(int firstRow, int firstColumn, int rows, int columns, double[] rainyDays) {
+            this.firstRow = firstRow;
+            this.firstColumn = firstColumn;
+            this.rows = rows;
+            this.columns = columns;
+            this.rainyDays = rainyDays;
+        }
+
+        /**
+         * Rainy days bilinearly interpolated between cell centres (held constant beyond the outer
+         * centres), NaN when none of the surrounding cells is known
+         */
+        public double rainyDaysAt(double lat, double lon) {
+            double y = (lat + 90.0) * WeatherCache.CELLS_PER_DEGREE - 0.5 - firstRow;
+            double x = (lon + 180.0) * WeatherCache.CELLS_PER_DEGREE - 0.5 - firstColumn;
+            y = Math.max(0, Math.min(rows - 1, y));
+            x = Math.max(0, Math.min(columns - 1, x));
+
+            int row = Math.min((int) y, Math.max(0, rows - 2));
+            int column = Math.min((int) x, Math.max(0, columns - 2));
+            double fy = y - row;
+            double fx = x - column;
+
+            double sum = 0, weight = 0;
+            for (int dy = 0; dy <= 1; dy++) {
+                for (int dx = 0; dx <= 1; dx++) {
+                    int r = row + dy, c = column + dx;
+                    if (r >= rows || c >= columns) continue;
+                    double value = rainyDays[r * columns + c];
+                    double w = (dy == 0 ? 1 - fy : fy) * (dx == 0 ? 1 - fx : fx);
+                    if (Double.isNaN(value) || w == 0) continue;
+                    sum += value * w;
+                    weight += w;
+                }
+            }
+            return weight > 0 ? sum / weight : Double.NaN;
+        }
+    }
+
+    /**
+     * Fetch weather for every WeatherCache cell of a bounding box (viewport) in one batched request.
+     * The condition reported is the one at the viewport center; its grid holds all cells.
      */
     public static void fetchWeatherForViewport(BoundingBox bbox, WeatherCallback callback) {
         if (bbox == null) {
@@ -107,72 +166,192 @@ public class WeatherService {
         double centerLon = (bbox.getLonEast() + bbox.getLonWest()) / 2.0;
         GeoPoint centerPoint = new GeoPoint(centerLat, centerLon);
 
-        Log.d(TAG, "Fetching weather for viewport center: " + centerLat + ", " + centerLon);
-        fetchWeatherForPoint(centerPoint, callback);
+        int firstRow = WeatherCache.latToRow(bbox.getLatSouth());
+        int firstColumn = WeatherCache.lonToColumn(bbox.getLonWest());
+        int rows = WeatherCache.latToRow(bbox.getLatNorth()) - firstRow + 1;
+        int columns = WeatherCache.lonToColumn(bbox.getLonEast()) - firstColumn + 1;
+        if ((long) rows * columns > MAX_GRID_CELLS) {
+            Log.d(TAG, "Viewport spans " + rows + "x" + columns + " weather cells, using the center only");
+            fetchWeatherForPoint(centerPoint, callback);
+            return;
+        }
+
+        Log.d(TAG, "Fetching weather for " + rows + "x" + columns + " cells around " + centerLat + ", " + centerLon);
+
+        executor.execute(() -> {
+            try {
+                List<String> dates = analysisDates();
+                List<Long> cells = new ArrayList<>(rows * columns);
+                for (int r = 0; r < rows; r++) {
+                    for (int c = 0; c < columns; c++) {
+                        cells.add(WeatherCache.cellKey(firstRow + r, firstColumn + c));
+                    }
+                }
+                Map<Long, double[]> precipitation = precipitationForCells(cells, dates);
+
+                double[] rainyDays = new double[cells.size()];
+                for (int i = 0; i < cells.size(); i++) {
+                    double[] days = precipitation.get(cells.get(i));
+                    rainyDays[i] = days != null ? buildCondition(dates, days).rainyDaysCount : Double.NaN;
+                }
+
+                long centerCell = WeatherCache.cellKey(centerLat, centerLon);
+                WeatherCondition condition = conditionFor(centerPoint, dates, precipitation.get(centerCell));
+                condition.grid = new WeatherGrid(firstRow, firstColumn, rows, columns, rainyDays);
+
+                deliver(callback, condition);
+            } catch (Exception e) {
+                fail(callback, e);
+            }
+        });
     }
 
     /**
-     * Core weather fetching logic
+     * Core weather fetching logic for a single point
      */
     private static void fetchWeatherForPoint(GeoPoint location, WeatherCallback callback) {
         Log.d(TAG, "Fetching weather data for: " + location.getLatitude() + ", " + location.getLongitude());
 
         executor.execute(() -> {
             try {
-                // Calculate date range
-                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
-                Calendar cal = Calendar.getInstance();
-                String endDate = dateFormat.format(cal.getTime());
-
-                cal.add(Calendar.DAY_OF_YEAR, -DAYS_TO_ANALYZE);
-                String startDate = dateFormat.format(cal.getTime());
-
-                // Build API URL
-                String urlStr = String.format(Locale.US,
-                        "%s?latitude=%.6f&longitude=%.6f&start_date=%s&end_date=%s&daily=precipitation_sum&timezone=auto",
-                        OPEN_METEO_URL,
-                        location.getLatitude(),
-                        location.getLongitude(),
-                        startDate,
-                        endDate);
-
-                Log.d(TAG, "Weather API URL: " + urlStr);
-
-                // Fetch data
-                String response = fetchUrl(urlStr);
-
-                // Parse response
-                WeatherCondition condition = parseWeatherResponse(response);
-                condition.location = location;
-
-                // Determine if conditions are muddy
-                condition.isMuddy = condition.rainyDaysCount >= MIN_RAINY_DAYS;
-
-                if (condition.isMuddy) {
-                    condition.warningMessage = String.format(
-                            "⚠️ Recent rain (%d days): Unpaved roads may be muddy",
-                            condition.rainyDaysCount);
-                } else {
-                    condition.warningMessage = "✓ Good conditions: Limited recent rain";
-                }
+                List<String> dates = analysisDates();
+                long cell = WeatherCache.cellKey(location.getLatitude(), location.getLongitude());
+                Map<Long, double[]> precipitation = precipitationForCells(Collections.singletonList(cell), dates);
 
-                Log.d(TAG, String.format("Weather analysis: %d rainy days, %.1f mm total, muddy=%b",
-                        condition.rainyDaysCount, condition.totalPrecipitationMm, condition.isMuddy));
+                deliver(callback, conditionFor(location, dates, precipitation.get(cell)));
+            } catch (Exception e) {
+                fail(callback, e);
+            }
+        });
+    }
 
-                // Return on main thread
-                if (callback != null) {
-                    new Handler(Looper.getMainLooper()).post(() ->
-                            callback.onWeatherDataReceived(condition));
+    /**
+     * Daily precipitation per cell. Cells are served from WeatherCache where possible; the rest is fetched
+     * at the cell centres with one request per MAX_LOCATIONS_PER_REQUEST cells and cached.
+     */
+    private static Map<Long, double[]> precipitationForCells(List<Long> cells, List<String> dates) throws Exception {
+        String startDate = dates.get(0);
+        String endDate = dates.get(dates.size() - 1);
+        WeatherCache cache = WeatherCache.getInstance();
+
+        Map<Long, double[]> result = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (long cell : cells) {
+            double[] cached = cache != null ? cache.get(cell, dates, endDate) : null;
+            if (cached != null) {
+                result.put(cell, cached);
+            } else {
+                missing.add(cell);
+            }
+        }
+        Log.d(TAG, "Weather for " + cells.size() + " cells, " + missing.size() + " to fetch");
+
+        for (int start = 0; start < missing.size(); start += MAX_LOCATIONS_PER_REQUEST) {
+            List<Long> batch = missing.subList(start, Math.min(start + MAX_LOCATIONS_PER_REQUEST, missing.size()));
+
+            StringBuilder latitudes = new StringBuilder();
+            StringBuilder longitudes = new StringBuilder();
+            for (int i = 0; i < batch.size(); i++) {
+                GeoPoint center = WeatherCache.cellCenter(batch.get(i));
+                if (i > 0) {
+                    latitudes.append(",");
+                    longitudes.append(",");
                 }
+                latitudes.append(String.format(Locale.US, "%.4f", center.getLatitude()));
+                longitudes.append(String.format(Locale.US, "%.4f", center.getLongitude()));
+            }
 
-            } catch (Exception e) {
-                Log.e(TAG, "Error fetching weather data", e);
-                if (callback != null) {
-                    new Handler(Looper.getMainLooper()).post(() ->
-                            callback.onError("Weather fetch failed: " + e.getMessage()));
+            // Build API URL
+            String urlStr = String.format(Locale.US,
+                    "%s?latitude=%s&longitude=%s&start_date=%s&end_date=%s&daily=precipitation_sum&timezone=auto",
+                    OPEN_METEO_URL, latitudes, longitudes, startDate, endDate);
+
+            Log.d(TAG, "Weather API URL: " + urlStr);
+
+            // Fetch data
+            String response = fetchUrl(urlStr);
+
+            // Several locations come back as an array, one location as a single object
+            JSONArray locations = response.trim().startsWith("[")
+                    ? new JSONArray(response) : new JSONArray().put(new JSONObject(response));
+            for (int i = 0; i < batch.size() && i < locations.length(); i++) {
+                double[] precipitation = parsePrecipitation(locations.getJSONObject(i), dates);
+                result.put(batch.get(i), precipitation);
+                if (cache != null) {
+                    cache.putAll(batch.get(i), dates, precipitation, endDate, startDate);
                 }
             }
-        });
+        }
+        return result;
+    }
+
+    private static WeatherCondition conditionFor(GeoPoint location, List<String> dates, double[] precipitation)
+            throws Exception {
+        if (precipitation == null) {
+            throw new Exception("No weather data for " + location.getLatitude() + ", " + location.getLongitude());
+        }
+
+        WeatherCondition condition = buildCondition(dates, precipitation);
+        condition.location = location;
+
+        // Determine if conditions are muddy
+        condition.isMuddy = condition.rainyDaysCount >= MIN_RAINY_DAYS;
+
+        if (condition.isMuddy) {
+            condition.warningMessage = String.format(
+                    "⚠️ Recent rain (%d days): Unpaved roads may be muddy",
+                    condition.rainyDaysCount);
+        } else {
+            condition.warningMessage = "✓ Good conditions: Limited recent rain";
+        }
+
+        Log.d(TAG, String.format("Weather analysis: %d rainy days, %.1f mm total, muddy=%b",
+                condition.rainyDaysCount, condition.totalPrecipitationMm, condition.isMuddy));
+        return condition;
+    }
+
+    private static void deliver(WeatherCallback callback, WeatherCondition condition) {
+        // Return on main thread
+        if (callback != null) {
+            new Handler(Looper.getMainLooper()).post(() ->
+                    callback.onWeatherDataReceived(condition));
+        }
+    }
+
+    private static void fail(WeatherCallback callback, Exception e) {
+        Log.e(TAG, "Error fetching weather data", e);
+        if (callback != null) {
+            new Handler(Looper.getMainLooper()).post(() ->
+                    callback.onError("Weather fetch failed: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Whether weather for the cell of this location can be served without a request
+     */
+    public static boolean hasCachedWeather(GeoPoint location) {
+        WeatherCache cache = WeatherCache.getInstance();
+        if (cache == null) return false;
+
+        List<String> dates = analysisDates();
+        long cell = WeatherCache.cellKey(location.getLatitude(), location.getLongitude());
+        return cache.get(cell, dates, dates.get(dates.size() - 1)) != null;
+    }
+
+    /**
+     * The analysed days (yyyy-MM-dd), oldest first and ending today
+     */
+    private static List<String> analysisDates() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.DAY_OF_YEAR, -DAYS_TO_ANALYZE);
+
+        List<String> dates = new ArrayList<>(DAYS_TO_ANALYZE + 1);
+        for (int i = 0; i <= DAYS_TO_ANALYZE; i++) {
+            dates.add(dateFormat.format(cal.getTime()));
+            cal.add(Calendar.DAY_OF_YEAR, 1);
+        }
+        return dates;
     }
 
     /**
@@ -210,25 +389,36 @@ public class WeatherService {
     }
 
     /**
-     * Parse Open-Meteo JSON response
+     * Daily precipitation from an Open-Meteo response, in the order of dates; NaN for days the
+     * response does not have, so they are not cached and get fetched again
      */
-    private static WeatherCondition parseWeatherResponse(String jsonStr) throws Exception {
-        WeatherCondition condition = new WeatherCondition();
-
-        JSONObject root = new JSONObject(jsonStr);
+    private static double[] parsePrecipitation(JSONObject root, List<String> dates) throws Exception {
         JSONObject daily = root.getJSONObject("daily");
 
-        JSONArray dates = daily.getJSONArray("time");
+        JSONArray times = daily.getJSONArray("time");
         JSONArray precipitation = daily.getJSONArray("precipitation_sum");
 
-        for (int i = 0; i < dates.length(); i++) {
-            String date = dates.getString(i);
-            double precip = precipitation.isNull(i) ? 0.0 : precipitation.getDouble(i);
+        double[] values = new double[dates.size()];
+        Arrays.fill(values, Double.NaN);
+        for (int i = 0; i < times.length(); i++) {
+            int index = dates.indexOf(times.getString(i));
+            if (index >= 0 && !precipitation.isNull(i)) {
+                values[index] = precipitation.getDouble(i);
+            }
+        }
+        return values;
+    }
+
+    private static WeatherCondition buildCondition(List<String> dates, double[] precipitation) {
+        WeatherCondition condition = new WeatherCondition();
 
-            DailyWeather day = new DailyWeather(date, precip);
+        for (int i = 0; i < dates.size(); i++) {
+            // A day without data counts as dry here, but is not cached as such
+            double mm = Double.isNaN(precipitation[i]) ? 0.0 : precipitation[i];
+            DailyWeather day = new DailyWeather(dates.get(i), mm);
             condition.dailyData.add(day);
 
-            condition.totalPrecipitationMm += precip;
+            condition.totalPrecipitationMm += mm;
 
             if (day.isRainy) {
                 condition.rainyDaysCount++;
@@ -247,23 +437,32 @@ public class WeatherService {
         if (condition == null || !condition.isMuddy) {
             return 0; // No penalty
         }
+        return calculateWeatherScorePenalty(condition.rainyDaysCount, surfaceType);
+    }
+
+    /**
+     * Penalty for a number of rainy days that may be fractional (interpolated from a WeatherGrid)
+     */
+    public static int calculateWeatherScorePenalty(double rainyDays, String surfaceType) {
+        if (Double.isNaN(rainyDays) || rainyDays < MIN_RAINY_DAYS) {
+            return 0; // No penalty
+        }
 
         if (surfaceType == null) return 0;
 
         String surface = surfaceType.toLowerCase();
+        double excessDays = rainyDays - MIN_RAINY_DAYS;
 
         // Dirt/unpaved roads get heavy penalty when muddy
         if (surface.contains("dirt") || surface.contains("ground") ||
                 surface.contains("earth") || surface.contains("unpaved")) {
             // Scale penalty based on rainy days (3-7 days)
-            int excessDays = condition.rainyDaysCount - MIN_RAINY_DAYS;
-            return -15 - (excessDays * 5); // -15 to -35 penalty
+            return (int) Math.round(-15 - (excessDays * 5)); // -15 to -35 penalty
         }
 
         // Gravel roads get moderate penalty when muddy
         if (surface.contains("gravel") || surface.contains("compacted")) {
-            int excessDays = condition.rainyDaysCount - MIN_RAINY_DAYS;
-            return -8 - (excessDays * 2); // -8 to -16 penalty
+            return (int) Math.round(-8 - (excessDays * 2)); // -8 to -16 penalty
         }
 
         // Paved roads not affected
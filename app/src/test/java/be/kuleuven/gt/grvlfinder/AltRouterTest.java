@@ -0,0 +1,94 @@
+package be.kuleuven.gt.grvlfinder;
+
+import org.junit.Test;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.Random;
+
+import static be.kuleuven.gt.grvlfinder.RoutingGraphTest.SCORE_TIMES_LENGTH;
+import static be.kuleuven.gt.grvlfinder.RoutingGraphTest.pathWeight;
+import static be.kuleuven.gt.grvlfinder.RoutingGraphTest.randomRoads;
+import static org.junit.Assert.*;
+
+/**
+ * Landmark bidirectional search checked against Dijkstra
+ */
+public class AltRouterTest {
+    private static final double CELL_METERS = 100;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final long BUDGET_MS = 60_000;
+
+    private static void assertShortestPaths(RoutingGraph graph, AltRouter router, Random random, int queries) {
+        for (int q = 0; q < queries; q++) {
+            int source = random.nextInt(graph.nodeCount());
+            int target = random.nextInt(graph.nodeCount());
+            double expected = graph.distancesFrom(source)[target];
+
+            int[] edges = router.findPath(source, target, BUDGET_MS);
+            if (Double.isInfinite(expected)) {
+                assertNull(edges);
+            } else {
+                assertNotNull(edges);
+                assertEquals(expected, pathWeight(graph, source, target, edges), expected * 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void findPath_matchesDijkstraOnRandomGraph() {
+        Random random = new Random(23);
+        RoutingGraph graph = RoutingGraph.build(randomRoads(random, 1, 400, 2), SCORE_TIMES_LENGTH, CELL_METERS);
+        AltRouter router = new AltRouter(graph, 8, 0, NO_DEADLINE);
+
+        assertShortestPaths(graph, router, random, 100);
+    }
+
+    @Test
+    public void findPath_scoreWeightedDistance_matchesDijkstra() {
+        Random random = new Random(43);
+        RoutingGraph graph = RoutingGraph.build(RoutingGraphTest.randomScoredRoads(random, 300),
+                SmartRoutingService.SCORE_WEIGHTED_DISTANCE, CELL_METERS);
+
+        assertShortestPaths(graph, new AltRouter(graph, 8, 0, NO_DEADLINE), random, 50);
+        assertShortestPaths(graph, new AltRouter(graph, 8, 0, 0), random, 50);
+    }
+
+    @Test
+    public void findPath_withoutLandmarks_matchesDijkstra() {
+        Random random = new Random(29);
+        RoutingGraph graph = RoutingGraph.build(randomRoads(random, 1, 200, 2), SCORE_TIMES_LENGTH, CELL_METERS);
+        // A deadline already passed leaves only the straight-line bound
+        AltRouter router = new AltRouter(graph, 8, 0, 0);
+
+        assertShortestPaths(graph, router, random, 50);
+    }
+
+    @Test
+    public void findPath_disconnectedComponents_matchesDijkstra() {
+        Random random = new Random(31);
+        RoutingGraph graph = RoutingGraph.build(randomRoads(random, 3, 100, 2), SCORE_TIMES_LENGTH, CELL_METERS);
+        // Landmarks end up in the seed's component only; bounds into the others must not break the search
+        AltRouter router = new AltRouter(graph, 4, 0, NO_DEADLINE);
+
+        assertShortestPaths(graph, router, random, 100);
+    }
+
+    @Test
+    public void findPath_otherComponent_returnsNull() {
+        RoutingGraph graph = RoutingGraph.build(randomRoads(new Random(37), 2, 50, 2), SCORE_TIMES_LENGTH, CELL_METERS);
+        int source = graph.nearestNode(new GeoPoint(50.805, 4.7075), 2000);
+        int target = graph.nearestNode(new GeoPoint(50.905, 4.7075), 2000);
+        AltRouter router = new AltRouter(graph, 4, source, NO_DEADLINE);
+
+        assertNull(router.findPath(source, target, BUDGET_MS));
+        assertNull(router.findPath(target, source, BUDGET_MS));
+    }
+
+    @Test
+    public void findPath_sourceIsTarget_returnsEmptyPath() {
+        RoutingGraph graph = RoutingGraph.build(randomRoads(new Random(41), 1, 30, 2), SCORE_TIMES_LENGTH, CELL_METERS);
+        AltRouter router = new AltRouter(graph, 4, 0, NO_DEADLINE);
+
+        assertArrayEquals(new int[0], router.findPath(7, 7, BUDGET_MS));
+    }
+}
@@ -0,0 +1,118 @@
+package be.kuleuven.gt.grvlfinder;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ordering and key updates of the indexed heap used by the route searches
+ */
+public class NodeHeapTest {
+
+    @Test
+    public void pop_returnsNodesInKeyOrder() {
+        Random random = new Random(3);
+        int n = 1000;
+        double[] keys = new double[n];
+        NodeHeap heap = new NodeHeap(n);
+        for (int node = 0; node < n; node++) {
+            keys[node] = random.nextDouble() * 100;
+            heap.push(node, keys[node]);
+        }
+
+        double[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        for (double expected : sorted) {
+            assertFalse(heap.isEmpty());
+            assertEquals(expected, heap.peekKey(), 0);
+            int node = heap.pop();
+            assertEquals(expected, keys[node], 0);
+            assertFalse(heap.contains(node));
+        }
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void pushWithSmallerKey_movesNodeForward() {
+        NodeHeap heap = new NodeHeap(4);
+        heap.push(0, 10);
+        heap.push(1, 20);
+        heap.push(2, 30);
+        heap.push(3, 40);
+
+        heap.push(3, 5);
+        heap.push(2, 15);
+
+        assertEquals(5, heap.peekKey(), 0);
+        assertEquals(3, heap.pop());
+        assertEquals(0, heap.pop());
+        assertEquals(2, heap.pop());
+        assertEquals(1, heap.pop());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void pushWithLargerKey_isIgnored() {
+        NodeHeap heap = new NodeHeap(2);
+        heap.push(0, 10);
+        heap.push(1, 20);
+
+        heap.push(0, 30);
+
+        assertEquals(10, heap.peekKey(), 0);
+        assertEquals(0, heap.pop());
+        assertEquals(1, heap.pop());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void decreaseKey_keepsOrderUnderRandomUpdates() {
+        Random random = new Random(5);
+        int n = 500;
+        double[] keys = new double[n];
+        NodeHeap heap = new NodeHeap(n);
+        for (int node = 0; node < n; node++) {
+            keys[node] = 1000 + random.nextDouble() * 1000;
+            heap.push(node, keys[node]);
+        }
+        for (int i = 0; i < 2000; i++) {
+            int node = random.nextInt(n);
+            double key = random.nextDouble() * 2000;
+            heap.push(node, key);
+            keys[node] = Math.min(keys[node], key);
+        }
+
+        double previous = Double.NEGATIVE_INFINITY;
+        int popped = 0;
+        while (!heap.isEmpty()) {
+            double key = heap.peekKey();
+            int node = heap.pop();
+            assertEquals(keys[node], key, 0);
+            assertTrue(key >= previous);
+            previous = key;
+            popped++;
+        }
+        assertEquals(n, popped);
+    }
+
+    @Test
+    public void clear_emptiesHeapForReuse() {
+        NodeHeap heap = new NodeHeap(3);
+        heap.push(0, 1);
+        heap.push(1, 2);
+        heap.push(2, 3);
+        heap.pop();
+
+        heap.clear();
+
+        assertTrue(heap.isEmpty());
+        for (int node = 0; node < 3; node++) assertFalse(heap.contains(node));
+        heap.push(2, 7);
+        heap.push(1, 8);
+        assertEquals(2, heap.pop());
+        assertEquals(1, heap.pop());
+    }
+}
@@ -0,0 +1,142 @@
+package be.kuleuven.gt.grvlfinder;
+
+import org.junit.Test;
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips of the delta / zig-zag varint coordinate encoding
+ */
+public class RoadGeometryTest {
+
+    private static void assertDecodes(RoadGeometry geometry, int[] expectedLat, int[] expectedLon) {
+        assertEquals(expectedLat.length, geometry.size());
+        int[] lat = new int[geometry.size()];
+        int[] lon = new int[geometry.size()];
+        geometry.decode(lat, lon);
+        assertArrayEquals(expectedLat, lat);
+        assertArrayEquals(expectedLon, lon);
+    }
+
+    @Test
+    public void randomCoordinates_roundTrip() {
+        Random random = new Random(7);
+        int n = 500;
+        int[] lat = new int[n];
+        int[] lon = new int[n];
+        RoadGeometry.Builder builder = new RoadGeometry.Builder();
+        for (int i = 0; i < n; i++) {
+            // Whole range, so deltas jump by up to the full span in both directions
+            lat[i] = random.nextInt(180_000_001) - 90_000_000;
+            lon[i] = random.nextInt(360_000_001) - 180_000_000;
+            builder.add(lat[i] / 1e6, lon[i] / 1e6);
+        }
+
+        RoadGeometry geometry = builder.build();
+        assertDecodes(geometry, lat, lon);
+        assertDecodes(RoadGeometry.fromPacked(geometry.getPacked(), n), lat, lon);
+    }
+
+    @Test
+    public void negativeAndZeroDeltas_roundTrip() {
+        int[] lat = {50_000_000, 49_999_999, 49_999_999, -1, 0, 1, -90_000_000, 90_000_000};
+        int[] lon = {4_000_000, 4_000_000, 3_999_936, -180_000_000, 180_000_000, 0, -64, 63};
+        RoadGeometry.Builder builder = new RoadGeometry.Builder();
+        for (int i = 0; i < lat.length; i++) builder.add(lat[i] / 1e6, lon[i] / 1e6);
+
+        assertDecodes(builder.build(), lat, lon);
+    }
+
+    @Test
+    public void builder_roundsToMicroDegrees() {
+        RoadGeometry geometry = new RoadGeometry.Builder()
+                .add(50.0000004, 4.0000006)
+                .add(-50.0000006, -4.0000004)
+                .build();
+
+        assertDecodes(geometry, new int[]{50_000_000, -50_000_001}, new int[]{4_000_001, -4_000_000});
+    }
+
+    @Test
+    public void lonePoint() {
+        RoadGeometry geometry = new RoadGeometry.Builder().add(-33.856784, 151.215297).build();
+
+        assertDecodes(geometry, new int[]{-33_856_784}, new int[]{151_215_297});
+        assertEquals(-33.856784, geometry.getMinLatitude(), 1e-9);
+        assertEquals(-33.856784, geometry.getMaxLatitude(), 1e-9);
+        assertEquals(151.215297, geometry.getMinLongitude(), 1e-9);
+        assertEquals(151.215297, geometry.getMaxLongitude(), 1e-9);
+        assertEquals(-1, geometry.getLengthMeters(), 0);
+        assertEquals(1, geometry.toGeoPoints().size());
+    }
+
+    @Test
+    public void fromPoints_keepsCoordinatesAndBounds() {
+        List<GeoPoint> points = new ArrayList<>();
+        points.add(new GeoPoint(50.1, 4.3));
+        points.add(new GeoPoint(50.05, 4.35));
+        points.add(new GeoPoint(50.2, 4.25));
+
+        RoadGeometry geometry = RoadGeometry.fromPoints(points);
+
+        List<GeoPoint> decoded = geometry.toGeoPoints();
+        assertEquals(3, decoded.size());
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(points.get(i).getLatitude(), decoded.get(i).getLatitude(), 1e-9);
+            assertEquals(points.get(i).getLongitude(), decoded.get(i).getLongitude(), 1e-9);
+        }
+        assertEquals(50.05, geometry.getMinLatitude(), 1e-9);
+        assertEquals(50.2, geometry.getMaxLatitude(), 1e-9);
+        assertEquals(4.25, geometry.getMinLongitude(), 1e-9);
+        assertEquals(4.35, geometry.getMaxLongitude(), 1e-9);
+    }
+
+    @Test
+    public void intersects_segmentCrossingCornerWithoutVertexInside() {
+        BoundingBox box = new BoundingBox(51.0, 5.0, 50.0, 4.0);
+        // Straight track cutting the north-east corner, both ends far outside
+        RoadGeometry crossing = new RoadGeometry.Builder().add(50.8, 5.1).add(51.1, 4.8).build();
+        // Parallel to it but passing just outside the corner
+        RoadGeometry passing = new RoadGeometry.Builder().add(50.9, 5.3).add(51.3, 4.9).build();
+
+        assertTrue(crossing.intersects(box));
+        assertFalse(passing.intersects(box));
+    }
+
+    @Test
+    public void intersects_bendAroundBox_isOutside() {
+        BoundingBox box = new BoundingBox(51.0, 5.0, 50.0, 4.0);
+        // Bounds overlap the box, but every segment stays outside it
+        RoadGeometry bend = new RoadGeometry.Builder().add(49.5, 4.5).add(49.5, 5.5).add(50.5, 5.5).build();
+        RoadGeometry through = new RoadGeometry.Builder().add(49.5, 4.5).add(50.5, 5.5).build();
+
+        assertFalse(bend.intersects(box));
+        assertTrue(through.intersects(box));
+    }
+
+    @Test
+    public void intersects_randomSegments_matchSampling() {
+        Random random = new Random(11);
+        BoundingBox box = new BoundingBox(51.0, 5.0, 50.0, 4.0);
+        for (int i = 0; i < 2000; i++) {
+            double lat1 = 49 + 3 * random.nextDouble(), lon1 = 3 + 3 * random.nextDouble();
+            double lat2 = 49 + 3 * random.nextDouble(), lon2 = 3 + 3 * random.nextDouble();
+            RoadGeometry segment = new RoadGeometry.Builder().add(lat1, lon1).add(lat2, lon2).build();
+
+            boolean sampled = false;
+            for (int s = 0; s <= 10_000 && !sampled; s++) {
+                double t = s / 10_000.0;
+                double lat = lat1 + t * (lat2 - lat1), lon = lon1 + t * (lon2 - lon1);
+                sampled = lat >= 50.0 && lat <= 51.0 && lon >= 4.0 && lon <= 5.0;
+            }
+            // Sampling can only miss a crossing that clips a corner by less than a step
+            if (sampled) assertTrue(segment.intersects(box));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package be.kuleuven.gt.grvlfinder;
+
+import org.junit.Test;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Graph construction from roads and A* paths checked against Dijkstra
+ */
+public class RoutingGraphTest {
+    private static final double CELL_METERS = 100;
+
+    // Weight is the length times the road's score (1 to 3), never below the straight-line heuristic
+    static final RoutingGraph.EdgeCost SCORE_TIMES_LENGTH = (road, meters) -> meters * road.getScore();
+
+    static PolylineResult road(long fromId, GeoPoint from, long toId, GeoPoint to, int score) {
+        return new PolylineResult(0, new long[]{fromId, toId}, Arrays.asList(from, to), score,
+                Collections.emptyMap());
+    }
+
+    /**
+     * Random roads between nodes scattered over about a kilometre; each component gets its own ids and area
+     */
+    static List<PolylineResult> randomRoads(Random random, int components, int nodesPerComponent, int roadsPerNode) {
+        List<PolylineResult> roads = new ArrayList<>();
+        for (int c = 0; c < components; c++) {
+            GeoPoint[] points = new GeoPoint[nodesPerComponent];
+            for (int i = 0; i < nodesPerComponent; i++) {
+                points[i] = new GeoPoint(50.8 + c * 0.1 + random.nextDouble() * 0.01, 4.7 + random.nextDouble() * 0.015);
+            }
+            long firstId = 1 + (long) c * nodesPerComponent;
+            for (int i = 0; i < nodesPerComponent; i++) {
+                for (int k = 0; k < roadsPerNode; k++) {
+                    int j = random.nextInt(nodesPerComponent);
+                    if (j == i) continue;
+                    roads.add(road(firstId + i, points[i], firstId + j, points[j], 1 + random.nextInt(3)));
+                }
+            }
+        }
+        return roads;
+    }
+
+    /**
+     * Checks the edges form a walk from source to target and returns their total weight
+     */
+    static double pathWeight(RoutingGraph graph, int source, int target, int[] edges) {
+        int node = source;
+        double weight = 0;
+        for (int edge : edges) {
+            assertEquals(node, graph.sourceOf(edge));
+            weight += graph.edgeWeight(edge);
+            node = graph.edgeTarget(edge);
+        }
+        assertEquals(target, node);
+        return weight;
+    }
+
+    @Test
+    public void build_sharesNodesBetweenRoadsAndAddsBothDirections() {
+        GeoPoint a = new GeoPoint(50.80, 4.70);
+        GeoPoint b = new GeoPoint(50.80, 4.71);
+        GeoPoint c = new GeoPoint(50.81, 4.71);
+        List<PolylineResult> roads = Arrays.asList(
+                road(1, a, 2, b, 1),
+                road(2, b, 3, c, 2),
+                new PolylineResult(0, new long[]{4}, Collections.singletonList(a), 1, Collections.emptyMap()));
+
+        RoutingGraph graph = RoutingGraph.build(roads, SCORE_TIMES_LENGTH, CELL_METERS);
+
+        assertEquals(3, graph.nodeCount());
+        assertEquals(4, graph.edgeCount());
+        int middle = graph.nearestNode(b, 1);
+        assertEquals(2, graph.firstEdge(middle + 1) - graph.firstEdge(middle));
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            int reverse = graph.reverseEdge(e);
+            assertEquals(e, graph.reverseEdge(reverse));
+            assertEquals(graph.sourceOf(e), graph.edgeTarget(reverse));
+            assertEquals(graph.edgeWeight(e), graph.edgeWeight(reverse), 0);
+        }
+        assertEquals(b.distanceToAsDouble(c), graph.maxEdgeMeters(), 0.5); // The longer of the two segments
+        assertEquals(1, graph.minWeightPerMeter(), 1e-6);
+    }
+
+    @Test
+    public void findPath_matchesDijkstraOnRandomGraph() {
+        Random random = new Random(17);
+        RoutingGraph graph = RoutingGraph.build(randomRoads(random, 1, 300, 2), SCORE_TIMES_LENGTH, CELL_METERS);
+
+        for (int q = 0; q < 50; q++) {
+            int source = random.nextInt(graph.nodeCount());
+            int target = random.nextInt(graph.nodeCount());
+            double expected = graph.distancesFrom(source)[target];
+
+            int[] edges = graph.findPath(source, target, Integer.MAX_VALUE);
+            if (Double.isInfinite(expected)) {
+                assertNull(edges);
+            } else {
+                assertNotNull(edges);
+                assertEquals(expected, pathWeight(graph, source, target, edges), expected * 1e-4);
+            }
+        }
+    }
+
+    /**
+     * Random roads with scores over the whole 0 to 100 range, so weights drop to a quarter of the length
+     */
+    static List<PolylineResult> randomScoredRoads(Random random, int nodes) {
+        List<PolylineResult> roads = new ArrayList<>();
+        for (PolylineResult road : randomRoads(random, 1, nodes, 2)) {
+            roads.add(road.withScore(random.nextInt(101)));
+        }
+        return roads;
+    }
+
+    @Test
+    public void findPath_scoreWeightedDistance_matchesDijkstra() {
+        // Weights below the length: a plain straight-line heuristic would overestimate
+        Random random = new Random(19);
+        RoutingGraph graph = RoutingGraph.build(randomScoredRoads(random, 300),
+                SmartRoutingService.SCORE_WEIGHTED_DISTANCE, CELL_METERS);
+        assertTrue(graph.minWeightPerMeter() < 0.5);
+
+        for (int q = 0; q < 50; q++) {
+            int source = random.nextInt(graph.nodeCount());
+            int target = random.nextInt(graph.nodeCount());
+            double expected = graph.distancesFrom(source)[target];
+
+            int[] edges = graph.findPath(source, target, Integer.MAX_VALUE);
+            if (Double.isInfinite(expected)) {
+                assertNull(edges);
+            } else {
+                assertNotNull(edges);
+                assertEquals(expected, pathWeight(graph, source, target, edges), expected * 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void findPath_sourceIsTarget_returnsEmptyPath() {
+        RoutingGraph graph = RoutingGraph.build(randomRoads(new Random(1), 1, 20, 2), SCORE_TIMES_LENGTH, CELL_METERS);
+
+        assertArrayEquals(new int[0], graph.findPath(4, 4, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void findPath_otherComponent_returnsNull() {
+        RoutingGraph graph = RoutingGraph.build(randomRoads(new Random(2), 2, 50, 2), SCORE_TIMES_LENGTH, CELL_METERS);
+        int source = graph.nearestNode(new GeoPoint(50.805, 4.7075), 2000);
+        int target = graph.nearestNode(new GeoPoint(50.905, 4.7075), 2000);
+        assertTrue(source >= 0 && target >= 0);
+
+        assertTrue(Double.isInfinite(graph.distancesFrom(source)[target]));
+        assertNull(graph.findPath(source, target, Integer.MAX_VALUE));
+
+        // The search state is reset, so a reachable target still works afterwards
+        int nearby = graph.edgeTarget(graph.firstEdge(source));
+        assertNotNull(graph.findPath(source, nearby, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void findPath_givesUpAfterMaxSettled() {
+        GeoPoint[] points = new GeoPoint[10];
+        List<PolylineResult> roads = new ArrayList<>();
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new GeoPoint(50.8, 4.7 + i * 0.001);
+            if (i > 0) roads.add(road(i, points[i - 1], i + 1, points[i], 1));
+        }
+        RoutingGraph graph = RoutingGraph.build(roads, SCORE_TIMES_LENGTH, CELL_METERS);
+        int first = graph.nearestNode(points[0], 1);
+        int last = graph.nearestNode(points[9], 1);
+
+        assertNull(graph.findPath(first, last, 3));
+        assertEquals(9, graph.findPath(first, last, Integer.MAX_VALUE).length);
+    }
+}
@@ -0,0 +1,261 @@
+package be.kuleuven.gt.grvlfinder;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The compiled profile scores roads exactly like the original per-tag ScoreCalculator formulas
+ */
+public class ScoringProfileTest {
+
+    private static final String[] SURFACES = {null, "asphalt", "Asphalt", "paved", "concrete", "concrete:plates",
+            "compacted", "fine_gravel", "gravel", "GRAVEL", "pebblestone", "ground", "earth", "dirt", "unpaved",
+            "sett", "grass"};
+    private static final String[] SMOOTHNESS = {null, "good", "Good", "bad", "intermediate", "excellent"};
+    private static final String[] TRACKTYPES = {null, "grade1", "grade2", "grade3", "grade4", "Grade2"};
+    private static final String[] BICYCLE = {null, "yes", "designated", "no", "No", "permissive", "dismount"};
+    private static final String[] WIDTHS = {null, "3", "3.5 m", "2", "1.4", "1.5", "0.8m", "wide", "", "3.0.1"};
+    private static final String[] INCLINES = {null, "5%", "-8 %", "12%", "-12%", "15 %", "19.9%", "20%", "-25%",
+            "steep", "Steep", "up", "down", "DOWN", "flat", "", "--", "1.2.3", "5-10%", "11.99%"};
+    private static final double[] LENGTHS = {-1, 0, 10, 49.9, 50, 120, 299.9, 300, 2500};
+    private static final String[] KEYS = {"surface", "smoothness", "tracktype", "bicycle", "width", "length", "slope"};
+    private static final double[] SLOPES = {-1, 0, 5, 11.9, 12, -14, 15, 19.9, 20, -30};
+
+    @Test
+    public void score_randomCombinations_matchesBaseline() {
+        Random random = new Random(9);
+        for (int i = 0; i < 20_000; i++) {
+            Map<String, String> tags = randomTags(random);
+            double length = LENGTHS[random.nextInt(LENGTHS.length)];
+            Map<String, Integer> weights = randomWeights(random);
+            boolean paved = random.nextBoolean();
+            boolean penalizeSlopes = random.nextBoolean();
+            double slope = SLOPES[random.nextInt(SLOPES.length)];
+
+            ScoringProfile profile = ScoringProfile.compile(weights, paved, penalizeSlopes);
+            ScoreComponents components = ScoreComponents.of(tags, length);
+            ScoreComponents shared = ScoreComponents.of(TagDictionary.intern(tags), length);
+            String message = tags + " length=" + length + " weights=" + weights + " paved=" + paved;
+
+            int expected = Baseline.score(tags, length, weights, paved);
+            assertEquals(message, expected, profile.score(components));
+            assertEquals(message, expected, profile.score(shared));
+
+            int expectedWithSlope = Baseline.scoreWithSlope(tags, length, weights, paved, penalizeSlopes, slope);
+            assertEquals(message + " slope=" + slope, expectedWithSlope, profile.scoreWithSlope(components, slope));
+            assertEquals(message + " slope=" + slope, expectedWithSlope, profile.scoreWithSlope(shared, slope));
+        }
+    }
+
+    @Test
+    public void score_negativeTotal_isClampedToZero() {
+        Map<String, String> tags = tags("surface", "asphalt", "bicycle", "no", "incline", "steep");
+        ScoringProfile profile = ScoringProfile.compile(new HashMap<>(), false, true);
+
+        assertEquals(0, profile.score(ScoreComponents.of(tags, 10)));
+        assertEquals(0, profile.scoreWithSlope(ScoreComponents.of(tags, 10), 25));
+    }
+
+    @Test
+    public void score_inclineTag_parsedLikeBaseline() {
+        // A large positive base so the slope penalty is not hidden by clamping
+        Map<String, Integer> weights = weights("slope", 1, "bicycle", 2000);
+        for (String incline : INCLINES) {
+            Map<String, String> tags = tags("bicycle", "yes", "incline", incline);
+
+            assertEquals("incline=" + incline, Baseline.score(tags, 100, weights, false),
+                    ScoringProfile.compile(weights, false, true).score(ScoreComponents.of(tags, 100)));
+        }
+    }
+
+    @Test
+    public void score_lengthThresholds_matchBaseline() {
+        Map<String, Integer> weights = weights("surface", 0, "length", 4);
+        Map<String, String> tags = tags("bicycle", "yes");
+        ScoringProfile profile = ScoringProfile.compile(weights, false, true);
+
+        for (double length : LENGTHS) {
+            assertEquals("length=" + length, Baseline.score(tags, length, weights, false),
+                    profile.score(ScoreComponents.of(tags, length)));
+        }
+        assertEquals(0, profile.score(ScoreComponents.of(tags, 49.9)));
+        assertEquals(2, profile.score(ScoreComponents.of(tags, 50)));
+        assertEquals(6, profile.score(ScoreComponents.of(tags, 300)));
+    }
+
+    @Test
+    public void scoreWithSlope_zeroSlopeWeight_ignoresInclineAndMeasuredSlope() {
+        Map<String, Integer> weights = weights("slope", 0);
+        Map<String, String> tags = tags("surface", "gravel", "incline", "steep");
+        ScoringProfile profile = ScoringProfile.compile(weights, false, true);
+        ScoreComponents components = ScoreComponents.of(tags, 100);
+
+        assertEquals(6, profile.score(components));
+        assertEquals(6, profile.scoreWithSlope(components, 25));
+        assertEquals(Baseline.scoreWithSlope(tags, 100, weights, false, true, 25),
+                profile.scoreWithSlope(components, 25));
+    }
+
+    private static Map<String, String> randomTags(Random random) {
+        Map<String, String> tags = new HashMap<>();
+        putIfNotNull(tags, "surface", SURFACES[random.nextInt(SURFACES.length)]);
+        putIfNotNull(tags, "smoothness", SMOOTHNESS[random.nextInt(SMOOTHNESS.length)]);
+        putIfNotNull(tags, "tracktype", TRACKTYPES[random.nextInt(TRACKTYPES.length)]);
+        putIfNotNull(tags, "bicycle", BICYCLE[random.nextInt(BICYCLE.length)]);
+        putIfNotNull(tags, "width", WIDTHS[random.nextInt(WIDTHS.length)]);
+        putIfNotNull(tags, "incline", INCLINES[random.nextInt(INCLINES.length)]);
+        if (random.nextBoolean()) tags.put("name", "Way " + random.nextInt(100));
+        return tags;
+    }
+
+    private static Map<String, Integer> randomWeights(Random random) {
+        Map<String, Integer> weights = new HashMap<>();
+        for (String key : KEYS) {
+            // Leave some keys out so the defaults are covered too
+            if (random.nextInt(4) > 0) weights.put(key, random.nextInt(6));
+        }
+        return weights;
+    }
+
+    private static void putIfNotNull(Map<String, String> tags, String key, String value) {
+        if (value != null) tags.put(key, value);
+    }
+
+    private static Map<String, String> tags(String... keyValues) {
+        Map<String, String> tags = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) tags.put(keyValues[i], keyValues[i + 1]);
+        return tags;
+    }
+
+    private static Map<String, Integer> weights(Object... keyValues) {
+        Map<String, Integer> weights = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) weights.put((String) keyValues[i], (Integer) keyValues[i + 1]);
+        return weights;
+    }
+
+    /**
+     * The per-tag formulas of the original ScoreCalculator.calculateScoreWithWeights and calculateScoreWithSlope
+     */
+    private static final class Baseline {
+
+        static int score(Map<String, String> tags, double length, Map<String, Integer> weights, boolean paved) {
+            int score = 0;
+            int surfaceWeight = weights.getOrDefault("surface", 3);
+            score += paved ? roadSurface(tags.get("surface"), surfaceWeight)
+                    : gravelSurface(tags.get("surface"), surfaceWeight);
+            score += smoothness(tags.get("smoothness"), weights.getOrDefault("smoothness", 2));
+            score += tracktype(tags.get("tracktype"), weights.getOrDefault("tracktype", 2));
+            score += bicycle(tags.get("bicycle"), weights.getOrDefault("bicycle", 2));
+            score += width(tags.get("width"), weights.getOrDefault("width", 1));
+            score += lengthUnit(length) * weights.getOrDefault("length", 1);
+            score += tagSlope(tags.get("incline"), weights.getOrDefault("slope", 5));
+            return Math.max(0, score);
+        }
+
+        static int scoreWithSlope(Map<String, String> tags, double length, Map<String, Integer> weights,
+                                  boolean paved, boolean penalizeSlopes, double maxSlope) {
+            int slopeWeight = weights.getOrDefault("slope", 5);
+            int score = score(tags, length, weights, paved) - tagSlope(tags.get("incline"), slopeWeight);
+            if (penalizeSlopes) {
+                score += maxSlope < 0 ? 0 : fromPercent(Math.abs(maxSlope), slopeWeight);
+            }
+            return Math.max(0, score);
+        }
+
+        private static int roadSurface(String surface, int weight) {
+            if (surface == null) return 0;
+            switch (surface.toLowerCase()) {
+                case "asphalt": case "paved": case "concrete": case "concrete:plates": return 3 * weight;
+                case "compacted": case "fine_gravel": return weight;
+                case "gravel": case "pebblestone": return -weight;
+                case "ground": case "earth": case "dirt": case "unpaved": return -3 * weight;
+                default: return 0;
+            }
+        }
+
+        private static int gravelSurface(String surface, int weight) {
+            if (surface == null) return 0;
+            switch (surface.toLowerCase()) {
+                case "gravel": case "fine_gravel": case "pebblestone": case "compacted": return 2 * weight;
+                case "ground": case "earth": case "dirt": case "unpaved": return weight;
+                case "asphalt": case "paved": case "concrete": case "concrete:plates": return -4 * weight;
+                default: return 0;
+            }
+        }
+
+        private static int smoothness(String smoothness, int weight) {
+            if (smoothness == null) return 0;
+            switch (smoothness.toLowerCase()) {
+                case "good": return weight;
+                case "bad": return -weight;
+                default: return 0;
+            }
+        }
+
+        private static int tracktype(String tracktype, int weight) {
+            if (tracktype == null) return 0;
+            switch (tracktype.toLowerCase()) {
+                case "grade2": case "grade3": return weight;
+                case "grade1": return -weight;
+                default: return 0;
+            }
+        }
+
+        private static int bicycle(String bicycle, int weight) {
+            if (bicycle == null) return 0;
+            switch (bicycle.toLowerCase()) {
+                case "yes": case "designated": return weight;
+                case "no": return -2 * weight;
+                default: return 0;
+            }
+        }
+
+        private static int width(String width, int weight) {
+            if (width == null) return 0;
+            try {
+                double meters = Double.parseDouble(width.replaceAll("[^0-9.]", ""));
+                if (meters >= 3) return weight;
+                if (meters < 1.5) return -weight;
+                return 0;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        static int lengthUnit(double length) {
+            if (length < 0) return 0; // fewer than two points
+            if (length >= 300) return 1;
+            if (length < 50) return -1;
+            return 0;
+        }
+
+        private static int tagSlope(String incline, int weight) {
+            if (weight == 0 || incline == null) return 0;
+            String cleaned = incline.toLowerCase().replaceAll("[^0-9.-]", "");
+            if (cleaned.isEmpty()) {
+                switch (incline.toLowerCase()) {
+                    case "steep": return -weight * 200;
+                    case "up": case "down": return -weight * 50;
+                    default: return 0;
+                }
+            }
+            try {
+                return fromPercent(Math.abs(Double.parseDouble(cleaned)), weight);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        private static int fromPercent(double absSlope, int weight) {
+            if (absSlope >= 20.0) return -weight * 1000;
+            if (absSlope >= 15.0) return -weight * 500;
+            if (absSlope >= 12.0) return -weight * 250;
+            return 0;
+        }
+    }
+}
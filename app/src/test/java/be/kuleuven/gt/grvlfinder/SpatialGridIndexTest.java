@@ -0,0 +1,128 @@
+package be.kuleuven.gt.grvlfinder;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Grid queries against a scan over every point
+ */
+public class SpatialGridIndexTest {
+    private static final double CELL_METERS = 111.32; // 0.001 degrees of latitude per cell
+
+    private static int bruteNearest(SpatialGridIndex index, double lat, double lon, double maxMeters) {
+        int best = -1;
+        for (int id = 0; id < index.size(); id++) {
+            double distance = index.distanceMeters(lat, lon, id);
+            if (distance <= maxMeters && (best < 0 || distance < index.distanceMeters(lat, lon, best))) {
+                best = id;
+            }
+        }
+        return best;
+    }
+
+    private static int[] bruteWithin(SpatialGridIndex index, double lat, double lon, double radiusMeters) {
+        int[] found = new int[index.size()];
+        int n = 0;
+        for (int id = 0; id < index.size(); id++) {
+            if (index.distanceMeters(lat, lon, id) <= radiusMeters) found[n++] = id;
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    private static void assertMatchesBruteForce(SpatialGridIndex index, double lat, double lon, double meters) {
+        int expected = bruteNearest(index, lat, lon, meters);
+        int actual = index.nearest(lat, lon, meters);
+        if (expected < 0) {
+            assertEquals(-1, actual);
+        } else {
+            // Ties may resolve to another point at the same distance
+            assertTrue(actual >= 0);
+            assertEquals(index.distanceMeters(lat, lon, expected), index.distanceMeters(lat, lon, actual), 1e-9);
+        }
+
+        int[] within = index.within(lat, lon, meters);
+        Arrays.sort(within);
+        assertArrayEquals(bruteWithin(index, lat, lon, meters), within);
+    }
+
+    @Test
+    public void randomPoints_matchBruteForce() {
+        Random random = new Random(11);
+        int n = 2000;
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = 50.8 + random.nextDouble() * 0.05;
+            lons[i] = 4.6 + random.nextDouble() * 0.08;
+        }
+        SpatialGridIndex index = new SpatialGridIndex(lats, lons, n, CELL_METERS);
+        assertEquals(n, index.size());
+
+        for (int q = 0; q < 300; q++) {
+            double lat = 50.79 + random.nextDouble() * 0.07;
+            double lon = 4.59 + random.nextDouble() * 0.10;
+            double meters = random.nextDouble() * 600;
+            assertMatchesBruteForce(index, lat, lon, meters);
+        }
+    }
+
+    @Test
+    public void pointsOnCellEdges_matchBruteForce() {
+        // Points and queries on multiples of the cell size, where rounding decides the cell
+        int side = 20;
+        double[] lats = new double[side * side];
+        double[] lons = new double[side * side];
+        int n = 0;
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                lats[n] = 51.0 + r * 0.001;
+                lons[n] = 4.0 + c * 0.0005;
+                n++;
+            }
+        }
+        SpatialGridIndex index = new SpatialGridIndex(lats, lons, n, CELL_METERS);
+
+        for (int r = -2; r < side + 2; r++) {
+            for (int c = -2; c < side + 2; c += 3) {
+                double lat = 51.0 + r * 0.001;
+                double lon = 4.0 + c * 0.0005;
+                assertMatchesBruteForce(index, lat, lon, 0);
+                assertMatchesBruteForce(index, lat, lon, CELL_METERS);
+                assertMatchesBruteForce(index, lat, lon, 2.5 * CELL_METERS);
+            }
+        }
+    }
+
+    @Test
+    public void exactHit_isFoundAtZeroDistance() {
+        double[] lats = {50.0, 50.001, 50.002};
+        double[] lons = {4.0, 4.001, 4.002};
+        SpatialGridIndex index = new SpatialGridIndex(lats, lons, 3, CELL_METERS);
+
+        assertEquals(1, index.nearest(50.001, 4.001, 0));
+        assertArrayEquals(new int[]{1}, index.within(50.001, 4.001, 0));
+    }
+
+    @Test
+    public void nothingInRange_returnsNoPoints() {
+        double[] lats = {50.0, 50.01};
+        double[] lons = {4.0, 4.01};
+        SpatialGridIndex index = new SpatialGridIndex(lats, lons, 2, CELL_METERS);
+
+        assertEquals(-1, index.nearest(50.005, 4.005, 100));
+        assertEquals(0, index.within(50.005, 4.005, 100).length);
+    }
+
+    @Test
+    public void emptyIndex_returnsNoPoints() {
+        SpatialGridIndex index = new SpatialGridIndex(new double[0], new double[0], 0, CELL_METERS);
+
+        assertEquals(0, index.size());
+        assertEquals(-1, index.nearest(50.0, 4.0, 1000));
+        assertEquals(0, index.within(50.0, 4.0, 1000).length);
+    }
+}
@@ -0,0 +1,52 @@
+package be.kuleuven.gt.grvlfinder;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scoring tags are shared between roads, free-form tags stay with their road
+ */
+public class TagDictionaryTest {
+
+    private static Map<String, String> tags(String... keyValues) {
+        Map<String, String> tags = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) tags.put(keyValues[i], keyValues[i + 1]);
+        return tags;
+    }
+
+    @Test
+    public void scoringTagsOnly_returnsSharedTagSet() {
+        Map<String, String> a = TagDictionary.intern(tags("highway", "track", "surface", "gravel"));
+        Map<String, String> b = TagDictionary.intern(tags("surface", "gravel", "highway", "track"));
+
+        assertTrue(a instanceof TagSet);
+        assertSame(a, b);
+    }
+
+    @Test
+    public void freeFormTags_areKeptPerRoadAndNotInterned() {
+        Map<String, String> original = tags("highway", "track", "surface", "gravel",
+                "name", "Unique name 8c1f", "ref", "R-8c1f");
+        Map<String, String> interned = TagDictionary.intern(original);
+        Map<String, String> other = TagDictionary.intern(tags("highway", "track", "surface", "gravel",
+                "name", "Another name 8c1f"));
+
+        assertEquals(original, interned);
+        assertEquals(interned, original);
+        assertEquals(4, interned.size());
+        assertEquals("Unique name 8c1f", interned.get("name"));
+        assertEquals("gravel", interned.get("surface"));
+        assertNull(interned.get("tracktype"));
+        assertEquals(-1, TagDictionary.lookup("Unique name 8c1f"));
+        assertEquals(-1, TagDictionary.lookup("name"));
+
+        // Scoring only depends on the shared part, so both roads share its cached components
+        assertSame(((RoadTags) interned).shared(), ((RoadTags) other).shared());
+        assertSame(ScoreComponents.of(interned, 100), ScoreComponents.of(other, 100));
+        assertSame(interned, TagDictionary.intern(interned));
+    }
+}